@@ -0,0 +1,160 @@
+package com.example.benchmarks;
+
+import com.example.server.Json;
+import com.example.server.VaultApiServer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This file contains a small load generator for the vault API that reports
+ * requests per second and latency percentiles over loopback.
+ *
+ * Usage: ApiLoadTest --user <name> [--url http://127.0.0.1:8787]
+ * [--path /api/vault] [--concurrency 32] [--seconds 10]
+ * The login password is read from PM_PASSWORD.
+ */
+public class ApiLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        String url = "http://127.0.0.1:" + VaultApiServer.DEFAULT_PORT;
+        String path = "/api/vault";
+        String user = System.getenv("PM_USER");
+        int concurrency = 32;
+        int seconds = 10;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--url":
+                    url = args[i + 1];
+                    break;
+                case "--path":
+                    path = args[i + 1];
+                    break;
+                case "--user":
+                    user = args[i + 1];
+                    break;
+                case "--concurrency":
+                    concurrency = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--seconds":
+                    seconds = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        String password = System.getenv("PM_PASSWORD");
+        if (user == null || password == null) {
+            System.err.println("Set --user (or PM_USER) and PM_PASSWORD");
+            System.exit(2);
+        }
+
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        String token = login(client, url, user, password);
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url + path))
+                .header("Authorization", "Bearer " + token)
+                .GET()
+                .build();
+
+        // Warm up connections and JIT before measuring
+        runFor(client, request, concurrency, Duration.ofSeconds(Math.min(3, seconds)), new AtomicLong());
+
+        AtomicLong errors = new AtomicLong();
+        long started = System.nanoTime();
+        long[] latencies = runFor(client, request, concurrency, Duration.ofSeconds(seconds), errors);
+        double elapsedSeconds = (System.nanoTime() - started) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("Requests:     %d (%d errors) with %d concurrent clients%n",
+                latencies.length, errors.get(), concurrency);
+        System.out.printf("Throughput:   %.0f requests/sec%n", latencies.length / elapsedSeconds);
+        System.out.printf("Latency p50:  %.2f ms%n", percentile(latencies, 0.50));
+        System.out.printf("Latency p99:  %.2f ms%n", percentile(latencies, 0.99));
+        System.out.printf("Latency max:  %.2f ms%n", latencies.length == 0 ? 0 : latencies[latencies.length - 1] / 1e6);
+    }
+
+    private static String login(HttpClient client, String url, String user, String password)
+            throws IOException, InterruptedException {
+        String body = Json.writeObject(Json.object("username", user, "password", password));
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/api/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("Login failed with HTTP " + response.statusCode() + ": " + response.body());
+        }
+        Map<String, String> json = Json.parseObject(response.body());
+        return json.get("token");
+    }
+
+    // Runs one client loop per virtual thread and returns all latencies in nanos
+    private static long[] runFor(HttpClient client, HttpRequest request, int concurrency, Duration duration,
+            AtomicLong errors) throws Exception {
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<Future<long[]>> results = new ArrayList<>();
+
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < concurrency; c++) {
+                results.add(clients.submit(() -> {
+                    long[] samples = new long[1024];
+                    int count = 0;
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() >= 400) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            errors.incrementAndGet();
+                        }
+                        if (count == samples.length) {
+                            samples = Arrays.copyOf(samples, count * 2);
+                        }
+                        samples[count++] = System.nanoTime() - start;
+                    }
+                    return Arrays.copyOf(samples, count);
+                }));
+            }
+        }
+
+        int total = 0;
+        for (Future<long[]> result : results) {
+            total += result.get().length;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (Future<long[]> result : results) {
+            long[] samples = result.get();
+            System.arraycopy(samples, 0, all, offset, samples.length);
+            offset += samples.length;
+        }
+        return all;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.benchmarks;
+
+import com.example.utils.BackupRepository;
+import com.example.utils.ContentChunker;
+import com.example.utils.Secret;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a backup when nothing changed, for 100 vaults of the given size:
+ * one directory walk and one snapshot file, since no vault is read. "split"
+ * is the chunker alone over 8 MiB of vault-like text (random Base64 lines),
+ * the part of a first backup that does not depend on the disk.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dpm.log.level=WARNING")
+public class BackupBenchmark {
+
+    private static final int VAULTS = 100;
+
+    @State(Scope.Benchmark)
+    public static class Vaults {
+        @Param({"1000", "10000"})
+        public int entries;
+
+        Path dataDir;
+        Path repositoryDir;
+        BackupRepository repository;
+
+        @Setup
+        public void setUp() throws IOException {
+            dataDir = BenchmarkData.useTemporaryDataDir("pm-backup-bench");
+            BenchmarkData.writeUsers(dataDir, VAULTS);
+            for (int i = 0; i < VAULTS; i++) {
+                BenchmarkData.writeVault(dataDir, BenchmarkData.userName(i), entries);
+            }
+            repositoryDir = Files.createTempDirectory("pm-backup-repo");
+            try (Secret passphrase = Secret.copyOf("bench-passphrase")) {
+                repository = BackupRepository.open(repositoryDir, passphrase, true);
+            }
+            repository.backup(dataDir, 1);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            repository.close();
+            BenchmarkData.delete(repositoryDir);
+            BenchmarkData.delete(dataDir);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Text {
+        byte[] bytes;
+        ContentChunker chunker;
+
+        @Setup
+        public void setUp() {
+            SplittableRandom random = new SplittableRandom(42);
+            StringBuilder lines = new StringBuilder();
+            byte[] password = new byte[48];
+            while (lines.length() < 8 * 1024 * 1024) {
+                random.nextBytes(password);
+                lines.append("site").append(random.nextInt(100_000)).append(".example.com,user@mail.example,v3:")
+                        .append(Base64.getEncoder().encodeToString(password)).append('\n');
+            }
+            bytes = lines.toString().getBytes(StandardCharsets.US_ASCII);
+            chunker = new ContentChunker(42);
+        }
+    }
+
+    @Benchmark
+    public BackupRepository.BackupResult unchanged(Vaults vaults) throws IOException {
+        return vaults.repository.backup(vaults.dataDir, 1);
+    }
+
+    @Benchmark
+    public long split(Text text) throws IOException {
+        long[] chunks = {0};
+        text.chunker.split(new ByteArrayInputStream(text.bytes), (data, offset, length) -> chunks[0]++);
+        return chunks[0];
+    }
+}
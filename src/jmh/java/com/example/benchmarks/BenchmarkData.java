@@ -0,0 +1,80 @@
+package com.example.benchmarks;
+
+import com.example.utils.EncryptionUtils;
+import com.example.utils.PasswordUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Creates throw-away data directories in the layout DataManager expects.
+ * Call useTemporaryDataDir before any application class touches
+ * DataManager, because its paths are fixed when it is first loaded.
+ */
+final class BenchmarkData {
+
+    static final String PASSWORD_HEADER = "Website/App Name,Username/Email,Password";
+    static final String USER_HEADER = "Username,Email,PasswordHash";
+    static final String LOGIN_PASSWORD = "bench-password";
+
+    // Distinct ciphertexts reused across rows, encrypting a million rows would dominate setup
+    private static final int DISTINCT_CIPHERTEXTS = 1024;
+
+    private BenchmarkData() {
+    }
+
+    static Path useTemporaryDataDir(String prefix) throws IOException {
+        Path dir = Files.createTempDirectory(prefix);
+        Files.createDirectories(dir.resolve("users"));
+        Files.createDirectories(dir.resolve("passwords"));
+        System.setProperty("pm.data.dir", dir.toString());
+        return dir;
+    }
+
+    static void writeVault(Path dataDir, String username, int entries) throws IOException {
+        String[] ciphertexts = new String[Math.min(entries, DISTINCT_CIPHERTEXTS)];
+        for (int i = 0; i < ciphertexts.length; i++) {
+            ciphertexts[i] = EncryptionUtils.encryptPassword("Secret-" + i + "!x");
+        }
+
+        List<String> lines = new ArrayList<>(entries + 1);
+        lines.add(PASSWORD_HEADER);
+        for (int i = 0; i < entries; i++) {
+            lines.add("site" + i + ".example.com,user" + i + "@mail.example," + ciphertexts[i % ciphertexts.length]);
+        }
+        Files.write(dataDir.resolve("passwords").resolve("passwords_" + username + ".csv"), lines,
+                StandardCharsets.UTF_8);
+    }
+
+    static void writeUsers(Path dataDir, int users) throws IOException {
+        // One real hash shared by all users keeps setup fast; lookups only compare names
+        String hash = PasswordUtils.createPasswordHash(LOGIN_PASSWORD);
+        List<String> lines = new ArrayList<>(users + 1);
+        lines.add(USER_HEADER);
+        for (int i = 0; i < users; i++) {
+            lines.add(userName(i) + "," + userName(i) + "@mail.example," + hash);
+        }
+        Files.write(dataDir.resolve("users").resolve("user-data.csv"), lines, StandardCharsets.UTF_8);
+    }
+
+    static String userName(int index) {
+        return "user" + index;
+    }
+
+    static void delete(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.benchmarks;
+
+import com.example.models.PasswordEntry;
+import com.example.utils.Secret;
+import com.example.utils.UserManager;
+import com.example.utils.UserSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall-clock time of one VaultCli command in a fresh JVM, from process
+ * start to exit, as a shell script calling the CLI sees it. Each run logs
+ * in with PM_PASSWORD against a vault of ENTRIES entries; "list" only
+ * verifies the login hash, "get" also unwraps the vault key and decrypts
+ * one password. The login hash cost is a parameter because at the
+ * calibrated 100 ms it is most of what is left; 1000 iterations shows the
+ * startup overhead alone.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Dpm.log.level=WARNING")
+@State(Scope.Benchmark)
+public class CliStartupBenchmark {
+
+    private static final int ENTRIES = 50;
+    private static final String USER = "cli-user";
+
+    @Param({"list", "get"})
+    public String command;
+
+    @Param({"1000", "100000"})
+    public int iterations;
+
+    private Path dataDir;
+    private ProcessBuilder cli;
+
+    @Setup
+    public void setUp() throws IOException {
+        // Fixed before UserManager is loaded, so the hash is not calibrated
+        System.setProperty("pm.login.iterations", String.valueOf(iterations));
+        dataDir = BenchmarkData.useTemporaryDataDir("cli-startup-bench");
+        try (Secret password = Secret.copyOf(BenchmarkData.LOGIN_PASSWORD)) {
+            if (!UserManager.registerUser(USER, USER + "@mail.example", password)) {
+                throw new IllegalStateException("Could not register " + USER);
+            }
+            UserSession session = UserManager.login(USER, password);
+            List<PasswordEntry> saved = session.updateVault(entries -> {
+                for (int i = 0; i < ENTRIES; i++) {
+                    entries.add(new PasswordEntry("site" + i + ".example.com", "user" + i + "@mail.example",
+                            "Secret-" + i + "!x", session.getVaultKey()));
+                }
+                return entries;
+            });
+            UserManager.logout(session.getId());
+            if (saved == null) {
+                throw new IllegalStateException("Could not fill the vault of " + USER);
+            }
+        }
+
+        List<String> arguments = new ArrayList<>(List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                "-Dpm.data.dir=" + dataDir,
+                "-Dpm.log.level=WARNING",
+                // Matches the stored hash, otherwise the first login would rehash it
+                "-Dpm.login.iterations=" + iterations,
+                "com.example.cli.VaultCli", command));
+        if ("get".equals(command)) {
+            arguments.add("site7.example.com");
+        }
+        cli = new ProcessBuilder(arguments)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT);
+        cli.environment().put("PM_USER", USER);
+        cli.environment().put("PM_PASSWORD", BenchmarkData.LOGIN_PASSWORD);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkData.delete(dataDir);
+    }
+
+    @Benchmark
+    public int run() throws IOException, InterruptedException {
+        int exitCode = cli.start().waitFor();
+        if (exitCode != 0) {
+            throw new IllegalStateException("VaultCli " + command + " exited with " + exitCode);
+        }
+        return exitCode;
+    }
+}
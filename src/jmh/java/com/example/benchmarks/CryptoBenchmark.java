@@ -0,0 +1,105 @@
+package com.example.benchmarks;
+
+import com.example.utils.EncryptionUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of encrypting and decrypting one stored password with the app's
+ * master key, and of the Base64 check run on every loaded row. The batch
+ * benchmarks report the cost per password when a whole vault of BATCH
+ * passwords goes through the batch API, on one thread or split across cores.
+ * New passwords use the format selected by -Dpm.crypto.mode (GCM unless set
+ * to cbc); pass it with -jvmArgsAppend to compare the two end to end.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dpm.log.level=WARNING")
+@State(Scope.Benchmark)
+public class CryptoBenchmark {
+
+    private static final int BATCH = 4096;
+
+    private String plaintext;
+    private String ciphertext;
+    private List<String> plaintexts;
+    private List<byte[]> ciphertexts;
+
+    @Setup
+    public void setUp() {
+        plaintext = "C0rrect-Horse-Battery";
+        // Also derives the master key so no iteration pays for it
+        ciphertext = EncryptionUtils.encryptPassword(plaintext);
+
+        plaintexts = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            plaintexts.add("Secret-" + i + "!x");
+        }
+        byte[][] encrypted = new byte[BATCH][];
+        EncryptionUtils.encryptAll(plaintexts, encrypted, false);
+        ciphertexts = Arrays.asList(encrypted);
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return EncryptionUtils.encryptPassword(plaintext);
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return EncryptionUtils.decryptPassword(ciphertext);
+    }
+
+    @Benchmark
+    public boolean isEncrypted() {
+        return EncryptionUtils.isEncrypted(ciphertext);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[][] encryptBatch() {
+        byte[][] out = new byte[BATCH][];
+        EncryptionUtils.encryptAll(plaintexts, out, false);
+        return out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[][] encryptBatchParallel() {
+        byte[][] out = new byte[BATCH][];
+        EncryptionUtils.encryptAll(plaintexts, out, true);
+        return out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public String[] decryptBatch() {
+        String[] out = new String[BATCH];
+        EncryptionUtils.decryptAll(ciphertexts, out, false);
+        return out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public String[] decryptBatchParallel() {
+        String[] out = new String[BATCH];
+        EncryptionUtils.decryptAll(ciphertexts, out, true);
+        return out;
+    }
+}
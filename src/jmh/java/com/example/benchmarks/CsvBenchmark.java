@@ -0,0 +1,63 @@
+package com.example.benchmarks;
+
+import com.example.models.PasswordEntry;
+import com.example.utils.CSVHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of loading and saving a whole vault CSV file at different sizes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx3g", "-Dpm.log.level=WARNING" })
+@State(Scope.Benchmark)
+public class CsvBenchmark {
+
+    private static final String USER = "bench";
+
+    @Param({ "1000", "100000", "1000000" })
+    public int entries;
+
+    private Path dataDir;
+    private List<PasswordEntry> vault;
+
+    @Setup
+    public void setUp() throws IOException {
+        dataDir = BenchmarkData.useTemporaryDataDir("pm-csv-bench");
+        BenchmarkData.writeVault(dataDir, USER, entries);
+        vault = CSVHandler.loadUserPasswordsFromCSV(USER);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkData.delete(dataDir);
+    }
+
+    @Benchmark
+    public List<PasswordEntry> load() {
+        return CSVHandler.loadUserPasswordsFromCSV(USER);
+    }
+
+    @Benchmark
+    public long save() {
+        return CSVHandler.saveUserPasswordsToCSV(USER, vault);
+    }
+}
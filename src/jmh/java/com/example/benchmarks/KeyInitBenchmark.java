@@ -0,0 +1,89 @@
+package com.example.benchmarks;
+
+import com.example.utils.OffHeapKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of setting up an AES-GCM cipher with a key on the heap, a
+ * SecretKeySpec as the app used before, and with an OffHeapKey, whose bytes
+ * are copied out of direct memory on every init. "init" only initialises
+ * the cipher; "encrypt" also seals a 32-byte password with 32 bytes of
+ * associated data, as saving a vault entry does.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dpm.log.level=WARNING")
+@State(Scope.Thread)
+public class KeyInitBenchmark {
+
+    @Param({"heap", "offheap"})
+    public String key;
+
+    private SecretKey secretKey;
+    private Cipher cipher;
+    private byte[] password;
+    private byte[] associatedData;
+    private final byte[] nonce = new byte[12];
+    private long counter;
+
+    @Setup
+    public void setUp() throws GeneralSecurityException {
+        SecureRandom random = new SecureRandom();
+        byte[] keyBytes = new byte[32];
+        random.nextBytes(keyBytes);
+        secretKey = "heap".equals(key) ? new SecretKeySpec(keyBytes, "AES") : OffHeapKey.take(keyBytes, "AES");
+        cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        password = new byte[32];
+        random.nextBytes(password);
+        associatedData = new byte[32];
+        random.nextBytes(associatedData);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (secretKey instanceof OffHeapKey) {
+            ((OffHeapKey) secretKey).destroy();
+        }
+    }
+
+    @Benchmark
+    public Cipher init() throws GeneralSecurityException {
+        initCipher();
+        return cipher;
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws GeneralSecurityException {
+        initCipher();
+        cipher.updateAAD(associatedData);
+        return cipher.doFinal(password);
+    }
+
+    // GCM refuses to encrypt twice with one nonce, so count through them
+    private void initCipher() throws GeneralSecurityException {
+        ByteBuffer.wrap(nonce).putLong(++counter);
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(128, nonce));
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.benchmarks;
+
+import com.example.utils.PasswordUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Login verifications per second with several threads logging in at once,
+ * each cycling through USERS accounts. verifyCached is the login path
+ * (hash parsed once per user, pooled digests, char[] password), verifyString
+ * the same hash without the per-user cache, and jdkPbkdf2 the previous way:
+ * split and decode the stored hash and run SecretKeyFactory on every attempt.
+ * The iteration counts are low so the per-attempt overhead is visible next
+ * to the hashing; add -prof gc to see the bytes allocated per verification.
+ * Change the thread count with -t.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dpm.log.level=WARNING")
+@Threads(4)
+public class LoginVerifyBenchmark {
+
+    private static final int USERS = 64;
+
+    @State(Scope.Benchmark)
+    public static class Accounts {
+        @Param({"1000", "10000"})
+        public int iterations;
+
+        String[] usernames;
+        String[] hashes;
+
+        @Setup
+        public void setUp() {
+            usernames = new String[USERS];
+            hashes = new String[USERS];
+            for (int i = 0; i < USERS; i++) {
+                usernames[i] = BenchmarkData.userName(i);
+                hashes[i] = PasswordUtils.createPasswordHash(BenchmarkData.LOGIN_PASSWORD, iterations);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Login {
+        final char[] password = BenchmarkData.LOGIN_PASSWORD.toCharArray();
+        int next;
+
+        int nextUser() {
+            next = (next + 1) % USERS;
+            return next;
+        }
+    }
+
+    @Benchmark
+    public boolean verifyCached(Accounts accounts, Login login) {
+        int user = login.nextUser();
+        return PasswordUtils.verifyPassword(accounts.usernames[user], login.password, accounts.hashes[user]);
+    }
+
+    @Benchmark
+    public boolean verifyString(Accounts accounts, Login login) {
+        return PasswordUtils.verifyPassword(BenchmarkData.LOGIN_PASSWORD, accounts.hashes[login.nextUser()]);
+    }
+
+    @Benchmark
+    public boolean jdkPbkdf2(Accounts accounts, Login login) throws GeneralSecurityException {
+        String[] parts = accounts.hashes[login.nextUser()].split("\\$");
+        byte[] salt = Base64.getDecoder().decode(parts[2]);
+        PBEKeySpec spec = new PBEKeySpec(BenchmarkData.LOGIN_PASSWORD.toCharArray(), salt,
+                Integer.parseInt(parts[1]), 256);
+        byte[] hash = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        return MessageDigest.isEqual(hash, Base64.getDecoder().decode(parts[3]));
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.benchmarks;
+
+import com.example.utils.PasswordUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of hashing a login password at registration and verifying it at
+ * login, and of checking a legacy single-round SHA-256 hash. The PBKDF2
+ * cost is the calibrated iteration count; fix it for comparable runs with
+ * -jvmArgsAppend -Dpm.login.iterations=N.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dpm.log.level=WARNING")
+@State(Scope.Benchmark)
+public class PasswordHashBenchmark {
+
+    private String storedHash;
+    private String legacyHash;
+
+    @Setup
+    public void setUp() {
+        storedHash = PasswordUtils.createPasswordHash(BenchmarkData.LOGIN_PASSWORD);
+        String salt = PasswordUtils.generateSalt();
+        legacyHash = salt + ":" + PasswordUtils.hashPassword(BenchmarkData.LOGIN_PASSWORD, salt);
+    }
+
+    @Benchmark
+    public String createHash() {
+        return PasswordUtils.createPasswordHash(BenchmarkData.LOGIN_PASSWORD);
+    }
+
+    @Benchmark
+    public boolean verifyMatch() {
+        return PasswordUtils.verifyPassword(BenchmarkData.LOGIN_PASSWORD, storedHash);
+    }
+
+    @Benchmark
+    public boolean verifyMismatch() {
+        return PasswordUtils.verifyPassword("wrong-password", storedHash);
+    }
+
+    @Benchmark
+    public boolean verifyLegacy() {
+        return PasswordUtils.verifyPassword(BenchmarkData.LOGIN_PASSWORD, legacyHash);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.benchmarks;
+
+import com.example.models.User;
+import com.example.utils.Secret;
+import com.example.utils.UserManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of user lookups, registration and deletion as the user file grows.
+ * Every operation reads user-data.csv, so these scale with the user count.
+ * Registration also hashes the password and wraps a new vault key; both
+ * derivations run with few iterations here so they do not hide the cost of
+ * the file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dpm.log.level=WARNING", "-Dpm.keys.iterations=1000",
+        "-Dpm.login.iterations=1000"})
+@State(Scope.Benchmark)
+public class UserManagerBenchmark {
+
+    private static final String NEW_USER = "newcomer";
+    private static final String NEW_EMAIL = "newcomer@mail.example";
+
+    @Param({ "100", "1000", "10000" })
+    public int users;
+
+    private Path dataDir;
+    private String lastUser;
+    private String middleEmail;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDir = BenchmarkData.useTemporaryDataDir("pm-user-bench");
+        BenchmarkData.writeUsers(dataDir, users);
+        lastUser = BenchmarkData.userName(users - 1);
+        middleEmail = BenchmarkData.userName(users / 2) + "@mail.example";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkData.delete(dataDir);
+    }
+
+    @Benchmark
+    public User findByUsername() {
+        return UserManager.findUserByUsername(lastUser);
+    }
+
+    @Benchmark
+    public User findByEmail() {
+        return UserManager.findUserByEmail(middleEmail);
+    }
+
+    @Benchmark
+    public boolean register(RegisteredUserCleanup cleanup) {
+        try (Secret password = Secret.copyOf(BenchmarkData.LOGIN_PASSWORD)) {
+            return UserManager.registerUser(NEW_USER, NEW_EMAIL, password);
+        }
+    }
+
+    @Benchmark
+    public boolean delete(UserToDelete user) {
+        return UserManager.deleteUser(NEW_EMAIL);
+    }
+
+    /**
+     * Removes the user added by each register call so the file size stays put
+     */
+    @State(Scope.Thread)
+    public static class RegisteredUserCleanup {
+        @TearDown(Level.Invocation)
+        public void deleteRegisteredUser() {
+            UserManager.deleteUser(NEW_EMAIL);
+        }
+    }
+
+    /**
+     * Adds the user that each delete call removes
+     */
+    @State(Scope.Thread)
+    public static class UserToDelete {
+        @Setup(Level.Invocation)
+        public void registerUser() {
+            try (Secret password = Secret.copyOf(BenchmarkData.LOGIN_PASSWORD)) {
+                UserManager.registerUser(NEW_USER, NEW_EMAIL, password);
+            }
+        }
+    }
+}
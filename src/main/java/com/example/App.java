@@ -1,6 +1,15 @@
 package com.example;
 
+import com.example.logging.Log;
+import com.example.metrics.FlightRecording;
+import com.example.metrics.Metrics;
+import com.example.metrics.NavigationEvent;
+import com.example.metrics.Timer;
+import com.example.server.VaultApiServer;
 import com.example.utils.AdminManager;
+import com.example.utils.ImageCache;
+import com.example.utils.PasswordUtils;
+import com.example.utils.UserManager;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -9,15 +18,25 @@ import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 
 import java.io.IOException;
+import java.lang.System.Logger.Level;
 
 public class App extends Application {
 
+    private static final System.Logger LOG = Log.getLogger(App.class);
+
     private static Scene scene;
-    private static Stage primaryStage; // Store reference to the primary stage @Override
+    private static Stage primaryStage; // Store reference to the primary stage
+    private static VaultApiServer apiServer; // Optional local HTTP API, see startApiServerIfRequested
 
+    @Override
     public void start(Stage stage) throws IOException {
         // Migrate existing admin passwords to encrypted format
         AdminManager.migrateToEncryptedPasswords();
+        // Make the timers visible in JConsole and VisualVM
+        Metrics.registerMBeans();
+        // Calibrate login hashing now rather than during the first login
+        PasswordUtils.getIterations();
+        startApiServerIfRequested();
         primaryStage = stage; // Store the stage reference
         // Set the stage style to TRANSPARENT
         stage.initStyle(StageStyle.TRANSPARENT);
@@ -37,6 +56,28 @@ public class App extends Application {
         stage.show();
     }
 
+    @Override
+    public void stop() {
+        if (apiServer != null) {
+            apiServer.stop();
+        }
+        // Destroys the desktop user's vault key now rather than at JVM exit
+        UserManager.logout();
+        // Report how much bitmap memory the shared icons saved during this run
+        LOG.log(Level.INFO, ImageCache.getStatsSummary());
+        // One line per timer that was used
+        Metrics.getSummary().lines().forEach(line -> LOG.log(Level.INFO, line));
+    }
+
+    // Starts the local vault API next to the UI when -Dpm.api.port is given
+    private static void startApiServerIfRequested() throws IOException {
+        String port = System.getProperty("pm.api.port");
+        if (port != null) {
+            apiServer = new VaultApiServer(Integer.parseInt(port));
+            apiServer.start();
+        }
+    }
+
     // Method to make any Parent node draggable
     private static void makeDraggable(Parent root) {
         final double[] xOffset = { 0 };
@@ -56,15 +97,32 @@ public class App extends Application {
     }
 
     public static void setRoot(String fxml) throws IOException {
-        Parent newRoot = loadFXML(fxml);
-        scene.setRoot(newRoot);
+        Timer timer = Metrics.timer(Metrics.SET_ROOT);
+        long start = timer.start();
+        NavigationEvent event = FlightRecording.isEnabled() ? new NavigationEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        try {
+            Parent newRoot = loadFXML(fxml);
+            scene.setRoot(newRoot);
 
-        // Apply drag functionality to the new root
-        makeDraggable(newRoot);
+            // Apply drag functionality to the new root
+            makeDraggable(newRoot);
 
-        // Resize the window to fit the new content
-        if (primaryStage != null) {
-            primaryStage.sizeToScene();
+            // Resize the window to fit the new content
+            if (primaryStage != null) {
+                primaryStage.sizeToScene();
+            }
+        } finally {
+            timer.stop(start);
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.fxml = fxml;
+                    event.commit();
+                }
+            }
         }
     }
 
@@ -74,6 +132,8 @@ public class App extends Application {
     }
 
     public static void main(String[] args) {
+        // -Dpm.jfr=file.jfr records a Flight Recorder timeline of the session
+        FlightRecording.startIfRequested();
         launch();
     }
 
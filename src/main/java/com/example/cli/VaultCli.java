@@ -0,0 +1,460 @@
+package com.example.cli;
+
+import com.example.metrics.FlightRecording;
+import com.example.models.Attachment;
+import com.example.models.PasswordEntry;
+import com.example.utils.AttachmentStore;
+import com.example.utils.CSVHandler;
+import com.example.utils.EncryptionUtils;
+import com.example.utils.Secret;
+import com.example.utils.UserManager;
+import com.example.utils.UserSession;
+
+import java.io.BufferedReader;
+import java.io.Console;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This file contains the VaultCli class, a headless entry point for scripted
+ * vault lookups that reuses the same storage and encryption as the desktop
+ * application.
+ * It must never touch JavaFX so that it starts quickly enough to be called in
+ * tight loops.
+ */
+public class VaultCli {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: vault [--user <username|email>] [--timing] <command> [arguments]",
+            "",
+            "Commands:",
+            "  list                            List the website and username of every entry",
+            "  search <text>                   List entries whose website or username contains text",
+            "  get <website> [username]        Print the password of an entry",
+            "  add <website> <username> [pw]   Add an entry, reading the password from stdin if omitted",
+            "  export [file]                   Write all entries with decrypted passwords as CSV",
+            "  attach <website> <user> <file>  Attach a file to an entry, encrypted",
+            "  attachments <website> <user>    List the files attached to an entry",
+            "  open <website> <user> <name>    Print an attachment, decrypted as it is read",
+            "",
+            "The username can also be given in PM_USER and the login password in PM_PASSWORD.",
+            "Without PM_PASSWORD the password is prompted for on the console.");
+
+    private static final String EXPORT_HEADER = "Website/App Name,Username/Email,Password";
+
+    // Exit codes
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_NOT_FOUND = 1;
+    private static final int EXIT_USAGE = 2;
+    private static final int EXIT_AUTH_FAILED = 3;
+    private static final int EXIT_ERROR = 4;
+
+    private final PrintStream out;
+    private final PrintStream err;
+    private final long startedAt;
+    private UserSession session;
+
+    private VaultCli(PrintStream out, PrintStream err, long startedAt) {
+        this.out = out;
+        this.err = err;
+        this.startedAt = startedAt;
+    }
+
+    public static void main(String[] args) {
+        long startedAt = System.nanoTime();
+        PrintStream out = System.out;
+        // The storage classes report progress on System.out, keep stdout for
+        // command output only so it can be piped
+        System.setOut(System.err);
+        FlightRecording.startIfRequested();
+
+        int exitCode = new VaultCli(out, System.err, startedAt).run(args);
+        out.flush();
+        // A plain return is cheaper than System.exit, which also logs the exit
+        if (exitCode != EXIT_OK) {
+            System.exit(exitCode);
+        }
+    }
+
+    private int run(String[] args) {
+        String user = System.getenv("PM_USER");
+        boolean timing = false;
+
+        int i = 0;
+        while (i < args.length && args[i].startsWith("--")) {
+            switch (args[i]) {
+                case "--user":
+                    if (i + 1 >= args.length) {
+                        return usage("--user needs a value");
+                    }
+                    user = args[++i];
+                    break;
+                case "--timing":
+                    timing = true;
+                    break;
+                case "--help":
+                    out.println(USAGE);
+                    return EXIT_OK;
+                default:
+                    return usage("Unknown option: " + args[i]);
+            }
+            i++;
+        }
+
+        if (i >= args.length) {
+            return usage("No command given");
+        }
+        String command = args[i];
+        String[] commandArgs = Arrays.copyOfRange(args, i + 1, args.length);
+
+        if (user == null || user.isBlank()) {
+            return usage("No user given, use --user or PM_USER");
+        }
+
+        int exitCode;
+        try {
+            session = login(user, needsVaultKey(command));
+            if (session == null) {
+                err.println("Authentication failed for user: " + user);
+                exitCode = EXIT_AUTH_FAILED;
+            } else {
+                exitCode = execute(command, commandArgs);
+            }
+        } catch (IOException e) {
+            err.println("Error: " + e.getMessage());
+            exitCode = EXIT_ERROR;
+        } finally {
+            if (session != null) {
+                UserManager.logout(session.getId());
+            }
+        }
+
+        if (timing) {
+            printTiming();
+        }
+        return exitCode;
+    }
+
+    private int execute(String command, String[] args) throws IOException {
+        switch (command) {
+            case "list":
+                return list(loadEntries(), null);
+            case "search":
+                if (args.length != 1) {
+                    return usage("search needs exactly one search text");
+                }
+                return list(loadEntries(), args[0].toLowerCase(Locale.ROOT));
+            case "get":
+                if (args.length < 1 || args.length > 2) {
+                    return usage("get needs a website and optionally a username");
+                }
+                return get(args[0], args.length == 2 ? args[1] : null);
+            case "add":
+                if (args.length < 2 || args.length > 3) {
+                    return usage("add needs a website, a username and optionally a password");
+                }
+                return add(args[0], args[1], args.length == 3 ? args[2] : readLine());
+            case "export":
+                if (args.length > 1) {
+                    return usage("export takes at most one file name");
+                }
+                return export(args.length == 1 ? Paths.get(args[0]) : null);
+            case "attach":
+                if (args.length != 3) {
+                    return usage("attach needs a website, a username and a file");
+                }
+                return attach(args[0], args[1], Paths.get(args[2]));
+            case "attachments":
+                if (args.length != 2) {
+                    return usage("attachments needs a website and a username");
+                }
+                return attachments(args[0], args[1]);
+            case "open":
+                if (args.length != 3) {
+                    return usage("open needs a website, a username and an attachment name");
+                }
+                return open(args[0], args[1], args[2]);
+            default:
+                return usage("Unknown command: " + command);
+        }
+    }
+
+    // Listing only reads websites and usernames, which are stored in the clear
+    private static boolean needsVaultKey(String command) {
+        switch (command) {
+            case "list":
+            case "search":
+            case "attachments":
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    // Authenticates the user and starts a session of its own; unlocking the
+    // vault key costs a second slow key derivation, so it is skipped when
+    // the command does not decrypt or encrypt anything
+    private UserSession login(String user, boolean unlockVault) throws IOException {
+        String environment = System.getenv("PM_PASSWORD");
+        Secret password;
+        if (environment != null) {
+            password = Secret.copyOf(environment);
+        } else {
+            Console console = System.console();
+            if (console == null) {
+                throw new IOException("No console available, set PM_PASSWORD to log in non-interactively");
+            }
+            char[] typed = console.readPassword("Password for %s: ", user);
+            if (typed == null) {
+                return null;
+            }
+            password = Secret.wrap(typed);
+        }
+        try (password) {
+            return unlockVault ? UserManager.login(user, password)
+                    : UserManager.loginWithoutVaultKey(user, password);
+        }
+    }
+
+    private List<PasswordEntry> loadEntries() {
+        return session.getVault();
+    }
+
+    // Prints website and username of all entries, optionally filtered
+    private int list(List<PasswordEntry> entries, String filter) {
+        int shown = 0;
+        for (PasswordEntry entry : entries) {
+            if (filter == null
+                    || entry.getWebsite().toLowerCase(Locale.ROOT).contains(filter)
+                    || entry.getUsername().toLowerCase(Locale.ROOT).contains(filter)) {
+                out.println(entry.getWebsite() + "\t" + entry.getUsername());
+                shown++;
+            }
+        }
+        return filter != null && shown == 0 ? EXIT_NOT_FOUND : EXIT_OK;
+    }
+
+    // Prints the decrypted password of the matching entry
+    private int get(String website, String username) {
+        List<PasswordEntry> matches = new ArrayList<>();
+        for (PasswordEntry entry : loadEntries()) {
+            if (entry.getWebsite().equalsIgnoreCase(website)
+                    && (username == null || entry.getUsername().equalsIgnoreCase(username))) {
+                matches.add(entry);
+            }
+        }
+
+        if (matches.isEmpty()) {
+            err.println("No entry found for: " + website + (username != null ? " / " + username : ""));
+            return EXIT_NOT_FOUND;
+        }
+        if (matches.size() > 1) {
+            err.println("Several entries match " + website + ", pass a username to choose one:");
+            matches.forEach(entry -> err.println("  " + entry.getUsername()));
+            return EXIT_USAGE;
+        }
+
+        String password = matches.get(0).getDecryptedPassword();
+        if (password == null) {
+            err.println("The password of " + website + " could not be decrypted");
+            return EXIT_ERROR;
+        }
+        out.println(password);
+        return EXIT_OK;
+    }
+
+    // Adds a new entry to the current user's vault
+    private int add(String website, String username, String password) {
+        if (password == null || password.isEmpty()) {
+            return usage("No password given for the new entry");
+        }
+        if (!CSVHandler.isStorable(website, username)) {
+            return usage("Website and username must not contain commas or line breaks");
+        }
+
+        PasswordEntry entry = new PasswordEntry(website, username, password, session.getVaultKey());
+        List<PasswordEntry> saved = session.updateVault(entries -> {
+            entries.add(entry);
+            return entries;
+        });
+        if (saved == null) {
+            err.println("Could not save the vault of " + session.getUsername());
+            return EXIT_ERROR;
+        }
+        return EXIT_OK;
+    }
+
+    // Writes all entries with decrypted passwords to a file or stdout
+    private int export(Path file) throws IOException {
+        List<PasswordEntry> entries = loadEntries();
+
+        // Decrypt everything up front, on all cores for large vaults
+        List<byte[]> encrypted = new ArrayList<>(entries.size());
+        List<byte[]> associatedData = new ArrayList<>(entries.size());
+        for (PasswordEntry entry : entries) {
+            encrypted.add(entry.getEncryptedBytes());
+            associatedData.add(entry.getAssociatedData());
+        }
+        Secret[] passwords = new Secret[entries.size()];
+        EncryptionUtils.BatchResult result = EncryptionUtils.decryptAll(encrypted, associatedData, session.getVaultKey(),
+                passwords, true);
+
+        PrintWriter writer = null;
+        try {
+            writer = file == null
+                    ? new PrintWriter(out)
+                    : new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+            writer.println(EXPORT_HEADER);
+            for (int i = 0; i < entries.size(); i++) {
+                PasswordEntry entry = entries.get(i);
+                if (result.succeeded(i)) {
+                    writeCsvField(writer, entry.getWebsite());
+                    writer.print(',');
+                    writeCsvField(writer, entry.getUsername());
+                    writer.print(',');
+                    // Written from the Secret's characters, never as a String
+                    writeCsvField(writer, CharBuffer.wrap(passwords[i].chars()));
+                    writer.println();
+                    passwords[i].close();
+                } else {
+                    err.println("Skipped " + entry.getWebsite() + " / " + entry.getUsername()
+                            + ": could not decrypt (" + result.getError(i) + ")");
+                }
+            }
+        } finally {
+            for (Secret password : passwords) {
+                if (password != null) {
+                    password.close();
+                }
+            }
+            if (writer != null) {
+                if (file == null) {
+                    writer.flush();
+                } else {
+                    writer.close();
+                }
+            }
+        }
+        int exported = entries.size() - result.getFailureCount();
+        if (file != null) {
+            err.println("Exported " + exported + " entries to " + file);
+        }
+        return result.allSucceeded() ? EXIT_OK : EXIT_ERROR;
+    }
+
+    // Quotes a field as RFC 4180 requires, so passwords with commas, quotes
+    // or line breaks come back intact when the export is imported elsewhere
+    private static void writeCsvField(PrintWriter writer, CharSequence value) {
+        boolean quoted = false;
+        for (int i = 0; i < value.length() && !quoted; i++) {
+            char c = value.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quoted) {
+            writer.append(value);
+            return;
+        }
+        writer.print('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                writer.print('"');
+            }
+            writer.print(c);
+        }
+        writer.print('"');
+    }
+
+    // Encrypts a file into the entry's attachments
+    private int attach(String website, String username, Path file) {
+        PasswordEntry entry = findEntry(website, username);
+        if (entry == null) {
+            return EXIT_NOT_FOUND;
+        }
+        if (!Files.isRegularFile(file)) {
+            err.println("Not a file: " + file);
+            return EXIT_NOT_FOUND;
+        }
+        Attachment attachment = AttachmentStore.add(session, entry, file);
+        if (attachment == null) {
+            err.println("Could not attach " + file);
+            return EXIT_ERROR;
+        }
+        return EXIT_OK;
+    }
+
+    // Prints the name and size of each attachment of an entry
+    private int attachments(String website, String username) {
+        PasswordEntry entry = findEntry(website, username);
+        if (entry == null) {
+            return EXIT_NOT_FOUND;
+        }
+        for (Attachment attachment : AttachmentStore.list(session.getUsername(), entry)) {
+            out.println(attachment.getName() + "\t" + attachment.getSize());
+        }
+        return EXIT_OK;
+    }
+
+    // Streams an attachment to stdout; output stops at the first chunk that
+    // does not verify
+    private int open(String website, String username, String name) {
+        PasswordEntry entry = findEntry(website, username);
+        if (entry == null) {
+            return EXIT_NOT_FOUND;
+        }
+        for (Attachment attachment : AttachmentStore.list(session.getUsername(), entry)) {
+            if (attachment.getName().equals(name)) {
+                try (InputStream content = AttachmentStore.open(session, attachment)) {
+                    content.transferTo(out);
+                    return EXIT_OK;
+                } catch (IOException e) {
+                    err.println("Could not open " + name + ": " + e.getMessage());
+                    return EXIT_ERROR;
+                }
+            }
+        }
+        err.println("No attachment named " + name);
+        return EXIT_NOT_FOUND;
+    }
+
+    // Finds the entry with exactly this website and username
+    private PasswordEntry findEntry(String website, String username) {
+        for (PasswordEntry entry : loadEntries()) {
+            if (entry.getWebsite().equalsIgnoreCase(website) && entry.getUsername().equalsIgnoreCase(username)) {
+                return entry;
+            }
+        }
+        err.println("No entry found for: " + website + " / " + username);
+        return null;
+    }
+
+    private String readLine() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        return reader.readLine();
+    }
+
+    private int usage(String message) {
+        err.println(message);
+        err.println(USAGE);
+        return EXIT_USAGE;
+    }
+
+    // Reports the time spent from entering main until the command finished;
+    // JVM boot itself is best measured from outside, e.g. with "time"
+    private void printTiming() {
+        long micros = (System.nanoTime() - startedAt) / 1_000;
+        err.printf("Command finished %.1f ms after main()%n", micros / 1_000.0);
+    }
+}
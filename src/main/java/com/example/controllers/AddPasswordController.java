@@ -1,5 +1,7 @@
 package com.example.controllers;
 
+import com.example.utils.CSVHandler;
+import com.example.utils.Secret;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
@@ -54,6 +56,15 @@ public class AddPasswordController implements Initializable {
         this.stage = stage;
     }
 
+    /**
+     * Clear the form so a reused dialog does not show the previous entry
+     */
+    public void clearForm() {
+        websiteField.clear();
+        usernameField.clear();
+        passwordField.clear();
+    }
+
     @FXML
     private void handleCloseButton() {
         closeWindow();
@@ -63,22 +74,30 @@ public class AddPasswordController implements Initializable {
     private void handleSaveButton() {
         String website = websiteField.getText().trim();
         String username = usernameField.getText().trim();
-        String password = passwordField.getText();
-
-        if (website.isEmpty() || username.isEmpty() || password.isEmpty()) {
-            showAlert("Error", "All fields are required!");
-            return;
-        }
-
-        if (password.length() < 3) {
-            showAlert("Error", "Password must be at least 3 characters long!");
-            return;
-        }
 
-        // Save password entry through parent controller
-        if (parentController != null) {
-            parentController.addPasswordEntry(website, username, password);
+        // Read the password straight from the field's characters, never as a String
+        try (Secret password = Secret.copyOf(passwordField.getCharacters())) {
+            if (website.isEmpty() || username.isEmpty() || password.isEmpty()) {
+                showAlert("Error", "All fields are required!");
+                return;
+            }
+
+            if (password.length() < 3) {
+                showAlert("Error", "Password must be at least 3 characters long!");
+                return;
+            }
+
+            if (!CSVHandler.isStorable(website, username)) {
+                showAlert("Error", "Website and username must not contain commas!");
+                return;
+            }
+
+            // Save password entry through parent controller
+            if (parentController != null) {
+                parentController.addPasswordEntry(website, username, password);
+            }
         }
+        passwordField.clear();
 
         showAlert("Success", "Password saved successfully!");
         closeWindow();
@@ -2,28 +2,30 @@ package com.example.controllers;
 
 import com.example.App;
 import com.example.models.User;
+import com.example.utils.DataManager;
+import com.example.utils.DataWatcher;
+import com.example.utils.DialogManager;
+import com.example.utils.DialogManager.DialogType;
+import com.example.utils.ImageCache;
 import com.example.utils.UserManager;
+import com.example.utils.VaultLocks;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.HBox;
-import javafx.stage.Modality;
-import javafx.stage.Stage;
-import javafx.stage.StageStyle;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
 
 public class AdminController implements Initializable {
@@ -49,10 +51,15 @@ public class AdminController implements Initializable {
 
     private ObservableList<User> userData = FXCollections.observableArrayList();
 
+    // Follows registrations and deletions made outside this window
+    private DataWatcher.Registration usersWatch;
+    private volatile long userDataVersion = -1;
+
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         setupTableColumns();
         loadUserData();
+        usersWatch = DataWatcher.watch(DataManager.getUserDataFilePath(), this::handleUserDataChanged);
     }
 
     private void setupTableColumns() {
@@ -69,23 +76,8 @@ public class AdminController implements Initializable {
                 // Add style class to this cell for alignment
                 getStyleClass().add("actions-cell");
 
-                // Try to load delete icon, fallback to text if not available
-                try {
-                    java.io.InputStream deleteIconStream = getClass()
-                            .getResourceAsStream("/com/example/images/action-icons/delete-icon.png");
-                    if (deleteIconStream != null) {
-                        javafx.scene.image.ImageView deleteIcon = new javafx.scene.image.ImageView(
-                                new javafx.scene.image.Image(deleteIconStream));
-                        deleteIcon.setFitHeight(16);
-                        deleteIcon.setFitWidth(16);
-                        deleteButton.setGraphic(deleteIcon);
-                        deleteButton.setText("");
-                    } else {
-                        deleteButton.setText("🗑");
-                    }
-                } catch (Exception e) {
-                    deleteButton.setText("🗑");
-                }
+                // Use the shared delete icon, fallback to text if not available
+                ImageCache.applyActionIcon(deleteButton, ImageCache.DELETE_ICON, "🗑");
                 deleteButton.getStyleClass().addAll("btn", "delete", "action-btn");
                 deleteButton.setOnAction(event -> {
                     User user = getTableView().getItems().get(getIndex());
@@ -113,11 +105,43 @@ public class AdminController implements Initializable {
     }
 
     private void loadUserData() {
+        userDataVersion = VaultLocks.readVersion(DataManager.getUserDataFilePath());
         userData.clear();
         List<User> users = UserManager.getAllUsers();
         userData.addAll(users);
     }
 
+    // Runs on the watcher thread when user-data.csv changed on disk
+    private void handleUserDataChanged() {
+        long version = VaultLocks.readVersion(DataManager.getUserDataFilePath());
+        if (version == userDataVersion) {
+            return;
+        }
+        userDataVersion = version;
+        List<User> users = UserManager.getAllUsers();
+        Platform.runLater(() -> {
+            if (usersTable.getScene() == null) {
+                // The admin screen was left
+                usersWatch.cancel();
+                return;
+            }
+            applyUserChanges(users);
+        });
+    }
+
+    // Removes deleted users and appends new ones without rebuilding the table
+    private void applyUserChanges(List<User> users) {
+        Map<String, User> byName = new LinkedHashMap<>();
+        for (User user : users) {
+            byName.put(user.getUsername().toLowerCase(), user);
+        }
+        userData.removeIf(user -> !byName.containsKey(user.getUsername().toLowerCase()));
+        for (User user : userData) {
+            byName.remove(user.getUsername().toLowerCase());
+        }
+        userData.addAll(byName.values());
+    }
+
     private void handleDeleteUser(User user) {
         // Show confirmation dialog
         javafx.scene.control.Alert confirmAlert = new javafx.scene.control.Alert(
@@ -166,6 +190,7 @@ public class AdminController implements Initializable {
 
     @FXML
     private void handleLogout() {
+        usersWatch.cancel();
         try {
             App.setRoot("fxml/admin-login");
         } catch (IOException e) {
@@ -176,53 +201,12 @@ public class AdminController implements Initializable {
     @FXML
     private void handleManageProfile() {
         try {
-            // Load the change-admin-profile FXML
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/com/example/fxml/change-admin-profile.fxml"));
-            Parent root = loader.load();
-
-            // Create a new stage for the popup
-            Stage manageProfileStage = new Stage();
-            manageProfileStage.initModality(Modality.APPLICATION_MODAL);
-            manageProfileStage.initStyle(StageStyle.TRANSPARENT);
-            manageProfileStage.setTitle("Manage Admin Profile");
-
-            // Create scene and set it transparent
-            Scene scene = new Scene(root);
-            scene.setFill(javafx.scene.paint.Color.TRANSPARENT);
-
-            // Apply CSS stylesheets
-            scene.getStylesheets().add(getClass().getResource("/com/example/css/reset.css").toExternalForm());
-            scene.getStylesheets().add(getClass().getResource("/com/example/css/styles.css").toExternalForm());
-
-            manageProfileStage.setScene(scene);
-
-            // Make the window draggable
-            makeDraggable(root, manageProfileStage);
-            // Get the controller and set up callback
-            ChangeAdminProfileController controller = loader.getController();
-            controller.setStage(manageProfileStage);
-
-            // Show the popup
-            manageProfileStage.showAndWait();
-
+            DialogManager.<ChangeAdminProfileController>showDialog(DialogType.ADMIN_PROFILE, (controller, stage) -> {
+                controller.setStage(stage);
+                controller.resetForm();
+            });
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
-
-    // Method to make the popup draggable
-    private void makeDraggable(Parent root, Stage stage) {
-        final double[] xOffset = { 0 };
-        final double[] yOffset = { 0 };
-
-        root.setOnMousePressed(event -> {
-            xOffset[0] = event.getSceneX();
-            yOffset[0] = event.getSceneY();
-        });
-
-        root.setOnMouseDragged(event -> {
-            stage.setX(event.getScreenX() - xOffset[0]);
-            stage.setY(event.getScreenY() - yOffset[0]);
-        });
-    }
 }
@@ -49,6 +49,16 @@ public class ChangeAdminProfileController implements Initializable {
         this.stage = stage;
     }
 
+    /**
+     * Reset the form so a reused dialog starts from the stored admin data
+     */
+    public void resetForm() {
+        currentPasswordField.clear();
+        newPasswordField.clear();
+        confirmPasswordField.clear();
+        loadCurrentAdminData();
+    }
+
     private void loadCurrentAdminData() {
         // Pre-fill the username field with current admin email/username
         String currentEmail = AdminManager.getAdminEmail();
@@ -1,5 +1,8 @@
 package com.example.controllers;
 
+import com.example.models.PasswordEntry;
+import com.example.utils.CSVHandler;
+import com.example.utils.Secret;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
@@ -12,6 +15,7 @@ import javafx.stage.Stage;
 
 import java.net.URL;
 import java.util.ResourceBundle;
+import java.util.function.Predicate;
 
 /**
  * Controller for editing password entries.
@@ -41,8 +45,8 @@ public class ChangeSavedDataController implements Initializable {
     private Button cancelButton;
 
     private Stage stage;
-    private UserController.PasswordEntry passwordEntry;
-    private Runnable onSaveCallback;
+    private PasswordEntry passwordEntry;
+    private Predicate<PasswordEntry> onSaveCallback;
 
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
@@ -53,17 +57,26 @@ public class ChangeSavedDataController implements Initializable {
         this.stage = stage;
     }
 
-    public void setPasswordEntry(UserController.PasswordEntry entry) {
+    public void setPasswordEntry(PasswordEntry entry) {
         this.passwordEntry = entry;
         // Pre-fill the form with existing data
         if (entry != null) {
             websiteField.setText(entry.getWebsite());
             usernameField.setText(entry.getUsername());
-            passwordField.setText(entry.getDecryptedPassword()); // Use decrypted password for editing
+            try (Secret password = entry.getDecryptedSecret()) { // Use decrypted password for editing
+                if (password != null) {
+                    // The text field can only take a String; it is the only copy made
+                    passwordField.setText(new String(password.chars()));
+                } else {
+                    // Damaged password, let the user type a new one
+                    passwordField.setPromptText("Password could not be decrypted, enter a new one");
+                }
+            }
         }
     }
 
-    public void setOnSaveCallback(Runnable callback) {
+    // The callback saves the edited copy and returns whether that worked
+    public void setOnSaveCallback(Predicate<PasswordEntry> callback) {
         this.onSaveCallback = callback;
     }
 
@@ -76,29 +89,36 @@ public class ChangeSavedDataController implements Initializable {
     private void handleSaveButton() {
         String website = websiteField.getText().trim();
         String username = usernameField.getText().trim();
-        String password = passwordField.getText().trim();
 
-        // Validation
-        if (website.isEmpty() || username.isEmpty() || password.isEmpty()) {
-            showAlert("Error", "All fields are required!");
-            return;
-        }
-
-        if (password.length() < 3) {
-            showAlert("Error", "Password must be at least 3 characters long!");
-            return;
-        }
-
-        // Update the password entry
-        if (passwordEntry != null) {
-            passwordEntry.setWebsite(website);
-            passwordEntry.setUsername(username);
-            passwordEntry.setPassword(password);
-        }
-
-        // Call the callback to notify the parent controller
-        if (onSaveCallback != null) {
-            onSaveCallback.run();
+        try (Secret password = Secret.copyOfTrimmed(passwordField.getCharacters())) {
+            // Validation
+            if (website.isEmpty() || username.isEmpty() || password.isEmpty()) {
+                showAlert("Error", "All fields are required!");
+                return;
+            }
+
+            if (password.length() < 3) {
+                showAlert("Error", "Password must be at least 3 characters long!");
+                return;
+            }
+
+            if (!CSVHandler.isStorable(website, username)) {
+                showAlert("Error", "Website and username must not contain commas!");
+                return;
+            }
+
+            // Edit a copy; the entry shown in the table belongs to the session
+            // and must stay as it is unless the save succeeds
+            if (passwordEntry == null || onSaveCallback == null) {
+                closeWindow();
+                return;
+            }
+            PasswordEntry edited = passwordEntry.copyAs(website, username);
+            edited.setPassword(password);
+            if (!onSaveCallback.test(edited)) {
+                showAlert("Error", "Password entry could not be saved!");
+                return;
+            }
         }
 
         showAlert("Success", "Password entry updated successfully!");
@@ -111,6 +131,7 @@ public class ChangeSavedDataController implements Initializable {
     }
 
     private void closeWindow() {
+        passwordField.clear();
         if (stage != null) {
             stage.close();
         } else {
@@ -6,6 +6,9 @@ package com.example.controllers;
  */
 
 import com.example.App;
+import com.example.models.PasswordEntry;
+import com.example.utils.ImageCache;
+import com.example.utils.Secret;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -14,8 +17,6 @@ import javafx.fxml.Initializable;
 import javafx.scene.control.Button;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
-import javafx.scene.control.cell.PropertyValueFactory;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.HBox;
 
@@ -61,14 +62,11 @@ public class GuestController implements Initializable {
 
     // Configures the table columns and sets up the action buttons
     private void setupTableColumns() { // Set up data columns
-        websiteColumn.setCellValueFactory(new PropertyValueFactory<>("website"));
-        usernameColumn.setCellValueFactory(new PropertyValueFactory<>("username"));
-
-        // Set up password column to show asterisks for the password
-        passwordColumn.setCellValueFactory(cellData -> {
-            String maskedPassword = "••••••••"; // Fixed mask for demo mode
-            return new javafx.beans.property.SimpleStringProperty(maskedPassword);
-        });// Set up actions column with icons
+        websiteColumn.setCellValueFactory(cellData -> cellData.getValue().websiteProperty());
+        usernameColumn.setCellValueFactory(cellData -> cellData.getValue().usernameProperty());
+
+        // Set up password column to show the fixed demo mask
+        passwordColumn.setCellValueFactory(cellData -> cellData.getValue().maskedPasswordProperty());// Set up actions column with icons
         actionsColumn.setCellFactory(param -> new javafx.scene.control.TableCell<PasswordEntry, Void>() {
             private final Button viewButton = new Button("👁");
             private final Button editButton = new Button("✏");
@@ -79,56 +77,12 @@ public class GuestController implements Initializable {
                 // Add style class to this cell
                 getStyleClass().add("actions-cell");
 
-                // Try to load action icons, fallback to text if not available
-                try {
-                    InputStream viewIconStream = getClass()
-                            .getResourceAsStream("/com/example/images/action-icons/view-icon.png");
-                    InputStream editIconStream = getClass()
-                            .getResourceAsStream("/com/example/images/action-icons/edit-icon.png");
-                    InputStream deleteIconStream = getClass()
-                            .getResourceAsStream("/com/example/images/action-icons/delete-icon.png");
-                    if (viewIconStream != null) {
-                        ImageView viewIcon = new ImageView(new Image(viewIconStream));
-                        viewIcon.setFitHeight(16);
-                        viewIcon.setFitWidth(16);
-                        viewButton.setGraphic(viewIcon);
-                        viewButton.setText("");
-                    } else {
-                        viewButton.setText("👁"); // Keep emoji fallback if icon not found
-                    }
-
-                    if (editIconStream != null) {
-                        ImageView editIcon = new ImageView(new Image(editIconStream));
-                        editIcon.setFitHeight(16);
-                        editIcon.setFitWidth(16);
-                        editButton.setGraphic(editIcon);
-                        editButton.setText("");
-                    } else {
-                        editButton.setText("✏"); // Keep emoji fallback if icon not found
-                    }
+                // Use the shared action icons, fallback to text if not available
+                ImageCache.applyActionIcon(viewButton, ImageCache.VIEW_ICON, "👁");
+                ImageCache.applyActionIcon(editButton, ImageCache.EDIT_ICON, "✏");
+                ImageCache.applyActionIcon(deleteButton, ImageCache.DELETE_ICON, "🗑");
 
-                    if (deleteIconStream != null) {
-                        ImageView deleteIcon = new ImageView(new Image(deleteIconStream));
-                        deleteIcon.setFitHeight(16);
-                        deleteIcon.setFitWidth(16);
-                        deleteButton.setGraphic(deleteIcon);
-                        deleteButton.setText("");
-                    } else {
-                        deleteButton.setText("🗑"); // Keep emoji fallback if icon not found
-                    }
-                } catch (Exception e) {
-                    System.out.println("Could not load PNG action icons, using emoji fallbacks: " + e.getMessage());
-                    // Set emoji fallbacks if there's any exception
-                    if (viewButton.getGraphic() == null && viewButton.getText().isEmpty()) {
-                        viewButton.setText("👁");
-                    }
-                    if (editButton.getGraphic() == null && editButton.getText().isEmpty()) {
-                        editButton.setText("✏");
-                    }
-                    if (deleteButton.getGraphic() == null && deleteButton.getText().isEmpty()) {
-                        deleteButton.setText("🗑");
-                    }
-                } // Style buttons
+                // Style buttons
                 viewButton.getStyleClass().add("action-btn");
                 editButton.getStyleClass().add("action-btn");
                 deleteButton.getStyleClass().add("action-btn");
@@ -172,11 +126,10 @@ public class GuestController implements Initializable {
 
                     String[] data = line.split(",");
                     if (data.length >= 3) {
-                        passwordData.add(new PasswordEntry(
+                        // The real password is never loaded in guest mode
+                        passwordData.add(new DemoPasswordEntry(
                                 data[0].trim(),
-                                data[1].trim(),
-                                "••••••••" // Mask the password for security in guest mode
-                        ));
+                                data[1].trim()));
                     }
                 }
                 reader.close();
@@ -193,9 +146,9 @@ public class GuestController implements Initializable {
     // Adds default password entries if sample data couldn't be loaded
     private void addFallbackData() {
         passwordData.addAll(
-                new PasswordEntry("Facebook", "john.doe@email.com", "••••••••"),
-                new PasswordEntry("Gmail", "johndoe123", "••••••••"),
-                new PasswordEntry("GitHub", "john_developer", "••••••••"));
+                new DemoPasswordEntry("Facebook", "john.doe@email.com"),
+                new DemoPasswordEntry("Gmail", "johndoe123"),
+                new DemoPasswordEntry("GitHub", "john_developer"));
     } // Handles the view button click to show password details
 
     private void handleViewAction(PasswordEntry entry) {
@@ -330,51 +283,50 @@ public class GuestController implements Initializable {
     }
 
     /**
-     * Simple data model class for guest mode password entries
+     * Demo entry for guest mode
      * Note: In guest mode, we don't actually use encryption since these are demo
-     * entries only
+     * entries only, so no ciphertext is stored at all
      */
-    public static class PasswordEntry {
-        private String website;
-        private String username;
-        private String password;
-
-        public PasswordEntry(String website, String username, String password) {
-            this.website = website;
-            this.username = username;
-            this.password = password;
-        }
-
-        public String getWebsite() {
-            return website;
-        }
+    private static class DemoPasswordEntry extends PasswordEntry {
+        private static final String DEMO_PASSWORD = "DemoPassword123!";
+        private static final String DEMO_MASK = "••••••••"; // Fixed mask for demo mode
 
-        public void setWebsite(String website) {
-            this.website = website;
-        }
-
-        public String getUsername() {
-            return username;
-        }
-
-        public void setUsername(String username) {
-            this.username = username;
+        DemoPasswordEntry(String website, String username) {
+            super(website, username);
         }
 
+        @Override
         public String getPassword() {
-            return password;
+            return DEMO_MASK;
         }
 
+        @Override
         public void setPassword(String password) {
-            this.password = password;
+            // Changes are never kept in guest mode
+        }
+
+        @Override
+        public void setPassword(Secret password) {
+            // Changes are never kept in guest mode
         }
 
         /**
          * For compatibility with the main application's interface
          * In guest mode, this returns a demo password
          */
+        @Override
         public String getDecryptedPassword() {
-            return "DemoPassword123!";
+            return DEMO_PASSWORD;
+        }
+
+        @Override
+        public Secret getDecryptedSecret() {
+            return Secret.copyOf(DEMO_PASSWORD);
+        }
+
+        @Override
+        protected String mask() {
+            return DEMO_MASK;
         }
     }
 }
@@ -3,6 +3,7 @@ package com.example.controllers;
 import java.io.IOException;
 
 import com.example.App;
+import com.example.utils.Secret;
 import com.example.utils.UserManager;
 
 import javafx.application.Platform;
@@ -36,16 +37,19 @@ public class LoginController {
     @FXML
     private void handleSignIn() {
         String emailOrUsername = emailField.getText().trim();
-        String password = passwordField.getText();
+        boolean authenticated;
+        try (Secret password = Secret.copyOf(passwordField.getCharacters())) {
+            // Validate input
+            if (emailOrUsername.isEmpty() || password.isEmpty()) {
+                showAlert("Error", "Please enter both email/username and password.");
+                return;
+            }
 
-        // Validate input
-        if (emailOrUsername.isEmpty() || password.isEmpty()) {
-            showAlert("Error", "Please enter both email/username and password.");
-            return;
+            // Attempt authentication
+            authenticated = UserManager.authenticateUser(emailOrUsername, password);
         }
-
-        // Attempt authentication
-        if (UserManager.authenticateUser(emailOrUsername, password)) {
+        passwordField.clear();
+        if (authenticated) {
             try {
                 // Successful login, navigate to user dashboard
                 App.setRoot("fxml/user-view");
@@ -1,6 +1,7 @@
 package com.example.controllers;
 
 import com.example.App;
+import com.example.utils.Secret;
 import com.example.utils.UserManager;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
@@ -44,28 +45,31 @@ public class RegisterController {
     private void handleCreateAccount() {
         String name = nameField.getText().trim();
         String email = emailField.getText().trim();
-        String password = passwordField.getText();
+        boolean registered;
+        try (Secret password = Secret.copyOf(passwordField.getCharacters())) {
+            // Validate input
+            if (name.isEmpty() || email.isEmpty() || password.isEmpty()) {
+                showAlert("Error", "Please fill in all fields.");
+                return;
+            }
 
-        // Validate input
-        if (name.isEmpty() || email.isEmpty() || password.isEmpty()) {
-            showAlert("Error", "Please fill in all fields.");
-            return;
-        }
+            // Validate email format
+            if (!isValidEmail(email)) {
+                showAlert("Error", "Please enter a valid email address.");
+                return;
+            }
 
-        // Validate email format
-        if (!isValidEmail(email)) {
-            showAlert("Error", "Please enter a valid email address.");
-            return;
-        }
+            // Validate password strength
+            if (password.length() < 6) {
+                showAlert("Error", "Password must be at least 6 characters long.");
+                return;
+            }
 
-        // Validate password strength
-        if (password.length() < 6) {
-            showAlert("Error", "Password must be at least 6 characters long.");
-            return;
+            // Attempt registration
+            registered = UserManager.registerUser(name, email, password);
         }
-
-        // Attempt registration
-        if (UserManager.registerUser(name, email, password)) {
+        passwordField.clear();
+        if (registered) {
             showAlert("Success", "Account created successfully! You can now log in.");
             try {
                 App.setRoot("fxml/login");
@@ -1,34 +1,37 @@
 package com.example.controllers;
 
 import com.example.App;
+import com.example.models.PasswordEntry;
 import com.example.models.User;
-import com.example.utils.CSVHandler;
+import com.example.logging.Log;
+import com.example.utils.AttachmentStore;
+import com.example.utils.DataManager;
+import com.example.utils.DataWatcher;
+import com.example.utils.DialogManager;
+import com.example.utils.DialogManager.DialogType;
+import com.example.utils.ImageCache;
+import com.example.utils.Secret;
 import com.example.utils.UserManager;
+import com.example.utils.UserSession;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
-import javafx.scene.control.cell.PropertyValueFactory;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.HBox;
-import javafx.stage.Modality;
-import javafx.stage.Stage;
-import javafx.stage.StageStyle;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.lang.System.Logger.Level;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.function.UnaryOperator;
 
 /**
  * Controller for the user view that displays and manages user's stored
@@ -37,6 +40,8 @@ import java.util.ResourceBundle;
  */
 public class UserController implements Initializable {
 
+    private static final System.Logger LOG = Log.getLogger(UserController.class);
+
     @FXML
     private ImageView closeButton;
 
@@ -65,11 +70,20 @@ public class UserController implements Initializable {
 
     private ObservableList<PasswordEntry> passwordData = FXCollections.observableArrayList();
 
+    // Follow changes made to the vault and the user list outside this window
+    private DataWatcher.Registration vaultWatch;
+    private DataWatcher.Registration usersWatch;
+
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         setupTableColumns();
         setupWelcomeMessage();
         loadUserData();
+        startWatchingData();
+
+        // Prepare the popups once the dashboard has been painted
+        Platform.runLater(() -> DialogManager.warmUp(
+                DialogType.VIEW_PASSWORD, DialogType.EDIT_PASSWORD, DialogType.ADD_PASSWORD));
     }
 
     private void setupWelcomeMessage() {
@@ -82,21 +96,18 @@ public class UserController implements Initializable {
             try {
                 App.setRoot("fxml/login");
             } catch (IOException e) {
-                e.printStackTrace();
+                LOG.log(Level.ERROR, "Error loading login screen", e);
             }
         }
     }
 
     private void setupTableColumns() {
         // Set up data columns
-        websiteColumn.setCellValueFactory(new PropertyValueFactory<>("website"));
-        usernameColumn.setCellValueFactory(new PropertyValueFactory<>("username"));
+        // Cells observe the entry's properties, so an edit repaints only its own row
+        websiteColumn.setCellValueFactory(cellData -> cellData.getValue().websiteProperty());
+        usernameColumn.setCellValueFactory(cellData -> cellData.getValue().usernameProperty());
         // Set up password column to show asterisks for the decrypted password
-        passwordColumn.setCellValueFactory(cellData -> {
-            String password = cellData.getValue().getDecryptedPassword();
-            String maskedPassword = "*".repeat(password != null ? password.length() : 6);
-            return new javafx.beans.property.SimpleStringProperty(maskedPassword);
-        });// Set up actions column with icons
+        passwordColumn.setCellValueFactory(cellData -> cellData.getValue().maskedPasswordProperty());// Set up actions column with icons
         actionsColumn.setCellFactory(param -> new javafx.scene.control.TableCell<PasswordEntry, Void>() {
             private final Button viewButton = new Button("👁");
             private final Button editButton = new Button("✏");
@@ -107,56 +118,12 @@ public class UserController implements Initializable {
                 // Add style class to this cell
                 getStyleClass().add("actions-cell");
 
-                // Try to load action icons, fallback to text if not available
-                try {
-                    InputStream viewIconStream = getClass()
-                            .getResourceAsStream("/com/example/images/action-icons/view-icon.png");
-                    InputStream editIconStream = getClass()
-                            .getResourceAsStream("/com/example/images/action-icons/edit-icon.png");
-                    InputStream deleteIconStream = getClass()
-                            .getResourceAsStream("/com/example/images/action-icons/delete-icon.png");
-                    if (viewIconStream != null) {
-                        ImageView viewIcon = new ImageView(new Image(viewIconStream));
-                        viewIcon.setFitHeight(16);
-                        viewIcon.setFitWidth(16);
-                        viewButton.setGraphic(viewIcon);
-                        viewButton.setText("");
-                    } else {
-                        viewButton.setText("👁"); // Keep emoji fallback if icon not found
-                    }
-
-                    if (editIconStream != null) {
-                        ImageView editIcon = new ImageView(new Image(editIconStream));
-                        editIcon.setFitHeight(16);
-                        editIcon.setFitWidth(16);
-                        editButton.setGraphic(editIcon);
-                        editButton.setText("");
-                    } else {
-                        editButton.setText("✏"); // Keep emoji fallback if icon not found
-                    }
+                // Use the shared action icons, fallback to text if not available
+                ImageCache.applyActionIcon(viewButton, ImageCache.VIEW_ICON, "👁");
+                ImageCache.applyActionIcon(editButton, ImageCache.EDIT_ICON, "✏");
+                ImageCache.applyActionIcon(deleteButton, ImageCache.DELETE_ICON, "🗑");
 
-                    if (deleteIconStream != null) {
-                        ImageView deleteIcon = new ImageView(new Image(deleteIconStream));
-                        deleteIcon.setFitHeight(16);
-                        deleteIcon.setFitWidth(16);
-                        deleteButton.setGraphic(deleteIcon);
-                        deleteButton.setText("");
-                    } else {
-                        deleteButton.setText("🗑"); // Keep emoji fallback if icon not found
-                    }
-                } catch (Exception e) {
-                    System.out.println("Could not load PNG action icons, using emoji fallbacks: " + e.getMessage());
-                    // Set emoji fallbacks if there's any exception
-                    if (viewButton.getGraphic() == null && viewButton.getText().isEmpty()) {
-                        viewButton.setText("👁");
-                    }
-                    if (editButton.getGraphic() == null && editButton.getText().isEmpty()) {
-                        editButton.setText("✏");
-                    }
-                    if (deleteButton.getGraphic() == null && deleteButton.getText().isEmpty()) {
-                        deleteButton.setText("🗑");
-                    }
-                } // Style buttons
+                // Style buttons
                 viewButton.getStyleClass().add("action-btn");
                 editButton.getStyleClass().add("action-btn");
                 deleteButton.getStyleClass().add("action-btn");
@@ -184,24 +151,24 @@ public class UserController implements Initializable {
     }
 
     private void loadUserData() {
-        User currentUser = UserManager.getCurrentUser();
-        if (currentUser != null) {
-            // Load passwords from user-specific CSV file
-            List<PasswordEntry> loadedPasswords = CSVHandler.loadUserPasswordsFromCSV(currentUser.getUsername());
+        UserSession session = UserManager.getCurrentSession();
+        if (session != null) {
+            // Load passwords from the session's vault
+            List<PasswordEntry> loadedPasswords = session.getVault();
 
             // Clear existing data and add loaded data
             passwordData.clear();
             passwordData.addAll(loadedPasswords);
 
-            System.out.println(
-                    "Loaded " + passwordData.size() + " password entries for user: " + currentUser.getUsername());
+            LOG.log(Level.INFO, "Loaded {0} password entries for user: {1}", passwordData.size(),
+                    session.getUsername());
         } else {
             // If no user is logged in, redirect to login
             try {
                 App.setRoot("fxml/login");
                 return;
             } catch (IOException e) {
-                e.printStackTrace();
+                LOG.log(Level.ERROR, "Error loading login screen", e);
             }
         }
 
@@ -210,121 +177,196 @@ public class UserController implements Initializable {
 
         // Print status message
         if (passwordData.isEmpty()) {
-            System.out.println("No password data loaded. Table will be empty.");
+            LOG.log(Level.INFO, "No password data loaded. Table will be empty.");
         }
     }
 
-    private void handleViewAction(PasswordEntry entry) {
-        if (entry == null) {
-            System.out.println("No entry selected for viewing");
+    // Reloads the vault when another instance or the command line changes it
+    private void startWatchingData() {
+        UserSession session = UserManager.getCurrentSession();
+        if (session == null) {
             return;
         }
+        String username = session.getUsername();
+
+        // An idle session is evicted and its vault key destroyed; lock the
+        // window by going back to the login screen
+        session.onClose(() -> Platform.runLater(() -> {
+            if (isShowing()) {
+                LOG.log(Level.INFO, "Session of {0} ended, back to login", username);
+                handleBackToLogin();
+            }
+        }));
 
-        try {
-            // Load the view-password FXML
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/com/example/fxml/view-password.fxml"));
-            Parent root = loader.load();
+        vaultWatch = DataWatcher.watch(DataManager.getUserPasswordFilePath(username), () -> {
+            if (session.isClosed()) {
+                return;
+            }
+            // Returns null when this window saved the change itself
+            // Reloads here, off the FX thread; the table takes the session's vault
+            // as it is when the update runs, since a local save may have come in between
+            if (session.reloadVaultIfChanged() != null) {
+                Platform.runLater(() -> {
+                    if (isShowing() && !session.isClosed()) {
+                        LOG.log(Level.INFO, "Vault of {0} changed on disk, updating table", username);
+                        applyVaultChanges(new ArrayList<>(session.getVault()));
+                    }
+                });
+            }
+        });
 
-            // Create a new stage for the popup
-            Stage viewStage = new Stage();
-            viewStage.initModality(Modality.APPLICATION_MODAL);
-            viewStage.initStyle(StageStyle.TRANSPARENT);
-            viewStage.setTitle("View Password");
+        usersWatch = DataWatcher.watch(DataManager.getUserDataFilePath(), () -> {
+            if (UserManager.findUserByUsername(username) == null) {
+                Platform.runLater(() -> {
+                    if (isShowing()) {
+                        LOG.log(Level.INFO, "User {0} was deleted, logging out", username);
+                        handleBackToLogin();
+                    }
+                });
+            }
+        });
+    }
 
-            // Create scene and set it transparent
-            Scene scene = new Scene(root);
-            scene.setFill(javafx.scene.paint.Color.TRANSPARENT);
+    private void stopWatchingData() {
+        if (vaultWatch != null) {
+            vaultWatch.cancel();
+            vaultWatch = null;
+        }
+        if (usersWatch != null) {
+            usersWatch.cancel();
+            usersWatch = null;
+        }
+    }
 
-            // Apply CSS stylesheets
-            scene.getStylesheets().add(getClass().getResource("/com/example/css/reset.css").toExternalForm());
-            scene.getStylesheets().add(getClass().getResource("/com/example/css/styles.css").toExternalForm());
+    // False once the dashboard was replaced by another screen
+    private boolean isShowing() {
+        if (passwordTable.getScene() == null) {
+            stopWatchingData();
+            return false;
+        }
+        return true;
+    }
 
-            viewStage.setScene(scene);
+    /**
+     * Bring the table in line with the given vault contents by changing only
+     * the rows that differ, so scrolling and selection are kept. The table
+     * follows the vault order: rows that match at the start and at the end
+     * are kept, and the span between them is updated position by position,
+     * so an edited or renamed entry stays in its row.
+     *
+     * @param entries The new vault contents
+     */
+    private void applyVaultChanges(List<PasswordEntry> entries) {
+        int start = 0;
+        int shownEnd = passwordData.size();
+        int end = entries.size();
+        while (start < shownEnd && start < end && isSameEntry(passwordData.get(start), entries.get(start))) {
+            start++;
+        }
+        while (shownEnd > start && end > start && isSameEntry(passwordData.get(shownEnd - 1), entries.get(end - 1))) {
+            shownEnd--;
+            end--;
+        }
 
-            // Make the window draggable
-            makeDraggable(root, viewStage);
+        // Replace the changed rows where they are, then remove or add the rest
+        int common = Math.min(shownEnd, end) - start;
+        for (int i = start; i < start + common; i++) {
+            if (!isSameEntry(passwordData.get(i), entries.get(i))) {
+                passwordData.set(i, entries.get(i));
+            }
+        }
+        if (shownEnd > start + common) {
+            passwordData.remove(start + common, shownEnd);
+        } else if (end > start + common) {
+            passwordData.addAll(start + common, entries.subList(start + common, end));
+        }
+    }
 
-            // Get the controller and set up the data
-            ViewPasswordController controller = loader.getController();
-            controller.setStage(viewStage);
-            controller.setPasswordEntry(entry);
+    // Reloaded entries are new objects, so they are compared by content
+    private static boolean isSameEntry(PasswordEntry shown, PasswordEntry entry) {
+        return shown == entry || shown.getWebsite().equals(entry.getWebsite())
+                && shown.getUsername().equals(entry.getUsername()) && shown.hasSamePassword(entry);
+    }
 
-            // Show the popup
-            viewStage.showAndWait();
+    private void handleViewAction(PasswordEntry entry) {
+        if (entry == null) {
+            LOG.log(Level.INFO, "No entry selected for viewing");
+            return;
+        }
 
+        try {
+            DialogManager.<ViewPasswordController>showDialog(DialogType.VIEW_PASSWORD, (controller, stage) -> {
+                controller.setStage(stage);
+                controller.setPasswordEntry(entry);
+            });
         } catch (IOException e) {
-            e.printStackTrace();
-            System.out.println("Error loading view dialog: " + e.getMessage());
+            LOG.log(Level.ERROR, "Error loading view dialog", e);
         }
     }
 
     private void handleEditAction(PasswordEntry entry) {
         if (entry == null) {
-            System.out.println("No entry selected for editing");
+            LOG.log(Level.INFO, "No entry selected for editing");
             return;
         }
 
+        String oldWebsite = entry.getWebsite();
+        String oldUsername = entry.getUsername();
+
         try {
-            // Load the change-saved-data FXML
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/com/example/fxml/change-saved-data.fxml"));
-            Parent root = loader.load();
-
-            // Create a new stage for the popup
-            Stage editStage = new Stage();
-            editStage.initModality(Modality.APPLICATION_MODAL);
-            editStage.initStyle(StageStyle.TRANSPARENT);
-            editStage.setTitle("Edit Password Entry");
-
-            // Create scene and set it transparent
-            Scene scene = new Scene(root);
-            scene.setFill(javafx.scene.paint.Color.TRANSPARENT);
-
-            // Apply CSS stylesheets
-            scene.getStylesheets().add(getClass().getResource("/com/example/css/reset.css").toExternalForm());
-            scene.getStylesheets().add(getClass().getResource("/com/example/css/styles.css").toExternalForm());
-
-            editStage.setScene(scene);
-
-            // Make the window draggable
-            makeDraggable(root, editStage);
-
-            // Get the controller and set up the data
-            ChangeSavedDataController controller = loader.getController();
-            controller.setStage(editStage);
-            controller.setPasswordEntry(entry);
-
-            // Set up callback to save data when the dialog is closed
-            controller.setOnSaveCallback(() -> {
-                // Save updated data back to user-specific CSV
-                User currentUser = UserManager.getCurrentUser();
-                if (currentUser != null) {
-                    CSVHandler.saveUserPasswordsToCSV(currentUser.getUsername(), passwordData);
-                    System.out.println("Password entry updated and saved to CSV.");
-
-                    // Refresh the table to show updated data
-                    passwordTable.refresh();
-                }
+            DialogManager.<ChangeSavedDataController>showDialog(DialogType.EDIT_PASSWORD, (controller, stage) -> {
+                controller.setStage(stage);
+                controller.setPasswordEntry(entry);
+
+                // The dialog hands over an edited copy; the shown entry takes
+                // over its values only once the change has been saved
+                controller.setOnSaveCallback(edited -> {
+                    List<PasswordEntry> saved = saveUserData(entries -> {
+                        int index = entries.indexOf(entry);
+                        if (index < 0) {
+                            index = indexOfEntry(entries, oldWebsite, oldUsername);
+                        }
+                        if (index >= 0) {
+                            entries.set(index, edited);
+                        } else {
+                            entries.add(edited);
+                        }
+                        return entries;
+                    });
+                    if (saved == null) {
+                        return false;
+                    }
+                    // Updated through its properties, so only the row's cells change
+                    entry.updateFrom(edited);
+                    applyVaultChanges(saved);
+                    LOG.log(Level.INFO, "Password entry updated and saved to CSV.");
+                    AttachmentStore.renameEntry(UserManager.getCurrentSession().getUsername(), oldWebsite,
+                            oldUsername, edited.getWebsite(), edited.getUsername());
+                    return true;
+                });
             });
-
-            // Show the popup
-            editStage.showAndWait();
-
         } catch (IOException e) {
-            e.printStackTrace();
-            System.out.println("Error loading edit dialog: " + e.getMessage());
+            LOG.log(Level.ERROR, "Error loading edit dialog", e);
         }
     }
 
     private void handleDeleteAction(PasswordEntry entry) {
-        System.out.println("Delete action for: " + entry.getWebsite());
-        // Remove from the table
-        passwordData.remove(entry);
-
-        // Save updated data back to user-specific CSV
-        User currentUser = UserManager.getCurrentUser();
-        if (currentUser != null) {
-            CSVHandler.saveUserPasswordsToCSV(currentUser.getUsername(), passwordData);
-            System.out.println("Entry deleted and user CSV updated.");
+        LOG.log(Level.INFO, "Delete action for: {0}", entry.getWebsite());
+        String website = entry.getWebsite();
+        String username = entry.getUsername();
+
+        // Remove from the vault and save updated data back to user-specific CSV
+        if (updateUserData(entries -> {
+            if (!entries.remove(entry)) {
+                int index = indexOfEntry(entries, website, username);
+                if (index >= 0) {
+                    entries.remove(index);
+                }
+            }
+            return entries;
+        })) {
+            LOG.log(Level.INFO, "Entry deleted and user CSV updated.");
+            AttachmentStore.removeAll(UserManager.getCurrentSession().getUsername(), website, username);
         }
     }
 
@@ -337,68 +379,27 @@ public class UserController implements Initializable {
     private void handleBackToLogin() {
         try {
             // Log out the current user
+            stopWatchingData();
             UserManager.logout();
             App.setRoot("fxml/login");
         } catch (IOException e) {
-            e.printStackTrace();
+            LOG.log(Level.ERROR, "Error loading login screen", e);
         }
     }
 
     @FXML
     private void handleAddPassword() {
         try {
-            // Load the add-password FXML
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/com/example/fxml/add-password.fxml"));
-            Parent root = loader.load();
-
-            // Create a new stage for the popup
-            Stage addPasswordStage = new Stage();
-            addPasswordStage.initModality(Modality.APPLICATION_MODAL);
-            addPasswordStage.initStyle(StageStyle.TRANSPARENT);
-            addPasswordStage.setTitle("Add Password");
-
-            // Create scene and set it transparent
-            Scene scene = new Scene(root);
-            scene.setFill(javafx.scene.paint.Color.TRANSPARENT);
-
-            // Apply CSS stylesheets
-            scene.getStylesheets().add(getClass().getResource("/com/example/css/reset.css").toExternalForm());
-            scene.getStylesheets().add(getClass().getResource("/com/example/css/styles.css").toExternalForm());
-
-            addPasswordStage.setScene(scene);
-
-            // Make the window draggable
-            makeDraggable(root, addPasswordStage);
-
-            // Get the controller and set up callback for saving
-            AddPasswordController controller = loader.getController();
-            controller.setParentController(this);
-            controller.setStage(addPasswordStage);
-
-            // Show the popup
-            addPasswordStage.showAndWait();
-
+            DialogManager.<AddPasswordController>showDialog(DialogType.ADD_PASSWORD, (controller, stage) -> {
+                controller.setParentController(this);
+                controller.setStage(stage);
+                controller.clearForm();
+            });
         } catch (IOException e) {
-            e.printStackTrace();
+            LOG.log(Level.ERROR, "Error loading add dialog", e);
         }
     }
 
-    // Method to make the popup draggable
-    private void makeDraggable(Parent root, Stage stage) {
-        final double[] xOffset = { 0 };
-        final double[] yOffset = { 0 };
-
-        root.setOnMousePressed(event -> {
-            xOffset[0] = event.getSceneX();
-            yOffset[0] = event.getSceneY();
-        });
-
-        root.setOnMouseDragged(event -> {
-            stage.setX(event.getScreenX() - xOffset[0]);
-            stage.setY(event.getScreenY() - yOffset[0]);
-        });
-    }
-
     /**
      * Refresh the password data from CSV file
      */
@@ -409,63 +410,50 @@ public class UserController implements Initializable {
     /**
      * Add a new password entry and save to CSV
      */
-    public void addPasswordEntry(String website, String username, String password) {
-        PasswordEntry newEntry = new PasswordEntry(website, username, password);
-        passwordData.add(newEntry);
-
-        User currentUser = UserManager.getCurrentUser();
-        if (currentUser != null) {
-            CSVHandler.saveUserPasswordsToCSV(currentUser.getUsername(), passwordData);
-            System.out.println("New password entry added and saved to user CSV.");
-        }
-    } // Data model class
-
-    public static class PasswordEntry {
-        private String website;
-        private String username;
-        private String password;
-
-        public PasswordEntry(String website, String username, String password) {
-            this.website = website;
-            this.username = username;
-            // Store encrypted password
-            this.password = com.example.utils.EncryptionUtils.encryptPassword(password);
-        }
-
-        public String getWebsite() {
-            return website;
-        }
-
-        public void setWebsite(String website) {
-            this.website = website;
-        }
-
-        public String getUsername() {
-            return username;
-        }
-
-        public void setUsername(String username) {
-            this.username = username;
+    public void addPasswordEntry(String website, String username, Secret password) {
+        UserSession session = UserManager.getCurrentSession();
+        if (session == null) {
+            return;
         }
+        PasswordEntry newEntry = new PasswordEntry(website, username, password, session.getVaultKey());
 
-        public String getPassword() {
-            return password;
+        if (updateUserData(entries -> {
+            entries.add(newEntry);
+            return entries;
+        })) {
+            LOG.log(Level.INFO, "New password entry added and saved to user CSV.");
         }
+    }
 
-        public void setPassword(String password) {
-            // Store encrypted password when setting directly
-            this.password = com.example.utils.EncryptionUtils.encryptPassword(password);
+    // Applies a change to the desktop session's vault, merging it with changes
+    // saved elsewhere in the meantime, and shows the result in the table
+    private boolean updateUserData(UnaryOperator<List<PasswordEntry>> change) {
+        List<PasswordEntry> updated = saveUserData(change);
+        if (updated == null) {
+            return false;
         }
+        applyVaultChanges(updated);
+        return true;
+    }
 
-        public String getDecryptedPassword() {
-            return com.example.utils.EncryptionUtils.decryptPassword(password);
+    // Applies a change to the desktop session's vault without touching the
+    // table; returns the saved vault, or null if it could not be saved
+    private List<PasswordEntry> saveUserData(UnaryOperator<List<PasswordEntry>> change) {
+        UserSession session = UserManager.getCurrentSession();
+        if (session == null) {
+            return null;
         }
+        return session.updateVault(change);
+    }
 
-        /**
-         * Sets already encrypted password (for loading from storage)
-         */
-        public void setEncryptedPassword(String encryptedPassword) {
-            this.password = encryptedPassword;
+    // Finds an entry by website and username, returns -1 if it is not there
+    private static int indexOfEntry(List<PasswordEntry> entries, String website, String username) {
+        for (int i = 0; i < entries.size(); i++) {
+            PasswordEntry entry = entries.get(i);
+            if (entry.getWebsite().equals(website) && entry.getUsername().equals(username)) {
+                return i;
+            }
         }
+        return -1;
     }
 }
@@ -1,12 +1,24 @@
 package com.example.controllers;
 
+import com.example.models.Attachment;
+import com.example.models.PasswordEntry;
+import com.example.utils.AttachmentStore;
+import com.example.utils.Secret;
+import com.example.utils.UserManager;
+import com.example.utils.UserSession;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
 import javafx.scene.image.ImageView;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
+import java.io.File;
 import java.net.URL;
 import java.util.ResourceBundle;
 
@@ -31,23 +43,115 @@ public class ViewPasswordController implements Initializable {
     @FXML
     private TextField passwordField;
 
+    @FXML
+    private ListView<Attachment> attachmentList;
+
+    @FXML
+    private Button attachButton;
+
+    @FXML
+    private Button saveAttachmentButton;
+
     private Stage stage;
+    private PasswordEntry entry;
 
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
-        // Initialize any components if needed
+        attachmentList.setPlaceholder(new Label("No attachments"));
+        saveAttachmentButton.disableProperty().bind(attachmentList.getSelectionModel().selectedItemProperty().isNull());
     }
 
     public void setStage(Stage stage) {
         this.stage = stage;
     }
 
-    public void setPasswordEntry(UserController.PasswordEntry entry) {
+    public void setPasswordEntry(PasswordEntry entry) {
+        this.entry = entry;
+        attachButton.setDisable(entry == null);
         if (entry != null) {
             websiteField.setText(entry.getWebsite());
             usernameField.setText(entry.getUsername());
-            passwordField.setText(entry.getDecryptedPassword()); // Use decrypted password for display
+            try (Secret password = entry.getDecryptedSecret()) { // Use decrypted password for display
+                if (password != null) {
+                    // The text field can only show a String; it is the only copy made
+                    passwordField.setText(new String(password.chars()));
+                } else {
+                    passwordField.setPromptText("Password could not be decrypted");
+                }
+            }
         }
+        refreshAttachments();
+    }
+
+    // Lists the entry's attachments from the index; content is only decrypted when saved
+    private void refreshAttachments() {
+        UserSession session = UserManager.getCurrentSession();
+        if (session == null || entry == null) {
+            attachmentList.getItems().clear();
+            return;
+        }
+        attachmentList.getItems().setAll(AttachmentStore.list(session.getUsername(), entry));
+    }
+
+    @FXML
+    private void handleAttachButton() {
+        UserSession session = UserManager.getCurrentSession();
+        if (session == null || entry == null) {
+            return;
+        }
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Attach File");
+        File file = chooser.showOpenDialog(stage);
+        if (file == null) {
+            return;
+        }
+        PasswordEntry attachedTo = entry;
+        // Large files take a while to encrypt; keep the window responsive
+        setBusy(true);
+        Thread.ofVirtual().name("attach").start(() -> {
+            Attachment attachment = AttachmentStore.add(session, attachedTo, file.toPath());
+            Platform.runLater(() -> {
+                setBusy(false);
+                if (attachment == null) {
+                    showAlert("Error", "Could not attach " + file.getName() + "!");
+                } else {
+                    refreshAttachments();
+                }
+            });
+        });
+    }
+
+    @FXML
+    private void handleSaveAttachmentButton() {
+        UserSession session = UserManager.getCurrentSession();
+        Attachment attachment = attachmentList.getSelectionModel().getSelectedItem();
+        if (session == null || attachment == null) {
+            return;
+        }
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Save Attachment");
+        chooser.setInitialFileName(attachment.getName());
+        File file = chooser.showSaveDialog(stage);
+        if (file == null) {
+            return;
+        }
+        setBusy(true);
+        Thread.ofVirtual().name("save-attachment").start(() -> {
+            boolean saved = AttachmentStore.saveTo(session, attachment, file.toPath());
+            Platform.runLater(() -> {
+                setBusy(false);
+                if (saved) {
+                    showAlert("Success", "Attachment saved to " + file.getName() + "!");
+                } else {
+                    showAlert("Error", "Attachment could not be decrypted!");
+                }
+            });
+        });
+    }
+
+    private void setBusy(boolean busy) {
+        attachButton.setDisable(busy);
+        attachmentList.setDisable(busy);
     }
 
     @FXML
@@ -55,7 +159,17 @@ public class ViewPasswordController implements Initializable {
         closeWindow();
     }
 
+    private void showAlert(String title, String message) {
+        Alert.AlertType alertType = title.equals("Error") ? Alert.AlertType.ERROR : Alert.AlertType.INFORMATION;
+        Alert alert = new Alert(alertType);
+        alert.setTitle(title);
+        alert.setHeaderText(null);
+        alert.setContentText(message);
+        alert.showAndWait();
+    }
+
     private void closeWindow() {
+        passwordField.clear();
         if (stage != null) {
             stage.close();
         } else {
@@ -0,0 +1,82 @@
+package com.example.logging;
+
+import java.text.MessageFormat;
+import java.util.ResourceBundle;
+import java.util.function.Supplier;
+
+/**
+ * System.Logger that hands records to the background drain thread of Log.
+ * Messages are formatted on the drain thread, so a log call on a hot path
+ * costs a level check and a queue insert.
+ */
+class AsyncLogger implements System.Logger {
+
+    private final String name;
+
+    AsyncLogger(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isLoggable(Level level) {
+        return Log.isEnabled(level);
+    }
+
+    @Override
+    public void log(Level level, ResourceBundle bundle, String msg, Throwable thrown) {
+        if (isLoggable(level)) {
+            Log.enqueue(new Record(name, level, msg, null, thrown));
+        }
+    }
+
+    @Override
+    public void log(Level level, ResourceBundle bundle, String format, Object... params) {
+        if (isLoggable(level)) {
+            Log.enqueue(new Record(name, level, format, params, null));
+        }
+    }
+
+    @Override
+    public void log(Level level, Supplier<String> msgSupplier) {
+        // Suppliers may read state that changes later, so call it right away
+        if (isLoggable(level)) {
+            Log.enqueue(new Record(name, level, msgSupplier.get(), null, null));
+        }
+    }
+
+    /**
+     * One queued log call; the message is formatted when it is written
+     */
+    static final class Record {
+        final long timestamp = System.currentTimeMillis();
+        final String logger;
+        final Level level;
+        final String format;
+        final Object[] params;
+        final Throwable thrown;
+
+        Record(String logger, Level level, String format, Object[] params, Throwable thrown) {
+            this.logger = logger;
+            this.level = level;
+            this.format = format;
+            this.params = params;
+            this.thrown = thrown;
+        }
+
+        String message() {
+            if (params == null || params.length == 0 || format == null) {
+                return format;
+            }
+            try {
+                return MessageFormat.format(format, params);
+            } catch (IllegalArgumentException e) {
+                return format;
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.logging;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.System.Logger.Level;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This file contains the Log facade that hands out System.Logger instances
+ * whose records are written asynchronously. Callers only check the level and
+ * put the record into a lock-free ring buffer; a daemon thread formats and
+ * writes it, so console or file I/O never blocks load, save or decrypt paths.
+ * Repeats of the same message are limited per second, and what was left out
+ * is reported as a count.
+ *
+ * Configuration (system properties):
+ * pm.log.level   TRACE, DEBUG, INFO (default), WARNING, ERROR or OFF
+ * pm.log.file    write to this file instead of the console
+ * pm.log.buffer  ring buffer size in records (default 8192)
+ * pm.log.repeatsPerSecond  same message limit per second (default 5)
+ */
+public class Log {
+
+    private static final int THRESHOLD = parseLevel(System.getProperty("pm.log.level", "INFO")).getSeverity();
+    private static final int REPEATS_PER_SECOND = Integer.getInteger("pm.log.repeatsPerSecond", 5);
+    private static final int MAX_TRACKED_MESSAGES = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SSS")
+            .withZone(ZoneId.systemDefault());
+
+    private static final LogRingBuffer BUFFER = new LogRingBuffer(Integer.getInteger("pm.log.buffer", 8192));
+    private static final Map<String, RepeatWindow> REPEATS = new ConcurrentHashMap<>();
+    private static final Map<String, System.Logger> LOGGERS = new ConcurrentHashMap<>();
+
+    private static volatile Thread drainThread;
+    private static volatile boolean drainParked;
+    private static volatile boolean closing;
+
+    /**
+     * Get the logger for a class
+     *
+     * @param type The class that logs
+     * @return A shared asynchronous logger named after the class
+     */
+    public static System.Logger getLogger(Class<?> type) {
+        return LOGGERS.computeIfAbsent(type.getSimpleName(), AsyncLogger::new);
+    }
+
+    /**
+     * Write everything queued so far; used before the process exits
+     */
+    public static void flush() {
+        Thread thread = drainThread;
+        if (thread == null) {
+            return;
+        }
+        // Wait until the drain thread has caught up with the current tail
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        LockSupport.unpark(thread);
+        while (!BUFFER.isEmpty() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+            LockSupport.unpark(thread);
+        }
+    }
+
+    static boolean isEnabled(Level level) {
+        return level.getSeverity() >= THRESHOLD && level != Level.OFF;
+    }
+
+    static void enqueue(AsyncLogger.Record record) {
+        if (!allowRepeat(record)) {
+            return;
+        }
+        BUFFER.offer(record);
+        startDrainThread();
+        if (drainParked) {
+            LockSupport.unpark(drainThread);
+        }
+    }
+
+    // Lets the first few copies of a message through in each second
+    private static boolean allowRepeat(AsyncLogger.Record record) {
+        if (record.format == null) {
+            return true;
+        }
+        String key = record.logger + '|' + record.format;
+        RepeatWindow window = REPEATS.get(key);
+        if (window == null) {
+            if (REPEATS.size() >= MAX_TRACKED_MESSAGES) {
+                REPEATS.clear();
+            }
+            window = REPEATS.computeIfAbsent(key, k -> new RepeatWindow());
+        }
+
+        if (record.timestamp - window.startedAt >= 1000) {
+            window.startedAt = record.timestamp;
+            window.count.set(0);
+            int suppressed = window.suppressed.getAndSet(0);
+            if (suppressed > 0) {
+                BUFFER.offer(new AsyncLogger.Record(record.logger, record.level,
+                        "Suppressed " + suppressed + " repeats of: " + record.format, null, null));
+            }
+        }
+        if (window.count.incrementAndGet() <= REPEATS_PER_SECOND) {
+            return true;
+        }
+        window.suppressed.incrementAndGet();
+        return false;
+    }
+
+    private static void startDrainThread() {
+        if (drainThread != null) {
+            return;
+        }
+        synchronized (Log.class) {
+            if (drainThread == null) {
+                Thread thread = new Thread(Log::drainLoop, "log-drain");
+                thread.setDaemon(true);
+                thread.start();
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    closing = true;
+                    LockSupport.unpark(thread);
+                    try {
+                        thread.join(TimeUnit.SECONDS.toMillis(2));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }, "log-shutdown"));
+                drainThread = thread;
+            }
+        }
+    }
+
+    private static void drainLoop() {
+        Sink sink = Sink.create();
+        while (true) {
+            Object next = BUFFER.poll();
+            if (next != null) {
+                sink.write((AsyncLogger.Record) next);
+                continue;
+            }
+
+            long dropped = BUFFER.takeDropped();
+            if (dropped > 0) {
+                sink.write(new AsyncLogger.Record("Log", Level.WARNING,
+                        "Log buffer full, dropped " + dropped + " messages", null, null));
+            }
+            sink.flush();
+            if (closing) {
+                return;
+            }
+
+            drainParked = true;
+            // Re-check after announcing so a record offered meanwhile is not missed
+            if (BUFFER.isEmpty()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            drainParked = false;
+        }
+    }
+
+    private static Level parseLevel(String name) {
+        try {
+            return Level.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+
+    private static class RepeatWindow {
+        private volatile long startedAt = System.currentTimeMillis();
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicInteger suppressed = new AtomicInteger();
+    }
+
+    // Where formatted records end up: the console or the pm.log.file file
+    private static class Sink {
+        private final Writer file;
+
+        private Sink(Writer file) {
+            this.file = file;
+        }
+
+        static Sink create() {
+            String path = System.getProperty("pm.log.file");
+            if (path != null && !path.isBlank()) {
+                try {
+                    Path logFile = Paths.get(path);
+                    BufferedWriter writer = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                    return new Sink(writer);
+                } catch (IOException e) {
+                    System.err.println("Cannot open log file " + path + ", logging to the console: "
+                            + e.getMessage());
+                }
+            }
+            return new Sink(null);
+        }
+
+        void write(AsyncLogger.Record record) {
+            String line = format(record);
+            if (file != null) {
+                try {
+                    file.write(line);
+                    file.write(System.lineSeparator());
+                } catch (IOException e) {
+                    System.err.println(line);
+                }
+                return;
+            }
+            // Looked up on every write so System.setOut redirection is respected
+            PrintStream console = record.level.getSeverity() >= Level.WARNING.getSeverity() ? System.err : System.out;
+            console.println(line);
+        }
+
+        void flush() {
+            if (file != null) {
+                try {
+                    file.flush();
+                } catch (IOException e) {
+                    // Nothing sensible left to report to
+                }
+            } else {
+                System.out.flush();
+            }
+        }
+
+        private static String format(AsyncLogger.Record record) {
+            StringBuilder line = new StringBuilder(128)
+                    .append(TIME_FORMAT.format(Instant.ofEpochMilli(record.timestamp)))
+                    .append(' ').append(record.level.getName())
+                    .append(' ').append(record.logger)
+                    .append(" - ").append(record.message());
+            if (record.thrown != null) {
+                StringWriter trace = new StringWriter();
+                record.thrown.printStackTrace(new PrintWriter(trace));
+                line.append(System.lineSeparator()).append(trace.toString().stripTrailing());
+            }
+            return line.toString();
+        }
+    }
+}
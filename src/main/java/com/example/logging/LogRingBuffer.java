@@ -0,0 +1,94 @@
+package com.example.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded lock-free queue of log records for many producers and the single
+ * drain thread. Each slot carries a sequence number that tells producers
+ * whether it is free and the consumer whether it has been filled, so neither
+ * side ever takes a lock. When the buffer is full new records are dropped
+ * and counted rather than blocking the caller.
+ */
+class LogRingBuffer {
+
+    private final Object[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private volatile long head; // Only advanced by the drain thread
+
+    LogRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new Object[size];
+        sequences = new AtomicLongArray(size);
+        mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Add a record, never blocking
+     *
+     * @param record The record
+     * @return false if the buffer was full and the record was dropped
+     */
+    boolean offer(Object record) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) (position & mask);
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots[index] = record;
+                    // Publishes the record to the drain thread
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (sequence < position) {
+                dropped.increment();
+                return false;
+            }
+            // Another producer claimed this slot first, try the next one
+        }
+    }
+
+    /**
+     * Take the oldest record; only the drain thread may call this
+     *
+     * @return The record, or null if the buffer is empty
+     */
+    Object poll() {
+        int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        Object record = slots[index];
+        slots[index] = null;
+        // Hands the slot back to producers for the next lap
+        sequences.set(index, head + slots.length);
+        head++;
+        return record;
+    }
+
+    /**
+     * Check whether every claimed slot has been taken by the drain thread
+     *
+     * @return true if nothing is queued or being queued
+     */
+    boolean isEmpty() {
+        return tail.get() == head;
+    }
+
+    /**
+     * Get and reset the number of records dropped because the buffer was full
+     *
+     * @return Dropped record count since the last call
+     */
+    long takeDropped() {
+        return dropped.sumThenReset();
+    }
+}
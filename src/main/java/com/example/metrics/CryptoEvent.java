@@ -0,0 +1,31 @@
+package com.example.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one AES encryption or decryption of a stored
+ * password
+ */
+@Name("com.example.Crypto")
+@Label("Password Crypto")
+@Category({ "Password Manager", "Crypto" })
+@Description("Encryption or decryption of one vault password")
+@StackTrace(false)
+public class CryptoEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Input Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
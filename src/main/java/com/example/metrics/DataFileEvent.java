@@ -0,0 +1,28 @@
+package com.example.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for setting up data directories and files
+ */
+@Name("com.example.DataFile")
+@Label("Data File Setup")
+@Category({ "Password Manager", "Storage" })
+@Description("Creating the data directories or a new user's password file")
+@StackTrace(false)
+public class DataFileEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("User Hash")
+    public String userHash;
+
+    @Label("Created")
+    public boolean created;
+}
@@ -0,0 +1,93 @@
+package com.example.metrics;
+
+import com.example.logging.Log;
+
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.util.HexFormat;
+import java.util.Locale;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+
+/**
+ * This file contains helpers for the application's Flight Recorder events:
+ * starting a recording from the -Dpm.jfr startup option and hashing
+ * usernames so recordings can be shared without personal data.
+ * Call sites only create their events while Flight Recorder is running:
+ * loading the first event class initializes the recorder, which costs
+ * about a third of a second of CLI startup.
+ */
+public class FlightRecording {
+
+    private static final System.Logger LOG = Log.getLogger(FlightRecording.class);
+
+    private static final String FILE_PROPERTY = "pm.jfr";
+    private static final String SETTINGS_PROPERTY = "pm.jfr.settings";
+
+    private static Recording recording;
+
+    /**
+     * Start a recording when the app was launched with -Dpm.jfr=file.jfr.
+     * The file is written when the JVM exits; -Dpm.jfr.settings picks the
+     * JDK settings, "profile" (default) or "default".
+     */
+    public static synchronized void startIfRequested() {
+        String file = System.getProperty(FILE_PROPERTY);
+        if (file == null || file.isBlank() || recording != null) {
+            return;
+        }
+        try {
+            Path destination = Paths.get(file).toAbsolutePath();
+            Configuration settings = Configuration.getConfiguration(
+                    System.getProperty(SETTINGS_PROPERTY, "profile"));
+            Recording started = new Recording(settings);
+            started.setName("password-manager");
+            started.setToDisk(true);
+            started.setDestination(destination);
+            started.setDumpOnExit(true);
+            started.start();
+            recording = started;
+            LOG.log(Level.INFO, "Flight recording to {0}", destination);
+        } catch (IOException | ParseException | IllegalStateException | SecurityException e) {
+            LOG.log(Level.WARNING, "Could not start flight recording: {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * Whether events are worth creating; false until a recording is started
+     * here, by -XX:StartFlightRecording or by jcmd
+     *
+     * @return true once Flight Recorder has been initialized
+     */
+    public static boolean isEnabled() {
+        return FlightRecorder.isInitialized();
+    }
+
+    /**
+     * Hash a username for an event field; only call this after
+     * shouldCommit() returned true
+     *
+     * @param username The username, may be null
+     * @return First 8 bytes of the SHA-256 of the lower-cased name in hex
+     */
+    public static String hashUsername(String username) {
+        if (username == null) {
+            return null;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(username.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+}
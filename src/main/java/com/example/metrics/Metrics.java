@@ -0,0 +1,119 @@
+package com.example.metrics;
+
+import com.example.logging.Log;
+
+import java.lang.System.Logger.Level;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This file contains the Metrics registry that hands out named timers for
+ * the application's hot paths (crypto, storage, authentication and
+ * navigation). Timers are plain objects so recording costs nothing beyond a
+ * few counter increments; only the desktop app and the API server publish
+ * them as platform MBeans, the command line never loads JMX.
+ * OOP Concept: This class demonstrates the REGISTRY pattern.
+ */
+public class Metrics {
+
+    private static final System.Logger LOG = Log.getLogger(Metrics.class);
+
+    // Timer names used across the application
+    public static final String ENCRYPT = "crypto.encrypt";
+    public static final String DECRYPT = "crypto.decrypt";
+    public static final String ENCRYPT_BATCH = "crypto.encryptBatch";
+    public static final String DECRYPT_BATCH = "crypto.decryptBatch";
+    public static final String VERIFY_PASSWORD = "auth.verifyPassword";
+    public static final String USER_LOOKUP = "auth.userLookup";
+    public static final String VAULT_LOAD = "storage.vaultLoad";
+    public static final String VAULT_SAVE = "storage.vaultSave";
+    public static final String SET_ROOT = "ui.setRoot";
+    public static final String DIALOG_OPEN = "ui.dialogOpen";
+
+    private static final String DOMAIN = "com.example";
+
+    private static final Map<String, Timer> TIMERS = new ConcurrentSkipListMap<>();
+    private static volatile MBeanServer mbeanServer;
+
+    /**
+     * Get the timer with the given name, creating it on first use
+     *
+     * @param name Dotted timer name, see the constants above
+     * @return The shared timer
+     */
+    public static Timer timer(String name) {
+        Timer timer = TIMERS.get(name);
+        if (timer != null) {
+            return timer;
+        }
+        Timer created = new Timer(name);
+        timer = TIMERS.putIfAbsent(name, created);
+        if (timer == null) {
+            timer = created;
+            if (mbeanServer != null) {
+                register(mbeanServer, timer);
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * Get all timers sorted by name
+     *
+     * @return Snapshot of the registered timers
+     */
+    public static List<Timer> getTimers() {
+        return new ArrayList<>(TIMERS.values());
+    }
+
+    /**
+     * Publish all current and future timers as platform MBeans. Safe to call
+     * more than once.
+     */
+    public static synchronized void registerMBeans() {
+        if (mbeanServer != null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        mbeanServer = server;
+        for (Timer timer : TIMERS.values()) {
+            register(server, timer);
+        }
+    }
+
+    /**
+     * Get a one-line-per-timer summary of everything recorded so far
+     *
+     * @return The summary, empty if no timer was used
+     */
+    public static String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (Timer timer : TIMERS.values()) {
+            if (timer.getCount() > 0) {
+                summary.append(timer).append(System.lineSeparator());
+            }
+        }
+        return summary.toString();
+    }
+
+    private static void register(MBeanServer server, Timer timer) {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=Timer,name=" + ObjectName.quote(timer.getName()));
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(timer, objectName);
+            }
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered concurrently by timer() and registerMBeans()
+        } catch (JMException e) {
+            LOG.log(Level.WARNING, "Could not publish timer {0}: {1}", timer.getName(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for switching the main window to another screen
+ */
+@Name("com.example.Navigation")
+@Label("Screen Navigation")
+@Category({ "Password Manager", "UI" })
+@Description("Loading an FXML screen and making it the window's root")
+@StackTrace(false)
+public class NavigationEvent extends Event {
+
+    @Label("Screen")
+    public String fxml;
+}
@@ -0,0 +1,25 @@
+package com.example.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for hashing or verifying a login password
+ */
+@Name("com.example.PasswordHash")
+@Label("Login Password Hash")
+@Category({ "Password Manager", "Auth" })
+@Description("Hashing a new login password or verifying one against its stored hash")
+@StackTrace(false)
+public class PasswordHashEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Matched")
+    public boolean matched;
+}
@@ -0,0 +1,171 @@
+package com.example.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This file contains the Timer class that counts calls of one operation and
+ * keeps a histogram of their durations. Durations fall into logarithmic
+ * buckets (four per power of two, about 19% wide), so recording is a few
+ * lock-free increments and percentiles stay accurate to within one bucket.
+ * OOP Concept: This class demonstrates ENCAPSULATION of the histogram
+ * behind record and percentile methods.
+ */
+public class Timer implements TimerMXBean {
+
+    // Four sub-buckets per power of two of nanoseconds
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    Timer(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Start timing a call
+     *
+     * @return The start timestamp to pass to stop
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Record a call that started at the given timestamp
+     *
+     * @param startNanos The value returned by start
+     */
+    public void stop(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Record one call's duration
+     *
+     * @param nanos The duration in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        buckets.incrementAndGet(bucketOf(nanos));
+    }
+
+    /**
+     * Get the duration below which the given share of calls finished
+     *
+     * @param quantile Between 0 and 1, for example 0.99
+     * @return The duration in nanoseconds, 0 if nothing was recorded
+     */
+    public long getPercentileNanos(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                // Report the bucket's upper bound, but never more than the max
+                return Math.min(upperBoundOf(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long calls = count.sum();
+        return calls == 0 ? 0 : toMillis(totalNanos.sum()) / calls;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return toMillis(getPercentileNanos(0.50));
+    }
+
+    @Override
+    public double getP95Millis() {
+        return toMillis(getPercentileNanos(0.95));
+    }
+
+    @Override
+    public double getP99Millis() {
+        return toMillis(getPercentileNanos(0.99));
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return toMillis(maxNanos.get());
+    }
+
+    @Override
+    public void reset() {
+        count.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: count=%d mean=%.3fms p50=%.3fms p95=%.3fms p99=%.3fms max=%.3fms",
+                name, getCount(), getMeanMillis(), getP50Millis(), getP95Millis(), getP99Millis(),
+                getMaxMillis());
+    }
+
+    // Index of the power of two, then the next two bits below the top one
+    private static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
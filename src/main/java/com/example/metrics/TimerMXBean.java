@@ -0,0 +1,25 @@
+package com.example.metrics;
+
+/**
+ * Management interface of a Timer as shown in JConsole or VisualVM under
+ * com.example:type=Timer
+ */
+public interface TimerMXBean {
+
+    String getName();
+
+    long getCount();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP95Millis();
+
+    double getP99Millis();
+
+    double getMaxMillis();
+
+    // Clears the counters, for example before measuring one scenario
+    void reset();
+}
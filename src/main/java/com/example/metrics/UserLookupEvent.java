@@ -0,0 +1,31 @@
+package com.example.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for finding a user in user-data.csv
+ */
+@Name("com.example.UserLookup")
+@Label("User Lookup")
+@Category({ "Password Manager", "Auth" })
+@Description("Finding a user by username or email in the user data file")
+@StackTrace(false)
+public class UserLookupEvent extends Event {
+
+    @Label("Lookup By")
+    public String by;
+
+    @Label("User Hash")
+    public String userHash;
+
+    @Label("Users Scanned")
+    public int userCount;
+
+    @Label("Found")
+    public boolean found;
+}
@@ -0,0 +1,34 @@
+package com.example.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for reading or writing a user's vault CSV file
+ */
+@Name("com.example.VaultIO")
+@Label("Vault I/O")
+@Category({ "Password Manager", "Storage" })
+@Description("Reading or writing one user's password CSV file")
+@StackTrace(false)
+public class VaultIoEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("User Hash")
+    @Description("Truncated SHA-256 of the username, so recordings do not contain names")
+    public String userHash;
+
+    @Label("Entries")
+    public int entryCount;
+
+    @Label("File Size")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,79 @@
+package com.example.models;
+
+/**
+ * This file contains the Attachment class that describes a file attached to
+ * a password entry, such as an SSH key, a certificate or a long note.
+ * It only holds what the attachment index records; the encrypted content is
+ * kept in a blob file of its own and read only when the attachment is
+ * opened, see AttachmentStore.
+ * OOP Concept: This class demonstrates ENCAPSULATION by keeping an
+ * attachment's description immutable.
+ */
+public final class Attachment {
+
+    private final String website;
+    private final String username;
+    private final String name;
+    private final String blobId;
+    private final long size;
+
+    // Creates the description of an attachment of the entry website/username
+    public Attachment(String website, String username, String name, String blobId, long size) {
+        this.website = website;
+        this.username = username;
+        this.name = name;
+        this.blobId = blobId;
+        this.size = size;
+    }
+
+    // Returns the website of the entry it is attached to
+    public String getWebsite() {
+        return website;
+    }
+
+    // Returns the username of the entry it is attached to
+    public String getUsername() {
+        return username;
+    }
+
+    // Returns the file name it was attached under
+    public String getName() {
+        return name;
+    }
+
+    // Returns the id of the blob file holding the encrypted content
+    public String getBlobId() {
+        return blobId;
+    }
+
+    // Returns the size of the content before encryption, in bytes
+    public long getSize() {
+        return size;
+    }
+
+    // Checks whether it is attached to the given entry
+    public boolean belongsTo(String website, String username) {
+        return this.website.equals(website) && this.username.equals(username);
+    }
+
+    // Creates the same attachment under a renamed entry
+    public Attachment withEntry(String website, String username) {
+        return new Attachment(website, username, name, blobId, size);
+    }
+
+    // Shown in the attachment list of an entry
+    @Override
+    public String toString() {
+        return name + " (" + formatSize(size) + ")";
+    }
+
+    private static String formatSize(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return (bytes / 1024) + " KB";
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
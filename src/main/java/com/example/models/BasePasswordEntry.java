@@ -1,8 +1,15 @@
 package com.example.models;
 
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+
 /**
  * This file contains the BasePasswordEntry abstract class that defines the
  * structure for password entries.
+ * Website and username are plain fields until a table cell or form asks for
+ * their JavaFX property; from then on the property holds the value, so an
+ * edit updates exactly the cells that show it. Entries that are never shown
+ * (most rows of a large vault) never pay for the properties.
  * OOP Concepts: This class demonstrates ABSTRACTION and ENCAPSULATION by hiding
  * implementation details.
  */
@@ -10,51 +17,93 @@ public abstract class BasePasswordEntry {
 
     private String website;
     private String username;
-    private String password;
+    // Created on first use; one holder keeps unobserved entries small. Only
+    // the holder creates JavaFX objects, so the command line and the HTTP
+    // server can use entries without JavaFX on the class path.
+    private Properties properties;
+
+    private static class Properties {
+        private StringProperty website;
+        private StringProperty username;
+
+        private static StringProperty create(Object bean, String name, String value) {
+            return new SimpleStringProperty(bean, name, value);
+        }
+    }
 
     // Creates a base password entry with required fields
-    public BasePasswordEntry(String website, String username, String password) {
+    public BasePasswordEntry(String website, String username) {
         this.website = website;
         this.username = username;
-        this.password = password;
     }
 
     // Returns the website or service name
     public String getWebsite() {
-        return website;
+        return properties != null && properties.website != null ? properties.website.get() : website;
     }
 
     // Returns the username for the password entry
     public String getUsername() {
-        return username;
-    }
-
-    // Returns the password for this entry
-    public String getPassword() {
-        return password;
+        return properties != null && properties.username != null ? properties.username.get() : username;
     }
 
     // Updates the website or service name
     public void setWebsite(String website) {
-        this.website = website;
+        if (properties != null && properties.website != null) {
+            properties.website.set(website);
+        } else {
+            this.website = website;
+        }
     }
 
     // Updates the username
     public void setUsername(String username) {
-        this.username = username;
+        if (properties != null && properties.username != null) {
+            properties.username.set(username);
+        } else {
+            this.username = username;
+        }
+    }
+
+    // Returns the observable website, creating it on first use
+    public StringProperty websiteProperty() {
+        Properties props = properties();
+        if (props.website == null) {
+            props.website = Properties.create(this, "website", website);
+            website = null; // The property holds the value from now on
+        }
+        return props.website;
     }
 
-    // Updates the password
-    public void setPassword(String password) {
-        this.password = password;
+    // Returns the observable username, creating it on first use
+    public StringProperty usernameProperty() {
+        Properties props = properties();
+        if (props.username == null) {
+            props.username = Properties.create(this, "username", username);
+            username = null;
+        }
+        return props.username;
     }
 
+    private Properties properties() {
+        if (properties == null) {
+            properties = new Properties();
+        }
+        return properties;
+    }
+
+    // Returns the password in its stored form
+    public abstract String getPassword();
+
+    // Updates the password from plain text
+    public abstract void setPassword(String password);
+
     // Defines a method to check if the entry has valid data
     public abstract boolean isValidEntry();
 
     // Converts the password entry to CSV format
     @Override
     public String toString() {
-        return website + "," + username + "," + password;
+        return getWebsite() + "," + getUsername() + "," + getPassword();
     }
 }
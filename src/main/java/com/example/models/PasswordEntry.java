@@ -1,19 +1,95 @@
 package com.example.models;
 
 import com.example.utils.EncryptionUtils;
+import com.example.utils.Secret;
+import com.example.utils.SecretCache;
+import com.example.utils.VaultKey;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+
+import java.util.Arrays;
+import java.util.Objects;
 
 /**
  * This file contains the PasswordEntry class that stores a user's password
- * information with encryption support.
+ * information with encryption support. It is the one entry model shared by
+ * storage, the command line, the HTTP API and the tables.
+ * Entries are kept small because vaults can hold a million of them: the
+ * password is the raw IV and ciphertext instead of its Base64 text, and the
+ * vault loader shares equal website and username strings.
+ * Passwords are encrypted with the website and username as associated data,
+ * so a password copied onto another entry does not decrypt; renaming an
+ * entry encrypts its password again. Entries of a logged-in user hold the
+ * session's unlocked VaultKey, so working with them never derives a key.
+ * Plaintext passwords go in and come out as Secrets; the String methods are
+ * kept for the command line, the API and CSV files, where text is needed.
  * OOP Concept: This class demonstrates INHERITANCE by extending
  * BasePasswordEntry and adds SECURITY through password encryption.
  */
 public class PasswordEntry extends BasePasswordEntry {
 
+    // Format byte, IV and ciphertext, encoded only when written out
+    private byte[] password;
+    // Asterisks for the table, created when a row first shows the entry
+    private ReadOnlyStringWrapper maskedPassword;
+    // The owner's key, null for entries under the application master key
+    private VaultKey key;
+
     // Creates a new password entry with website, username and encrypted password
     public PasswordEntry(String website, String username, String password) {
+        this(website, username, password, null);
+    }
+
+    // Creates a new entry whose password is encrypted with the owner's key
+    public PasswordEntry(String website, String username, String password, VaultKey key) {
+        super(website, username);
+        this.key = key;
         // Encrypt the password before storing
-        super(website, username, EncryptionUtils.encryptPassword(password));
+        this.password = encrypt(password, website, username, key);
+    }
+
+    // Creates an entry whose password is encrypted without making a String of
+    // it; the caller still owns and closes the Secret
+    public PasswordEntry(String website, String username, Secret password, VaultKey key) {
+        super(website, username);
+        this.key = key;
+        this.password = encrypt(password, website, username, key);
+    }
+
+    // Creates an entry without a password, for subclasses that supply their own
+    protected PasswordEntry(String website, String username) {
+        super(website, username);
+    }
+
+    /**
+     * Creates an entry from a stored password, encrypting it only if it is
+     * still plain text (legacy data)
+     */
+    public static PasswordEntry fromStoredPassword(String website, String username, String storedPassword) {
+        byte[] encrypted = EncryptionUtils.decodeStored(storedPassword);
+        if (encrypted == null) {
+            return new PasswordEntry(website, username, storedPassword);
+        }
+        return fromEncrypted(website, username, encrypted);
+    }
+
+    /**
+     * Creates an entry from a password that is already in raw encrypted form,
+     * for example the output of EncryptionUtils.encryptAll
+     */
+    public static PasswordEntry fromEncrypted(String website, String username, byte[] encrypted) {
+        return fromEncrypted(website, username, encrypted, null);
+    }
+
+    /**
+     * Creates an entry from a password that is already in raw encrypted form,
+     * owned by the user whose key is given
+     */
+    public static PasswordEntry fromEncrypted(String website, String username, byte[] encrypted, VaultKey key) {
+        PasswordEntry entry = new PasswordEntry(website, username);
+        entry.password = encrypted;
+        entry.key = key;
+        return entry;
     }
 
     // Checks if all required fields have valid data
@@ -21,28 +97,17 @@ public class PasswordEntry extends BasePasswordEntry {
     public boolean isValidEntry() {
         return getWebsite() != null && !getWebsite().trim().isEmpty() &&
                 getUsername() != null && !getUsername().trim().isEmpty() &&
-                getPassword() != null && !getPassword().trim().isEmpty();
+                password != null && password.length > 0;
     } // Creates a password entry from a CSV line format
 
     public PasswordEntry(String csvLine) {
-        super("", "", ""); // Call parent constructor with empty values first
+        this(parseWebsite(csvLine), parseUsername(csvLine));
 
         // When loading from CSV, assume password might already be encrypted
-        String website = parseWebsite(csvLine);
-        String username = parseUsername(csvLine);
-        String password = parsePassword(csvLine);
-
-        // Set the website and username
-        setWebsite(website);
-        setUsername(username);
-
-        // Check if the password is already encrypted
-        if (com.example.utils.EncryptionUtils.isEncrypted(password)) {
-            setPassword(password); // Already encrypted
-        } else {
-            // Needs encryption (legacy data)
-            setPassword(com.example.utils.EncryptionUtils.encryptPassword(password));
-        }
+        String storedPassword = parsePassword(csvLine);
+        byte[] encrypted = EncryptionUtils.decodeStored(storedPassword);
+        // Needs encryption if it is still plain text (legacy data)
+        this.password = encrypted != null ? encrypted : encrypt(storedPassword, getWebsite(), getUsername(), null);
     }
 
     // Extracts website from a CSV line
@@ -63,14 +128,204 @@ public class PasswordEntry extends BasePasswordEntry {
         return parts.length > 2 ? parts[2] : "";
     }
 
-    // Returns the decrypted password for display/use
+    // Returns the encrypted password in its stored text form
+    @Override
+    public String getPassword() {
+        return EncryptionUtils.encodeStored(password);
+    }
+
+    // Renames the website; a password bound to the old name is encrypted again
+    @Override
+    public void setWebsite(String website) {
+        Secret plain = Objects.equals(website, getWebsite()) ? null : decryptBoundPassword();
+        super.setWebsite(website);
+        if (plain != null) {
+            try (plain) {
+                this.password = encrypt(plain, website, getUsername(), key);
+            }
+            SecretCache.remove(this);
+        }
+    }
+
+    // Renames the username; a password bound to the old name is encrypted again
+    @Override
+    public void setUsername(String username) {
+        Secret plain = Objects.equals(username, getUsername()) ? null : decryptBoundPassword();
+        super.setUsername(username);
+        if (plain != null) {
+            try (plain) {
+                this.password = encrypt(plain, getWebsite(), username, key);
+            }
+            SecretCache.remove(this);
+        }
+    }
+
+    /**
+     * Creates a copy of this entry under another website and username,
+     * encrypting the password again only if it is bound to the old names
+     *
+     * @param website  The website of the copy
+     * @param username The username of the copy
+     * @return A new entry with the same password
+     */
+    public PasswordEntry copyAs(String website, String username) {
+        PasswordEntry copy = fromEncrypted(getWebsite(), getUsername(), password, key);
+        copy.setWebsite(website);
+        copy.setUsername(username);
+        return copy;
+    }
+
+    /**
+     * Takes over the website, username and password of another entry, such
+     * as a saved copy made with copyAs, so the table cells bound to this
+     * entry show the change without the row being replaced
+     *
+     * @param saved The entry whose values are taken over
+     */
+    public void updateFrom(PasswordEntry saved) {
+        // The base setters, so the password is not encrypted again for the new names
+        super.setWebsite(saved.getWebsite());
+        super.setUsername(saved.getUsername());
+        this.key = saved.key;
+        setEncryptedBytes(saved.password);
+    }
+
+    // Encrypts and stores a new plain text password
+    @Override
+    public void setPassword(String password) {
+        this.password = encrypt(password, getWebsite(), getUsername(), key);
+        SecretCache.remove(this);
+        if (maskedPassword != null) {
+            maskedPassword.set(mask());
+        }
+    }
+
+    // Encrypts and stores a new password; the caller still owns and closes it
+    public void setPassword(Secret password) {
+        this.password = encrypt(password, getWebsite(), getUsername(), key);
+        SecretCache.remove(this);
+        if (maskedPassword != null) {
+            maskedPassword.set(mask());
+        }
+    }
+
+    // Stores an already encrypted password (for loading from storage)
+    public void setEncryptedPassword(String encryptedPassword) {
+        byte[] encrypted = EncryptionUtils.decodeStored(encryptedPassword);
+        if (encrypted == null) {
+            throw new IllegalArgumentException("Not an encrypted password");
+        }
+        this.password = encrypted;
+        SecretCache.remove(this);
+        if (maskedPassword != null) {
+            maskedPassword.set(mask());
+        }
+    }
+
+    // Returns the encrypted password for bulk operations such as
+    // EncryptionUtils.decryptAll; the array is shared, do not modify it
+    public byte[] getEncryptedBytes() {
+        return password;
+    }
+
+    // Stores a password that is already in raw encrypted form
+    public void setEncryptedBytes(byte[] encrypted) {
+        this.password = encrypted;
+        SecretCache.remove(this);
+        if (maskedPassword != null) {
+            maskedPassword.set(mask());
+        }
+    }
+
+    // Returns the owner's key, or null for entries under the master key
+    public VaultKey getVaultKey() {
+        return key;
+    }
+
+    // Returns the data the password is bound to, for bulk operations
+    public byte[] getAssociatedData() {
+        return EncryptionUtils.associatedData(getWebsite(), getUsername());
+    }
+
+    // Checks whether the password was written in an older format, or under the
+    // master key while the owner has a key, and should be encrypted again the
+    // next time the vault is saved
+    public boolean needsUpgrade() {
+        return EncryptionUtils.needsUpgrade(password, key);
+    }
+
+    // Returns the decrypted password, which the caller must close, or null if
+    // it cannot be decrypted (damaged or moved from another entry); revealing
+    // or copying the same entry again soon after is answered from the
+    // SecretCache
+    public Secret getDecryptedSecret() {
+        Secret cached = SecretCache.get(this, password);
+        if (cached != null) {
+            return cached;
+        }
+        Secret decrypted = EncryptionUtils.decryptToSecret(password, getAssociatedData(), key);
+        if (decrypted != null) {
+            SecretCache.put(this, key, password, decrypted);
+        }
+        return decrypted;
+    }
+
+    // Returns the decrypted password as text, for output that needs a String
+    // such as the command line and the API; null if it cannot be decrypted
     public String getDecryptedPassword() {
-        return EncryptionUtils.decryptPassword(getPassword());
+        try (Secret decrypted = getDecryptedSecret()) {
+            return decrypted != null ? new String(decrypted.chars()) : null;
+        }
+    }
+
+    // Returns one asterisk per password character, decrypting only once per
+    // entry and again when the password changes
+    public ReadOnlyStringProperty maskedPasswordProperty() {
+        if (maskedPassword == null) {
+            maskedPassword = new ReadOnlyStringWrapper(this, "maskedPassword", mask());
+        }
+        return maskedPassword.getReadOnlyProperty();
+    }
+
+    // Text shown instead of the password. Only the length is needed, so the
+    // plaintext of every row on screen is not put in the SecretCache.
+    protected String mask() {
+        Secret cached = SecretCache.get(this, password);
+        try (Secret decrypted = cached != null ? cached
+                : EncryptionUtils.decryptToSecret(password, getAssociatedData(), key)) {
+            return "*".repeat(decrypted != null ? decrypted.length() : 6);
+        }
+    }
+
+    // Checks whether two entries hold the same ciphertext, without encoding
+    // either of them
+    public boolean hasSamePassword(PasswordEntry other) {
+        return Arrays.equals(password, other.password);
     }
 
-    // Special constructor that takes pre-encrypted password (for loading from
-    // storage)
-    public PasswordEntry(String website, String username, String encryptedPassword, boolean isAlreadyEncrypted) {
-        super(website, username, encryptedPassword);
+    // Decrypts the password before a rename if it is bound to the old names;
+    // null if it is not bound or cannot be decrypted, so it is kept as it is
+    private Secret decryptBoundPassword() {
+        if (!EncryptionUtils.isBoundToEntry(password)) {
+            return null;
+        }
+        return EncryptionUtils.decryptToSecret(password, getAssociatedData(), key);
+    }
+
+    private static byte[] encrypt(String password, String website, String username, VaultKey key) {
+        return checkEncrypted(EncryptionUtils.encryptToBytes(password,
+                EncryptionUtils.associatedData(website, username), key));
+    }
+
+    private static byte[] encrypt(Secret password, String website, String username, VaultKey key) {
+        return checkEncrypted(EncryptionUtils.encryptToBytes(password,
+                EncryptionUtils.associatedData(website, username), key));
+    }
+
+    private static byte[] checkEncrypted(byte[] encrypted) {
+        if (encrypted == null) {
+            throw new IllegalStateException("Could not encrypt the password");
+        }
+        return encrypted;
     }
 }
@@ -8,9 +8,24 @@ package com.example.models;
  */
 public class User extends BaseUser {
 
+    // The user's vault key, wrapped with their login password; null until
+    // they first log in after keys were introduced
+    private final String wrappedVaultKey;
+
     // Creates a new user with basic credentials
     public User(String username, String email, String passwordHash) {
+        this(username, email, passwordHash, null);
+    }
+
+    // Creates a user with a wrapped vault key
+    public User(String username, String email, String passwordHash, String wrappedVaultKey) {
         super(username, email, passwordHash);
+        this.wrappedVaultKey = wrappedVaultKey;
+    }
+
+    // Returns the wrapped vault key, or null if the user has none yet
+    public String getWrappedVaultKey() {
+        return wrappedVaultKey;
     }
 
     // Returns the type of user for identification purposes
@@ -0,0 +1,251 @@
+package com.example.server;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This file contains a minimal JSON reader and writer for the vault API.
+ * The API only exchanges flat objects with string or number values and
+ * arrays of such objects, so a full JSON library is not needed.
+ */
+public class Json {
+
+    /**
+     * Parse a flat JSON object such as {"username":"alice","password":"x"}
+     *
+     * @param json The JSON text
+     * @return Map of member names to their string values (numbers, booleans
+     *         and null are returned as their literal text)
+     * @throws IllegalArgumentException if the text is not a flat JSON object
+     */
+    public static Map<String, String> parseObject(String json) {
+        Parser parser = new Parser(json);
+        Map<String, String> values = parser.readObject();
+        parser.skipWhitespace();
+        if (!parser.atEnd()) {
+            throw new IllegalArgumentException("Unexpected content after JSON object");
+        }
+        return values;
+    }
+
+    /**
+     * Write a flat JSON object; Number and Boolean values are written
+     * unquoted, everything else as a string
+     *
+     * @param values The members to write, in iteration order
+     * @return The JSON text
+     */
+    public static String writeObject(Map<String, ?> values) {
+        StringBuilder json = new StringBuilder();
+        appendObject(json, values);
+        return json.toString();
+    }
+
+    /**
+     * Write a JSON array of flat objects
+     *
+     * @param objects The objects to write
+     * @return The JSON text
+     */
+    public static String writeArray(List<? extends Map<String, ?>> objects) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < objects.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendObject(json, objects.get(i));
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * Convenience for building a small JSON object in insertion order
+     *
+     * @param keysAndValues Alternating member names and values
+     * @return The members as an ordered map
+     */
+    public static Map<String, Object> object(Object... keysAndValues) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < keysAndValues.length; i += 2) {
+            values.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return values;
+    }
+
+    private static void appendObject(StringBuilder json, Map<String, ?> values) {
+        json.append('{');
+        boolean first = true;
+        for (Map.Entry<String, ?> member : values.entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            appendString(json, member.getKey());
+            json.append(':');
+            Object value = member.getValue();
+            if (value == null) {
+                json.append("null");
+            } else if (value instanceof Number || value instanceof Boolean) {
+                json.append(value);
+            } else {
+                appendString(json, value.toString());
+            }
+        }
+        json.append('}');
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    // Recursive-descent parser for a single flat object
+    private static class Parser {
+        private final String text;
+        private int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Map<String, String> readObject() {
+            Map<String, String> values = new LinkedHashMap<>();
+            skipWhitespace();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return values;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = readString();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                values.put(key, peek() == '"' ? readString() : readLiteral());
+                skipWhitespace();
+                char next = next();
+                if (next == '}') {
+                    return values;
+                }
+                if (next != ',') {
+                    throw new IllegalArgumentException("Expected ',' or '}' at position " + (pos - 1));
+                }
+            }
+        }
+
+        String readString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                char escaped = next();
+                switch (escaped) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'u':
+                        if (pos + 4 > text.length()) {
+                            throw new IllegalArgumentException("Truncated unicode escape");
+                        }
+                        value.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default:
+                        value.append(escaped); // Covers \" \\ and \/
+                }
+            }
+        }
+
+        String readLiteral() {
+            int start = pos;
+            while (!atEnd() && ",}] \t\r\n".indexOf(text.charAt(pos)) < 0) {
+                pos++;
+            }
+            if (start == pos) {
+                throw new IllegalArgumentException("Expected a value at position " + start);
+            }
+            String literal = text.substring(start, pos);
+            if (literal.startsWith("{") || literal.startsWith("[")) {
+                throw new IllegalArgumentException("Nested values are not supported");
+            }
+            return literal;
+        }
+
+        void skipWhitespace() {
+            while (!atEnd() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        boolean atEnd() {
+            return pos >= text.length();
+        }
+
+        private char peek() {
+            if (atEnd()) {
+                throw new IllegalArgumentException("Unexpected end of JSON");
+            }
+            return text.charAt(pos);
+        }
+
+        private char next() {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        private void expect(char expected) {
+            if (next() != expected) {
+                throw new IllegalArgumentException("Expected '" + expected + "' at position " + (pos - 1));
+            }
+        }
+    }
+}
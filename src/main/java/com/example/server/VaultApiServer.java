@@ -0,0 +1,383 @@
+package com.example.server;
+
+import com.example.logging.Log;
+import com.example.metrics.FlightRecording;
+import com.example.metrics.Metrics;
+import com.example.models.PasswordEntry;
+import com.example.utils.AttachmentStore;
+import com.example.utils.CSVHandler;
+import com.example.utils.PasswordUtils;
+import com.example.utils.Secret;
+import com.example.utils.SessionRegistry;
+import com.example.utils.UserManager;
+import com.example.utils.UserSession;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.System.Logger.Level;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This file contains the VaultApiServer class, an optional embedded HTTP/JSON
+ * server that gives local tools access to the vaults without the desktop UI.
+ * Every request runs on its own virtual thread and callers are identified by
+ * bearer tokens, which are ids of their UserSession in the SessionRegistry.
+ *
+ * Endpoints:
+ * POST /api/login {"username","password"} -> {"token","username"}
+ * POST /api/logout
+ * GET /api/vault -> [{"id","website","username"}]
+ * GET /api/vault/{id} -> {"id","website","username","password"}
+ * POST /api/vault {"website","username","password"} -> {"id"}
+ * PUT /api/vault/{id} {"website"?,"username"?,"password"?}
+ * DELETE /api/vault/{id}
+ */
+public class VaultApiServer {
+
+    private static final System.Logger LOG = Log.getLogger(VaultApiServer.class);
+
+    public static final int DEFAULT_PORT = 8787;
+
+    private static final String JSON_TYPE = "application/json; charset=utf-8";
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Create a server bound to the loopback interface
+     *
+     * @param port TCP port to listen on, 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public VaultApiServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/login", this::handleLogin);
+        server.createContext("/api/logout", this::handleLogout);
+        server.createContext("/api/vault", this::handleVault);
+    }
+
+    public void start() {
+        server.start();
+        LOG.log(Level.INFO, "Vault API listening on http://{0}:{1}", server.getAddress().getHostString(),
+                String.valueOf(getPort()));
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.close();
+        LOG.log(Level.INFO, "Vault API stopped");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        if (args.length == 2 && args[0].equals("--port")) {
+            port = Integer.parseInt(args[1]);
+        } else if (args.length != 0) {
+            System.err.println("Usage: VaultApiServer [--port <port>]");
+            System.exit(2);
+        }
+
+        FlightRecording.startIfRequested();
+        Metrics.registerMBeans();
+        // Calibrate login hashing now rather than during the first login
+        PasswordUtils.getIterations();
+        VaultApiServer apiServer = new VaultApiServer(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(apiServer::stop));
+        apiServer.start();
+    }
+
+    private void handleLogin(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            // Caught here, inside try (exchange), so the 400 is sent before the exchange closes
+            try {
+                if (!exchange.getRequestMethod().equals("POST")) {
+                    sendError(exchange, 405, "Use POST");
+                    return;
+                }
+                Map<String, String> body = readJson(exchange);
+                String username = body.get("username");
+                String password = body.get("password");
+                if (username == null || password == null) {
+                    sendError(exchange, 400, "username and password are required");
+                    return;
+                }
+
+                UserSession session;
+                try (Secret secret = Secret.copyOf(password)) {
+                    session = UserManager.login(username, secret);
+                }
+                if (session == null) {
+                    sendError(exchange, 401, "Invalid username or password");
+                    return;
+                }
+
+                sendJson(exchange, 200, Json.writeObject(
+                        Json.object("token", session.getId(), "username", session.getUsername())));
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+            }
+        }
+    }
+
+    private void handleLogout(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String token = bearerToken(exchange);
+            if (token == null || !UserManager.logout(token)) {
+                sendError(exchange, 401, "Not logged in");
+                return;
+            }
+            sendEmpty(exchange, 204);
+        }
+    }
+
+    private void handleVault(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            // Caught here, inside try (exchange), so the 400 is sent before the exchange closes
+            try {
+                UserSession session = SessionRegistry.getSession(bearerToken(exchange));
+                if (session == null) {
+                    sendError(exchange, 401, "Missing or invalid bearer token");
+                    return;
+                }
+
+                String path = exchange.getRequestURI().getPath();
+                String rest = path.substring("/api/vault".length());
+                String method = exchange.getRequestMethod();
+
+                if (rest.isEmpty() || rest.equals("/")) {
+                    switch (method) {
+                        case "GET":
+                            listEntries(exchange, session);
+                            break;
+                        case "POST":
+                            addEntry(exchange, session);
+                            break;
+                        default:
+                            sendError(exchange, 405, "Use GET or POST");
+                    }
+                    return;
+                }
+
+                int id;
+                try {
+                    id = Integer.parseInt(rest.substring(1));
+                } catch (NumberFormatException e) {
+                    sendError(exchange, 404, "Unknown entry: " + rest.substring(1));
+                    return;
+                }
+
+                switch (method) {
+                    case "GET":
+                        getEntry(exchange, session, id);
+                        break;
+                    case "PUT":
+                        updateEntry(exchange, session, id);
+                        break;
+                    case "DELETE":
+                        deleteEntry(exchange, session, id);
+                        break;
+                    default:
+                        sendError(exchange, 405, "Use GET, PUT or DELETE");
+                }
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+            }
+        }
+    }
+
+    private void listEntries(HttpExchange exchange, UserSession session) throws IOException {
+        List<Map<String, Object>> result;
+        synchronized (session) {
+            List<PasswordEntry> entries = session.getVault();
+            result = new ArrayList<>(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                PasswordEntry entry = entries.get(i);
+                result.add(Json.object("id", i, "website", entry.getWebsite(), "username", entry.getUsername()));
+            }
+        }
+        sendJson(exchange, 200, Json.writeArray(result));
+    }
+
+    private void getEntry(HttpExchange exchange, UserSession session, int id) throws IOException {
+        PasswordEntry entry = findEntry(session, id);
+        if (entry == null) {
+            sendError(exchange, 404, "Unknown entry: " + id);
+            return;
+        }
+        String password = entry.getDecryptedPassword();
+        if (password == null) {
+            sendError(exchange, 500, "Password of entry " + id + " could not be decrypted");
+            return;
+        }
+        sendJson(exchange, 200, Json.writeObject(Json.object(
+                "id", id,
+                "website", entry.getWebsite(),
+                "username", entry.getUsername(),
+                "password", password)));
+    }
+
+    private void addEntry(HttpExchange exchange, UserSession session) throws IOException {
+        Map<String, String> body = readJson(exchange);
+        String website = requireField(body, "website");
+        String username = requireField(body, "username");
+        String password = requireField(body, "password");
+        checkStorable(website, username);
+
+        PasswordEntry added = new PasswordEntry(website, username, password, session.getVaultKey());
+        List<PasswordEntry> saved = session.updateVault(entries -> {
+            entries.add(added);
+            return entries;
+        });
+        if (saved == null) {
+            sendError(exchange, 500, "Could not save the vault");
+            return;
+        }
+        sendJson(exchange, 201, Json.writeObject(Json.object("id", saved.indexOf(added))));
+    }
+
+    private void updateEntry(HttpExchange exchange, UserSession session, int id) throws IOException {
+        Map<String, String> body = readJson(exchange);
+        checkStorable(body.getOrDefault("website", ""), body.getOrDefault("username", ""));
+
+        PasswordEntry target = findEntry(session, id);
+        if (target == null) {
+            sendError(exchange, 404, "Unknown entry: " + id);
+            return;
+        }
+
+        // Build the replacement once, outside the change that may be retried
+        String website = body.containsKey("website") ? requireField(body, "website") : target.getWebsite();
+        String username = body.containsKey("username") ? requireField(body, "username") : target.getUsername();
+        PasswordEntry replacement = body.containsKey("password")
+                ? new PasswordEntry(website, username, requireField(body, "password"), session.getVaultKey())
+                : target.copyAs(website, username);
+
+        boolean[] found = new boolean[1];
+        List<PasswordEntry> saved = session.updateVault(entries -> {
+            int index = indexOfEntry(entries, target);
+            found[0] = index >= 0;
+            if (found[0]) {
+                entries.set(index, replacement);
+            }
+            return entries;
+        });
+        if (saved == null) {
+            sendError(exchange, 500, "Could not save the vault");
+        } else if (!found[0]) {
+            sendError(exchange, 404, "Entry was deleted: " + id);
+        } else {
+            AttachmentStore.renameEntry(session.getUsername(), target.getWebsite(), target.getUsername(), website,
+                    username);
+            sendEmpty(exchange, 204);
+        }
+    }
+
+    private void deleteEntry(HttpExchange exchange, UserSession session, int id) throws IOException {
+        PasswordEntry target = findEntry(session, id);
+        if (target == null) {
+            sendError(exchange, 404, "Unknown entry: " + id);
+            return;
+        }
+
+        List<PasswordEntry> saved = session.updateVault(entries -> {
+            int index = indexOfEntry(entries, target);
+            if (index >= 0) {
+                entries.remove(index);
+            }
+            return entries;
+        });
+        if (saved == null) {
+            sendError(exchange, 500, "Could not save the vault");
+            return;
+        }
+        AttachmentStore.removeAll(session.getUsername(), target.getWebsite(), target.getUsername());
+        sendEmpty(exchange, 204);
+    }
+
+    // Ids are positions in the session's vault; writes locate the entry again
+    // by website and username because another writer may have moved it
+    private static PasswordEntry findEntry(UserSession session, int id) {
+        synchronized (session) {
+            List<PasswordEntry> entries = session.getVault();
+            return id >= 0 && id < entries.size() ? entries.get(id) : null;
+        }
+    }
+
+    private static int indexOfEntry(List<PasswordEntry> entries, PasswordEntry target) {
+        for (int i = 0; i < entries.size(); i++) {
+            PasswordEntry entry = entries.get(i);
+            if (entry.getWebsite().equals(target.getWebsite()) && entry.getUsername().equals(target.getUsername())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) {
+            return null;
+        }
+        return header.substring("Bearer ".length()).trim();
+    }
+
+    private static String requireField(Map<String, String> body, String name) {
+        String value = body.get(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException(name + " is required");
+        }
+        return value.trim();
+    }
+
+    // The vault is stored as unquoted CSV, so commas and line breaks would corrupt the row
+    private static void checkStorable(String website, String username) {
+        if (!CSVHandler.isStorable(website, username)) {
+            throw new IllegalArgumentException("website and username must not contain commas or line breaks");
+        }
+    }
+
+    private static Map<String, String> readJson(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            byte[] bytes = body.readNBytes(MAX_BODY_BYTES + 1);
+            if (bytes.length > MAX_BODY_BYTES) {
+                throw new IllegalArgumentException("Request body too large");
+            }
+            return Json.parseObject(new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON_TYPE);
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, Json.writeObject(Json.object("error", message)));
+    }
+
+    private static void sendEmpty(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+}
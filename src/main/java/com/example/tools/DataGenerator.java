@@ -0,0 +1,336 @@
+package com.example.tools;
+
+import com.example.utils.EncryptionUtils;
+import com.example.utils.PasswordUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * This file contains the DataGenerator tool that fills a data directory with
+ * synthetic users and vaults for scaling and stress tests. Files use the
+ * layout DataManager expects: users/user-data.csv with salted hashes from
+ * PasswordUtils and passwords/passwords_<user>.csv with real EncryptionUtils
+ * ciphertext.
+ *
+ * Vault sizes follow a long tail between --min-entries and --max-entries:
+ * most users have a few dozen entries and a handful have tens of thousands.
+ * Users are generated in parallel, each from its own random stream derived
+ * from the seed, so the same seed gives the same users, vault sizes,
+ * websites, usernames and passwords on any number of threads. Only the
+ * random salts and IVs differ between runs.
+ *
+ * Usage: DataGenerator --out <dir> [--users 1000] [--seed 42]
+ * [--min-entries 10] [--max-entries 100000] [--skew 3]
+ * [--threads <cores>] [--password <login password>] [--force]
+ */
+public class DataGenerator {
+
+    private static final String USER_DATA_HEADER = "Username,Email,PasswordHash";
+    private static final String PASSWORD_FILE_HEADER = "Website/App Name,Username/Email,Password";
+    // Login hashes are made cheap so generation is not dominated by them;
+    // each user gets the deployment's full cost at their first login
+    private static final int HASH_ITERATIONS = 10_000;
+
+    private static final String[] SITES = {
+            "google.com", "youtube.com", "facebook.com", "instagram.com", "twitter.com", "linkedin.com",
+            "github.com", "gitlab.com", "stackoverflow.com", "reddit.com", "amazon.com", "ebay.com",
+            "netflix.com", "spotify.com", "apple.com", "microsoft.com", "dropbox.com", "slack.com",
+            "zoom.us", "notion.so", "trello.com", "atlassian.net", "paypal.com", "stripe.com",
+            "wise.com", "revolut.com", "booking.com", "airbnb.com", "uber.com", "lyft.com",
+            "twitch.tv", "discord.com", "steamcommunity.com", "epicgames.com", "adobe.com", "figma.com",
+            "canva.com", "medium.com", "wordpress.com", "shopify.com", "etsy.com", "aliexpress.com",
+            "yahoo.com", "outlook.com", "proton.me", "icloud.com", "coursera.org", "udemy.com",
+            "khanacademy.org", "duolingo.com", "pinterest.com", "tumblr.com", "quora.com", "wikipedia.org",
+            "bankofamerica.com", "chase.com", "hsbc.com", "barclays.co.uk", "ikea.com", "walmart.com" };
+
+    private static final String[] SUBDOMAINS = { "", "", "", "", "mail.", "shop.", "account.", "app.",
+            "portal.", "my.", "login.", "dev." };
+
+    private static final String[] FIRST_NAMES = {
+            "olivia", "liam", "emma", "noah", "amelia", "oliver", "ava", "elijah", "sophia", "james",
+            "isabella", "william", "mia", "lucas", "charlotte", "henry", "harper", "theo", "nimal", "kasun",
+            "ayesha", "dilini", "sahan", "tharushi", "ravi", "priya", "arjun", "meera", "chen", "wei",
+            "yuki", "hiro", "fatima", "omar", "leila", "youssef", "ana", "joao", "lucia", "mateo" };
+
+    private static final String[] LAST_NAMES = {
+            "smith", "johnson", "williams", "brown", "jones", "garcia", "miller", "davis", "perera",
+            "fernando", "silva", "bandara", "jayasinghe", "kumar", "sharma", "patel", "wang", "li",
+            "tanaka", "sato", "haddad", "rahman", "santos", "oliveira", "rossi", "muller", "schmidt",
+            "dubois", "martin", "nguyen" };
+
+    private static final String[] MAIL_DOMAINS = { "gmail.com", "outlook.com", "yahoo.com", "proton.me",
+            "icloud.com", "example.org" };
+
+    private static final char[] PASSWORD_CHARS =
+            "abcdefghijkmnopqrstuvwxyzABCDEFGHJKLMNPQRSTUVWXYZ23456789!@#$%^&*-_=+".toCharArray();
+
+    private final Path outDir;
+    private final int users;
+    private final long seed;
+    private final int minEntries;
+    private final int maxEntries;
+    private final double skew;
+    private final int threads;
+    private final String loginPassword;
+
+    private DataGenerator(Path outDir, int users, long seed, int minEntries, int maxEntries, double skew,
+            int threads, String loginPassword) {
+        this.outDir = outDir;
+        this.users = users;
+        this.seed = seed;
+        this.minEntries = minEntries;
+        this.maxEntries = maxEntries;
+        this.skew = skew;
+        this.threads = threads;
+        this.loginPassword = loginPassword;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path outDir = null;
+        int users = 1000;
+        long seed = 42;
+        int minEntries = 10;
+        int maxEntries = 100_000;
+        double skew = 3;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String loginPassword = "password123";
+        boolean force = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--out":
+                    outDir = Paths.get(value(args, ++i));
+                    break;
+                case "--users":
+                    users = Integer.parseInt(value(args, ++i));
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value(args, ++i));
+                    break;
+                case "--min-entries":
+                    minEntries = Integer.parseInt(value(args, ++i));
+                    break;
+                case "--max-entries":
+                    maxEntries = Integer.parseInt(value(args, ++i));
+                    break;
+                case "--skew":
+                    skew = Double.parseDouble(value(args, ++i));
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value(args, ++i));
+                    break;
+                case "--password":
+                    loginPassword = value(args, ++i);
+                    break;
+                case "--force":
+                    force = true;
+                    break;
+                default:
+                    usage("Unknown option: " + args[i]);
+            }
+        }
+        if (outDir == null) {
+            usage("--out is required");
+        }
+        if (users < 1 || minEntries < 0 || maxEntries < minEntries || skew <= 0 || threads < 1) {
+            usage("Need users >= 1, 0 <= min-entries <= max-entries, skew > 0 and threads >= 1");
+        }
+        if (!force && containsFiles(outDir)) {
+            usage(outDir + " is not empty, pass --force to overwrite generated files");
+        }
+
+        new DataGenerator(outDir, users, seed, minEntries, maxEntries, skew, threads, loginPassword).run();
+    }
+
+    private void run() throws Exception {
+        Files.createDirectories(outDir.resolve("users"));
+        Files.createDirectories(outDir.resolve("passwords"));
+        System.out.printf("Generating %d users (seed %d, %d-%d entries, skew %.1f) on %d threads into %s%n",
+                users, seed, minEntries, maxEntries, skew, threads, outDir.toAbsolutePath());
+
+        long started = System.nanoTime();
+        String[] userLines = new String[users];
+        int[] vaultSizes = new int[users];
+
+        // Work in chunks so each task is big enough to be worth scheduling
+        int chunk = Math.max(1, users / (threads * 8));
+        try (ExecutorService pool = Executors.newFixedThreadPool(threads)) {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int from = 0; from < users; from += chunk) {
+                int start = from;
+                int end = Math.min(users, from + chunk);
+                tasks.add(pool.submit(() -> {
+                    for (int index = start; index < end; index++) {
+                        vaultSizes[index] = generateUser(index, userLines);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        }
+
+        List<String> lines = new ArrayList<>(users + 1);
+        lines.add(USER_DATA_HEADER);
+        lines.addAll(Arrays.asList(userLines));
+        Files.write(outDir.resolve("users").resolve("user-data.csv"), lines, StandardCharsets.UTF_8);
+
+        printSummary(vaultSizes, (System.nanoTime() - started) / 1e9);
+    }
+
+    // Writes one user's vault and returns its size; the user's line goes into userLines
+    private int generateUser(int index, String[] userLines) throws IOException {
+        SplittableRandom random = randomFor(index);
+
+        String first = pick(random, FIRST_NAMES);
+        String last = pick(random, LAST_NAMES);
+        String username = first + "." + last + index;
+        String email = username + "@" + pick(random, MAIL_DOMAINS);
+        userLines[index] = username + "," + email + ","
+                + PasswordUtils.createPasswordHash(loginPassword, HASH_ITERATIONS);
+
+        int entries = vaultSize(random);
+        String[] websites = new String[entries];
+        String[] accounts = new String[entries];
+        List<String> passwords = new ArrayList<>(entries);
+        List<byte[]> associatedData = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            websites[i] = website(random, i);
+            accounts[i] = accountName(random, first, last, email);
+            passwords.add(password(random));
+            associatedData.add(EncryptionUtils.associatedData(websites[i], accounts[i]));
+        }
+
+        // Users already run in parallel, so each vault is one sequential batch.
+        // Wrapping a vault key per user would cost a key derivation each, so
+        // vaults use the master key and get the user's key on first login.
+        byte[][] encrypted = new byte[entries][];
+        EncryptionUtils.BatchResult result = EncryptionUtils.encryptAll(passwords, associatedData, null, encrypted,
+                false);
+        if (!result.allSucceeded()) {
+            throw new IOException(result.getFailureCount() + " passwords of " + username + " could not be encrypted");
+        }
+
+        Path vaultFile = outDir.resolve("passwords").resolve("passwords_" + username + ".csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(vaultFile, StandardCharsets.UTF_8)) {
+            writer.write(PASSWORD_FILE_HEADER);
+            writer.newLine();
+            for (int i = 0; i < entries; i++) {
+                writer.write(websites[i]);
+                writer.write(',');
+                writer.write(accounts[i]);
+                writer.write(',');
+                writer.write(EncryptionUtils.encodeStored(encrypted[i]));
+                writer.newLine();
+            }
+        }
+        return entries;
+    }
+
+    // A random stream that depends only on the seed and the user index
+    private SplittableRandom randomFor(int index) {
+        long mixed = seed * 0x9E3779B97F4A7C15L + index;
+        mixed = (mixed ^ (mixed >>> 30)) * 0xBF58476D1CE4E5B9L;
+        mixed = (mixed ^ (mixed >>> 27)) * 0x94D049BB133111EBL;
+        return new SplittableRandom(mixed ^ (mixed >>> 31));
+    }
+
+    // Log-scale size raised to the skew power: most vaults are small, few are huge
+    private int vaultSize(SplittableRandom random) {
+        if (maxEntries == minEntries) {
+            return minEntries;
+        }
+        double low = Math.log(Math.max(1, minEntries));
+        double high = Math.log(maxEntries);
+        double position = Math.pow(random.nextDouble(), skew);
+        return (int) Math.max(minEntries, Math.min(maxEntries, Math.round(Math.exp(low + (high - low) * position))));
+    }
+
+    private static String website(SplittableRandom random, int entryIndex) {
+        String site = pick(random, SUBDOMAINS) + pick(random, SITES);
+        // Big vaults run out of well-known sites, add long-tail ones
+        return entryIndex < SITES.length ? site : "site" + random.nextInt(1_000_000) + "." + site;
+    }
+
+    private static String accountName(SplittableRandom random, String first, String last, String email) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return email;
+            case 1:
+                return first + last;
+            case 2:
+                return first + "_" + last.charAt(0) + random.nextInt(100);
+            default:
+                return first.charAt(0) + last + "@" + pick(random, MAIL_DOMAINS);
+        }
+    }
+
+    private static String password(SplittableRandom random) {
+        char[] chars = new char[10 + random.nextInt(15)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = PASSWORD_CHARS[random.nextInt(PASSWORD_CHARS.length)];
+        }
+        return new String(chars);
+    }
+
+    private static String pick(SplittableRandom random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private void printSummary(int[] vaultSizes, double seconds) {
+        int[] sorted = vaultSizes.clone();
+        Arrays.sort(sorted);
+        long total = 0;
+        for (int size : sorted) {
+            total += size;
+        }
+        System.out.printf("Users:        %d (login password: %s)%n", users, loginPassword);
+        System.out.printf("Entries:      %d total, vault size p50=%d p90=%d p99=%d max=%d%n", total,
+                percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                sorted[sorted.length - 1]);
+        System.out.printf("Time:         %.1f s (%.0f entries/s)%n", seconds, total / seconds);
+        System.out.printf("Use it with:  -Dpm.data.dir=%s%n", outDir.toAbsolutePath());
+    }
+
+    private static int percentile(int[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static boolean containsFiles(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return false;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.anyMatch(Files::isRegularFile);
+        }
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            usage(args[index - 1] + " needs a value");
+        }
+        return args[index];
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Usage: DataGenerator --out <dir> [--users 1000] [--seed 42] [--min-entries 10]");
+        System.err.println("       [--max-entries 100000] [--skew 3] [--threads <cores>] [--password <pw>] [--force]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.tools;
+
+import com.example.models.User;
+import com.example.utils.CSVHandler;
+import com.example.utils.DataManager;
+import com.example.utils.UserManager;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This file contains the HeapFootprint tool that measures how much heap the
+ * loaded vaults take. It loads the vaults of one or all users, then prints
+ * the retained heap per entry and the top of the JVM's class histogram.
+ *
+ * With --layout strings the same rows are kept the way entries used to be
+ * stored (website, username and Base64 password as three unshared Strings),
+ * so running the tool twice gives a before and after comparison:
+ *
+ * java -Xmx4g -cp target/classes com.example.tools.HeapFootprint --data /tmp/pm-data --all
+ * java -Xmx4g -cp target/classes com.example.tools.HeapFootprint --data /tmp/pm-data --all --layout strings
+ *
+ * Usage: HeapFootprint [--data <dir>] (--user <name> | --all)
+ * [--layout compact|strings] [--top 12]
+ */
+public class HeapFootprint {
+
+    // The entry layout used before vaults were stored compactly
+    private record StringEntry(String website, String username, String password) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> users = new ArrayList<>();
+        boolean all = false;
+        String layout = "compact";
+        int top = 12;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--data":
+                    // Must be set before DataManager is first used
+                    System.setProperty("pm.data.dir", value(args, ++i));
+                    break;
+                case "--user":
+                    users.add(value(args, ++i));
+                    break;
+                case "--all":
+                    all = true;
+                    break;
+                case "--layout":
+                    layout = value(args, ++i);
+                    break;
+                case "--top":
+                    top = Integer.parseInt(value(args, ++i));
+                    break;
+                default:
+                    usage("Unknown option: " + args[i]);
+            }
+        }
+        if (!layout.equals("compact") && !layout.equals("strings")) {
+            usage("--layout must be compact or strings");
+        }
+        if (all) {
+            for (User user : UserManager.getAllUsers()) {
+                users.add(user.getUsername());
+            }
+        }
+        if (users.isEmpty()) {
+            usage("Give --user <name> or --all");
+        }
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long before = usedHeapAfterGc(memory);
+
+        List<Object> vaults = new ArrayList<>(users.size());
+        long entries = 0;
+        for (String username : users) {
+            List<?> vault = layout.equals("compact")
+                    ? CSVHandler.loadUserPasswordsFromCSV(username)
+                    : loadAsStrings(username);
+            entries += vault.size();
+            vaults.add(vault);
+        }
+
+        long after = usedHeapAfterGc(memory);
+        long retained = after - before;
+        System.out.printf("Layout:    %s%n", layout);
+        System.out.printf("Vaults:    %d, %d entries%n", users.size(), entries);
+        System.out.printf("Retained:  %.1f MB (%.0f bytes per entry)%n", retained / 1048576.0,
+                entries > 0 ? (double) retained / entries : 0);
+        System.out.println();
+        System.out.println(classHistogram(top));
+
+        // Keep the vaults alive until the histogram has been taken
+        Reference.reachabilityFence(vaults);
+    }
+
+    // Reads a vault into the old layout: three separate Strings per row
+    private static List<StringEntry> loadAsStrings(String username) throws IOException {
+        Path file = DataManager.getUserPasswordFilePath(username);
+        List<StringEntry> entries = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return entries;
+        }
+        List<String> lines = Files.readAllLines(file);
+        for (int i = 1; i < lines.size(); i++) {
+            String[] data = lines.get(i).split(",");
+            if (data.length >= 3 && !data[0].trim().isEmpty()) {
+                entries.add(new StringEntry(data[0].trim(), data[1].trim(), data[2].trim()));
+            }
+        }
+        return entries;
+    }
+
+    private static long usedHeapAfterGc(MemoryMXBean memory) throws InterruptedException {
+        long used = Long.MAX_VALUE;
+        // A few rounds so objects freed by finalization and references are gone too
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    // The first lines of "jcmd <pid> GC.class_histogram", taken in process
+    private static String classHistogram(int top) throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName diagnostics = new ObjectName("com.sun.management:type=DiagnosticCommand");
+        String histogram = (String) server.invoke(diagnostics, "gcClassHistogram",
+                new Object[] { new String[0] }, new String[] { String[].class.getName() });
+
+        String[] lines = histogram.split("\n");
+        StringBuilder result = new StringBuilder();
+        // Two header lines, then the classes by size
+        for (int i = 0; i < Math.min(lines.length, top + 2); i++) {
+            result.append(lines[i]).append('\n');
+        }
+        result.append(lines[lines.length - 1]);
+        return result.toString();
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            usage(args[index - 1] + " needs a value");
+        }
+        return args[index];
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Usage: HeapFootprint [--data <dir>] (--user <name> | --all) [--layout compact|strings]");
+        System.err.println("       [--top 12]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.tools;
+
+import com.example.utils.BackupRepository;
+import com.example.utils.DataManager;
+import com.example.utils.Secret;
+
+import java.io.Console;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+/**
+ * This file contains the VaultBackup tool that backs up the whole data
+ * directory (users, vaults, attachments and the admin file) into an
+ * encrypted BackupRepository, lists its snapshots and restores them.
+ * Each backup is a full snapshot, but only content that changed since the
+ * previous one is read and stored, so it can run every night:
+ *
+ * java -cp target/classes com.example.tools.VaultBackup --repo /backups/pm backup
+ * java -cp target/classes com.example.tools.VaultBackup --repo /backups/pm snapshots
+ * java -cp target/classes com.example.tools.VaultBackup --repo /backups/pm restore latest /tmp/pm-restored
+ *
+ * The repository passphrase is read from PM_BACKUP_PASSWORD or prompted for.
+ * The first backup creates the repository with that passphrase. Restores go
+ * into an empty directory; stop the app and swap it in to roll back.
+ *
+ * Usage: VaultBackup [--data <dir>] --repo <dir> [--threads <cores>]
+ * (backup | snapshots | restore <snapshot|latest> <dir>)
+ */
+public class VaultBackup {
+
+    public static void main(String[] args) throws Exception {
+        PrintStream out = System.out;
+        // The log reports INFO on System.out, keep stdout for snapshot names
+        // only so they can be piped
+        System.setOut(System.err);
+        Path repository = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        int i = 0;
+        while (i < args.length && args[i].startsWith("--")) {
+            switch (args[i]) {
+                case "--data":
+                    // Must be set before DataManager is first used
+                    System.setProperty("pm.data.dir", value(args, ++i));
+                    break;
+                case "--repo":
+                    repository = Paths.get(value(args, ++i));
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value(args, ++i));
+                    break;
+                default:
+                    usage("Unknown option: " + args[i]);
+            }
+            i++;
+        }
+        if (repository == null) {
+            usage("--repo is required");
+        }
+        if (threads < 1) {
+            usage("Need threads >= 1");
+        }
+        if (i >= args.length) {
+            usage("No command given");
+        }
+        String command = args[i];
+        int remaining = args.length - i - 1;
+        switch (command) {
+            case "backup":
+            case "snapshots":
+                if (remaining != 0) {
+                    usage(command + " takes no arguments");
+                }
+                break;
+            case "restore":
+                if (remaining != 2) {
+                    usage("restore needs a snapshot and a target directory");
+                }
+                if (containsFiles(Paths.get(args[i + 2]))) {
+                    usage(args[i + 2] + " is not empty, restore into a new directory");
+                }
+                break;
+            default:
+                usage("Unknown command: " + command);
+        }
+
+        long started = System.nanoTime();
+        BackupRepository backups;
+        try (Secret passphrase = readPassphrase()) {
+            backups = BackupRepository.open(repository, passphrase, "backup".equals(command));
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(4);
+            return;
+        }
+        if (backups == null) {
+            System.err.println("Wrong passphrase for " + repository);
+            System.exit(3);
+        }
+
+        int exitCode;
+        try (backups) {
+            switch (command) {
+                case "backup":
+                    exitCode = backup(backups, threads, out);
+                    break;
+                case "snapshots":
+                    for (String name : backups.snapshots()) {
+                        out.println(name);
+                    }
+                    exitCode = 0;
+                    break;
+                default:
+                    exitCode = restore(backups, args[i + 1], Paths.get(args[i + 2]), threads);
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            exitCode = 4;
+        }
+        System.err.printf("Done in %.2f s%n", (System.nanoTime() - started) / 1e9);
+        if (exitCode != 0) {
+            System.exit(exitCode);
+        }
+    }
+
+    private static int backup(BackupRepository backups, int threads, PrintStream out) throws IOException {
+        Path dataDir = Paths.get(DataManager.getAppDataDir());
+        BackupRepository.BackupResult result = backups.backup(dataDir, threads);
+        out.println(result.getSnapshot());
+        System.err.printf("Backed up %d files (%d unchanged) from %s%n", result.getFiles(),
+                result.getUnchangedFiles(), dataDir.toAbsolutePath());
+        System.err.printf("Read %s in %d chunks, %d new; stored %s%n", megabytes(result.getBytesRead()),
+                result.getChunks(), result.getNewChunks(), megabytes(result.getBytesStored()));
+        return 0;
+    }
+
+    private static int restore(BackupRepository backups, String snapshot, Path target, int threads)
+            throws IOException {
+        if ("latest".equals(snapshot)) {
+            snapshot = backups.latestSnapshot();
+            if (snapshot == null) {
+                System.err.println("The repository has no snapshots yet");
+                return 1;
+            }
+        }
+        BackupRepository.RestoreResult result = backups.restore(snapshot, target, threads);
+        System.err.printf("Restored %d files (%s) from %s into %s%n", result.getFiles(),
+                megabytes(result.getBytes()), snapshot, target.toAbsolutePath());
+        for (String failed : result.getFailed()) {
+            System.err.println("Could not restore: " + failed);
+        }
+        return result.getFailed().isEmpty() ? 0 : 4;
+    }
+
+    private static Secret readPassphrase() throws IOException {
+        String environment = System.getenv("PM_BACKUP_PASSWORD");
+        if (environment != null) {
+            return Secret.copyOf(environment);
+        }
+        Console console = System.console();
+        if (console == null) {
+            throw new IOException("No console available, set PM_BACKUP_PASSWORD");
+        }
+        char[] typed = console.readPassword("Backup passphrase: ");
+        if (typed == null) {
+            throw new IOException("No passphrase given");
+        }
+        return Secret.wrap(typed);
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    private static boolean containsFiles(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return false;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.findAny().isPresent();
+        }
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            usage(args[index - 1] + " needs a value");
+        }
+        return args[index];
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Usage: VaultBackup [--data <dir>] --repo <dir> [--threads <cores>]");
+        System.err.println("       (backup | snapshots | restore <snapshot|latest> <dir>)");
+        System.exit(2);
+    }
+}
@@ -8,14 +8,14 @@ import java.io.IOException;
 
 public class AdminManager {
 
-    private static final String ADMIN_DATA_FILE = "src/main/resources/data/admin/admin-data.csv";
+    private static final String ADMIN_DATA_FILE = DataManager.getAdminDataFilePath().toString();
     private static final String DEFAULT_EMAIL = "admin";
     private static final String DEFAULT_PASSWORD = "admin";
 
     public static boolean authenticateAdmin(String email, String password) {
         try {
             // Create admin directory if it doesn't exist
-            java.io.File adminDir = new java.io.File("src/main/resources/data/admin");
+            java.io.File adminDir = new java.io.File(ADMIN_DATA_FILE).getParentFile();
             if (!adminDir.exists()) {
                 adminDir.mkdirs();
             }
@@ -120,7 +120,7 @@ public class AdminManager {
             }
 
             // Create admin directory if it doesn't exist
-            java.io.File adminDir = new java.io.File("src/main/resources/data/admin");
+            java.io.File adminDir = new java.io.File(ADMIN_DATA_FILE).getParentFile();
             if (!adminDir.exists()) {
                 adminDir.mkdirs();
             }
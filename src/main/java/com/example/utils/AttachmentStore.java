@@ -0,0 +1,332 @@
+package com.example.utils;
+
+import com.example.logging.Log;
+import com.example.models.Attachment;
+import com.example.models.PasswordEntry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.System.Logger.Level;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * This file contains the AttachmentStore utility class that keeps files
+ * attached to vault entries, such as SSH keys, certificates and long notes.
+ * Each user has a blob area next to the vault: an index.csv that lists the
+ * attachments of each entry, and one blob file per attachment holding its
+ * content encrypted with StreamingAead under the user's VaultKey. Content
+ * is bound to its owner and blob id, so a blob cannot be moved to another
+ * user or swapped with another blob. Attachments are streamed in and out
+ * through a fixed-size buffer and never held in memory as a whole; listing
+ * them only reads the index, so content is decrypted only when opened.
+ * OOP Concept: This class demonstrates the UTILITY PATTERN by providing
+ * static methods for attachment storage.
+ */
+public class AttachmentStore {
+
+    private static final System.Logger LOG = Log.getLogger(AttachmentStore.class);
+
+    private static final String INDEX_FILE = "index.csv";
+    private static final String INDEX_HEADER = "Website/App Name,Username/Email,Attachment,Blob,Size";
+    private static final String BLOB_SUFFIX = ".blob";
+    private static final int BLOB_ID_BYTES = 16;
+
+    /**
+     * List the attachments of an entry without reading their content
+     *
+     * @param owner The user who owns the vault
+     * @param entry The entry
+     * @return The entry's attachments, empty if it has none
+     */
+    public static List<Attachment> list(String owner, PasswordEntry entry) {
+        List<Attachment> attached = new ArrayList<>();
+        try {
+            for (Attachment attachment : readIndex(indexFile(owner))) {
+                if (attachment.belongsTo(entry.getWebsite(), entry.getUsername())) {
+                    attached.add(attachment);
+                }
+            }
+        } catch (IOException e) {
+            LOG.log(Level.ERROR, "Error reading the attachments of {0}: {1}", owner, e.getMessage());
+        }
+        return attached;
+    }
+
+    /**
+     * Attach a file to an entry, encrypting it as it is read
+     *
+     * @param session The owner's session, whose vault key encrypts the file
+     * @param entry   The entry to attach it to
+     * @param file    The file to attach
+     * @return The new attachment, or null if it could not be stored
+     */
+    public static Attachment add(UserSession session, PasswordEntry entry, Path file) {
+        try (InputStream content = Files.newInputStream(file)) {
+            return add(session, entry, String.valueOf(file.getFileName()), content);
+        } catch (IOException e) {
+            LOG.log(Level.ERROR, "Error reading {0}: {1}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Attach content to an entry, encrypting it as it is read
+     *
+     * @param session The owner's session, whose vault key encrypts the content
+     * @param entry   The entry to attach it to
+     * @param name    The name to show for it
+     * @param content The content; read to the end, not closed
+     * @return The new attachment, or null if it could not be stored
+     */
+    public static Attachment add(UserSession session, PasswordEntry entry, String name, InputStream content) {
+        String owner = session.getUsername();
+        Path directory = DataManager.getUserAttachmentsDir(owner);
+        byte[] id = new byte[BLOB_ID_BYTES];
+        SecureRandoms.get().nextBytes(id);
+        String blobId = HexFormat.of().formatHex(id);
+        Path blob = directory.resolve(blobId + BLOB_SUFFIX);
+        Path temp = blob.resolveSibling(blob.getFileName() + ".tmp");
+
+        try {
+            Files.createDirectories(directory);
+            long size;
+            try (OutputStream encrypted = StreamingAead.encryptingStream(Files.newOutputStream(temp),
+                    session.getVaultKey(), associatedData(owner, blobId))) {
+                size = content.transferTo(encrypted);
+            }
+            Files.move(temp, blob, StandardCopyOption.ATOMIC_MOVE);
+
+            Attachment attachment = new Attachment(entry.getWebsite(), entry.getUsername(), cleanName(name),
+                    blobId, size);
+            updateIndex(owner, attachments -> {
+                attachments.add(attachment);
+                return attachments;
+            });
+            LOG.log(Level.INFO, "Attached {0} to {1}", attachment.getName(), entry.getWebsite());
+            return attachment;
+        } catch (IOException e) {
+            LOG.log(Level.ERROR, "Error attaching {0}: {1}", name, e.getMessage());
+            deleteQuietly(temp);
+            deleteQuietly(blob);
+            return null;
+        }
+    }
+
+    /**
+     * Open an attachment's content for reading; it is decrypted chunk by
+     * chunk as it is read
+     *
+     * @param session    The owner's session
+     * @param attachment The attachment
+     * @return The plaintext, to be closed by the caller
+     * @throws IOException if the blob is missing, damaged or not the owner's
+     */
+    public static InputStream open(UserSession session, Attachment attachment) throws IOException {
+        String owner = session.getUsername();
+        Path blob = DataManager.getUserAttachmentsDir(owner).resolve(attachment.getBlobId() + BLOB_SUFFIX);
+        return StreamingAead.decryptingStream(Files.newInputStream(blob), session.getVaultKey(),
+                associatedData(owner, attachment.getBlobId()));
+    }
+
+    /**
+     * Decrypt an attachment into a file. The file only appears once all of
+     * the content has been verified.
+     *
+     * @param session    The owner's session
+     * @param attachment The attachment
+     * @param target     The file to write
+     * @return true if the file was written
+     */
+    public static boolean saveTo(UserSession session, Attachment attachment, Path target) {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (InputStream content = open(session, attachment)) {
+            Files.copy(content, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            LOG.log(Level.ERROR, "Error opening attachment {0}: {1}", attachment.getName(), e.getMessage());
+            deleteQuietly(temp);
+            return false;
+        }
+    }
+
+    /**
+     * Remove an attachment and its blob
+     *
+     * @param owner      The user who owns the vault
+     * @param attachment The attachment
+     * @return true if it was removed
+     */
+    public static boolean remove(String owner, Attachment attachment) {
+        List<Attachment> removed = removeWhere(owner,
+                candidate -> candidate.getBlobId().equals(attachment.getBlobId()));
+        return !removed.isEmpty();
+    }
+
+    /**
+     * Remove every attachment of an entry, for example when it is deleted
+     *
+     * @param owner    The user who owns the vault
+     * @param website  The entry's website
+     * @param username The entry's username
+     */
+    public static void removeAll(String owner, String website, String username) {
+        removeWhere(owner, candidate -> candidate.belongsTo(website, username));
+    }
+
+    /**
+     * Move the attachments of an entry to its new website and username; the
+     * blobs are not bound to the entry's names, so nothing is encrypted again
+     *
+     * @param owner       The user who owns the vault
+     * @param oldWebsite  The entry's previous website
+     * @param oldUsername The entry's previous username
+     * @param website     The new website
+     * @param username    The new username
+     */
+    public static void renameEntry(String owner, String oldWebsite, String oldUsername, String website,
+            String username) {
+        if (oldWebsite.equals(website) && oldUsername.equals(username)
+                || !Files.exists(indexFile(owner))) {
+            return;
+        }
+        try {
+            updateIndex(owner, attachments -> {
+                attachments.replaceAll(attachment -> attachment.belongsTo(oldWebsite, oldUsername)
+                        ? attachment.withEntry(website, username)
+                        : attachment);
+                return attachments;
+            });
+        } catch (IOException e) {
+            LOG.log(Level.ERROR, "Error moving the attachments of {0}: {1}", oldWebsite, e.getMessage());
+        }
+    }
+
+    /**
+     * Delete a user's whole blob area, for example when the user is deleted
+     *
+     * @param owner The user
+     */
+    public static void deleteUser(String owner) {
+        Path directory = DataManager.getUserAttachmentsDir(owner);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        Path index = indexFile(owner);
+        try {
+            VaultLocks.withFileLock(index, file -> {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                    for (Path path : files) {
+                        // The index's version file is held open by this lock, it goes last
+                        if (!path.getFileName().toString().endsWith(".version")) {
+                            Files.deleteIfExists(path);
+                        }
+                    }
+                }
+                VaultLocks.deleteVersion(index);
+                return null;
+            });
+            Files.deleteIfExists(directory);
+            LOG.log(Level.INFO, "Deleted attachments of user: {0}", owner);
+        } catch (IOException e) {
+            LOG.log(Level.ERROR, "Error deleting the attachments of {0}: {1}", owner, e.getMessage());
+        }
+    }
+
+    // Drops the matching rows, then deletes their blobs
+    private static List<Attachment> removeWhere(String owner, Predicate<Attachment> match) {
+        List<Attachment> removed = new ArrayList<>();
+        if (!Files.exists(indexFile(owner))) {
+            return removed;
+        }
+        try {
+            updateIndex(owner, attachments -> {
+                attachments.removeIf(attachment -> match.test(attachment) && removed.add(attachment));
+                return attachments;
+            });
+        } catch (IOException e) {
+            LOG.log(Level.ERROR, "Error removing attachments of {0}: {1}", owner, e.getMessage());
+            return new ArrayList<>();
+        }
+        Path directory = DataManager.getUserAttachmentsDir(owner);
+        for (Attachment attachment : removed) {
+            deleteQuietly(directory.resolve(attachment.getBlobId() + BLOB_SUFFIX));
+        }
+        return removed;
+    }
+
+    // Rewrites the index under its lock
+    private static void updateIndex(String owner, UnaryOperator<List<Attachment>> change) throws IOException {
+        Path index = indexFile(owner);
+        VaultLocks.withFileLock(index, file -> {
+            List<Attachment> attachments = change.apply(readIndex(index));
+            List<String> lines = new ArrayList<>(attachments.size() + 1);
+            lines.add(INDEX_HEADER);
+            for (Attachment attachment : attachments) {
+                lines.add(attachment.getWebsite() + "," + attachment.getUsername() + "," + attachment.getName()
+                        + "," + attachment.getBlobId() + "," + attachment.getSize());
+            }
+            VaultLocks.writeAtomically(index, lines);
+            file.bumpVersion();
+            return null;
+        });
+    }
+
+    private static List<Attachment> readIndex(Path index) throws IOException {
+        List<Attachment> attachments = new ArrayList<>();
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(index, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return attachments;
+        }
+        for (int i = 1; i < lines.size(); i++) {
+            String[] data = lines.get(i).split(",");
+            if (data.length != 5) {
+                LOG.log(Level.WARNING, "Skipping malformed attachment line {0} in {1}", i + 1, index);
+                continue;
+            }
+            try {
+                attachments.add(new Attachment(data[0], data[1], data[2], data[3], Long.parseLong(data[4])));
+            } catch (NumberFormatException e) {
+                LOG.log(Level.WARNING, "Skipping malformed attachment line {0} in {1}", i + 1, index);
+            }
+        }
+        return attachments;
+    }
+
+    private static Path indexFile(String owner) {
+        return DataManager.getUserAttachmentsDir(owner).resolve(INDEX_FILE);
+    }
+
+    // Binds content to its owner and blob, not to the entry, so entries can
+    // be renamed without encrypting their attachments again
+    private static byte[] associatedData(String owner, String blobId) {
+        return EncryptionUtils.associatedData(owner, blobId);
+    }
+
+    // The index is comma separated, so names must not contain commas or line breaks
+    private static String cleanName(String name) {
+        String cleaned = name == null ? "" : name.replaceAll("[,\\r\\n]", "_").trim();
+        return cleaned.isEmpty() ? "attachment" : cleaned;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Could not delete {0}: {1}", path, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,759 @@
+package com.example.utils;
+
+import com.example.logging.Log;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * This file contains the BackupRepository class, an encrypted store of
+ * snapshots of the data directory that keeps every piece of content once.
+ * Files are cut into chunks by ContentChunker. A chunk is named by a keyed
+ * hash of its content, compressed, encrypted with AES-GCM and written only if
+ * no earlier backup wrote it, so a backup costs disk only for content that
+ * changed since. A snapshot is an encrypted list of the files with their
+ * size, modification time and chunks. Files whose size and modification time
+ * match the previous snapshot are not even read: backing up unchanged data
+ * costs a directory walk and one small snapshot file.
+ * The repository key is random and stored wrapped with a passphrase, like a
+ * VaultKey; the chunk key, the hash key and the chunker's seed are derived
+ * from it, so chunk names and sizes reveal nothing without the passphrase.
+ * Layout: config, chunks/<first 2 hex digits>/<name>, snapshots/<time>.snap.
+ * Chunks are "nonce || AES-GCM(flag || content)", where the flag says whether
+ * the content is deflated, and are bound to their name as associated data.
+ * OOP Concept: This class demonstrates ENCAPSULATION by keeping the keys and
+ * the storage layout behind backup, restore and snapshots.
+ */
+public class BackupRepository implements AutoCloseable {
+
+    private static final System.Logger LOG = Log.getLogger(BackupRepository.class);
+
+    private static final String CONFIG_FILE = "config";
+    private static final String CHUNKS_DIR = "chunks";
+    private static final String SNAPSHOTS_DIR = "snapshots";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final String FORMAT = "1";
+    // Bound to the wrapped key in place of a username
+    private static final String KEY_OWNER = "backup-repository";
+    private static final String MANIFEST_TAG = "PMB1";
+    private static final String ALGORITHM = "AES/GCM/NoPadding";
+    private static final int NONCE_BYTES = 12;
+    private static final int TAG_BYTES = 16;
+    private static final byte STORED = 0;
+    private static final byte DEFLATED = 1;
+    private static final DateTimeFormatter SNAPSHOT_NAME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    private final Path root;
+    private final OffHeapKey chunkKey;
+    private final OffHeapKey hashKey;
+    private final ContentChunker chunker;
+
+    /**
+     * Counts of what a backup read and wrote
+     */
+    public static final class BackupResult {
+        private final LongAdder files = new LongAdder();
+        private final LongAdder unchangedFiles = new LongAdder();
+        private final LongAdder chunks = new LongAdder();
+        private final LongAdder newChunks = new LongAdder();
+        private final LongAdder bytesRead = new LongAdder();
+        private final LongAdder bytesStored = new LongAdder();
+        private String snapshot;
+
+        // Returns the name of the snapshot that was written
+        public String getSnapshot() {
+            return snapshot;
+        }
+
+        public long getFiles() {
+            return files.sum();
+        }
+
+        // Returns how many files were taken from the previous snapshot unread
+        public long getUnchangedFiles() {
+            return unchangedFiles.sum();
+        }
+
+        // Returns how many chunks the files that were read were cut into
+        public long getChunks() {
+            return chunks.sum();
+        }
+
+        // Returns how many of those were not in the repository yet
+        public long getNewChunks() {
+            return newChunks.sum();
+        }
+
+        public long getBytesRead() {
+            return bytesRead.sum();
+        }
+
+        // Returns the bytes added to the repository, chunks and snapshot
+        public long getBytesStored() {
+            return bytesStored.sum();
+        }
+    }
+
+    /**
+     * What a restore wrote, and what it could not
+     */
+    public static final class RestoreResult {
+        private final LongAdder files = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final List<String> failed = Collections.synchronizedList(new ArrayList<>());
+
+        public long getFiles() {
+            return files.sum();
+        }
+
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        // Returns the paths that could not be restored, empty if all were
+        public List<String> getFailed() {
+            return failed;
+        }
+    }
+
+    // One file of a snapshot; chunks is the comma separated list of chunk names
+    private static final class FileRecord {
+        private final String path;
+        private final long size;
+        private final long modified;
+        private final String chunks;
+
+        private FileRecord(String path, long size, long modified, String chunks) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.chunks = chunks;
+        }
+    }
+
+    // A snapshot's start time and files, in path order
+    private static final class Manifest {
+        private final long started;
+        private final List<FileRecord> files;
+
+        private Manifest(long started, List<FileRecord> files) {
+            this.started = started;
+            this.files = files;
+        }
+    }
+
+    private BackupRepository(Path root, OffHeapKey chunkKey, OffHeapKey hashKey, ContentChunker chunker) {
+        this.root = root;
+        this.chunkKey = chunkKey;
+        this.hashKey = hashKey;
+        this.chunker = chunker;
+    }
+
+    /**
+     * Open a backup repository, or create it
+     *
+     * @param root       The repository directory
+     * @param passphrase The repository's passphrase
+     * @param create     Whether to create the repository if it does not exist
+     * @return The repository, or null if the passphrase is wrong
+     * @throws IOException if the directory is not a repository or cannot be read
+     */
+    public static BackupRepository open(Path root, Secret passphrase, boolean create) throws IOException {
+        Path config = root.resolve(CONFIG_FILE);
+        VaultKey key;
+        if (Files.exists(config)) {
+            Properties properties = new Properties();
+            try (BufferedReader reader = Files.newBufferedReader(config, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+            if (!FORMAT.equals(properties.getProperty("format"))) {
+                throw new IOException("Unsupported backup repository format in " + config);
+            }
+            key = VaultKey.unwrap(properties.getProperty("key"), passphrase, KEY_OWNER);
+            if (key == null) {
+                return null;
+            }
+        } else if (create) {
+            key = VaultKey.generate();
+            String wrapped = key.wrap(passphrase, KEY_OWNER);
+            if (wrapped == null) {
+                key.destroy();
+                throw new IOException("Could not protect the repository key");
+            }
+            Files.createDirectories(root.resolve(CHUNKS_DIR));
+            Files.createDirectories(root.resolve(SNAPSHOTS_DIR));
+            VaultLocks.writeAtomically(config, List.of("# Backup repository, do not edit", "format=" + FORMAT,
+                    "key=" + wrapped));
+            LOG.log(Level.INFO, "Created backup repository in {0}", root);
+        } else {
+            throw new IOException("Not a backup repository: " + root);
+        }
+
+        // Only the derived keys are kept
+        OffHeapKey chunkKey = null;
+        try {
+            chunkKey = OffHeapKey.take(derive(key, "pm-backup-chunk"), "AES");
+            OffHeapKey hashKey = OffHeapKey.take(derive(key, "pm-backup-hash"), "HmacSHA256");
+            byte[] seed = derive(key, "pm-backup-chunker");
+            ContentChunker chunker = new ContentChunker(ByteBuffer.wrap(seed).getLong());
+            Arrays.fill(seed, (byte) 0);
+            return new BackupRepository(root, chunkKey, hashKey, chunker);
+        } catch (GeneralSecurityException e) {
+            if (chunkKey != null) {
+                chunkKey.destroy();
+            }
+            throw new IOException("Could not derive the backup keys: " + e.getMessage(), e);
+        } finally {
+            key.destroy();
+        }
+    }
+
+    /**
+     * List the snapshots, oldest first
+     *
+     * @return The snapshot names
+     * @throws IOException if the snapshot directory cannot be read
+     */
+    public List<String> snapshots() throws IOException {
+        List<String> names = new ArrayList<>();
+        try (Stream<Path> files = Files.list(root.resolve(SNAPSHOTS_DIR))) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(SNAPSHOT_SUFFIX))
+                    .forEach(name -> names.add(name.substring(0, name.length() - SNAPSHOT_SUFFIX.length())));
+        }
+        names.sort(BackupRepository::compareSnapshots);
+        return names;
+    }
+
+    /**
+     * Get the newest snapshot
+     *
+     * @return Its name, or null if there are no snapshots yet
+     * @throws IOException if the snapshot directory cannot be read
+     */
+    public String latestSnapshot() throws IOException {
+        List<String> names = snapshots();
+        return names.isEmpty() ? null : names.get(names.size() - 1);
+    }
+
+    /**
+     * Back up every file under a directory into a new snapshot. Files that
+     * have not changed since the latest snapshot are not read, and chunks
+     * already in the repository are not written again.
+     *
+     * @param dataDir The directory to back up
+     * @param threads How many files to read at once
+     * @return What was read and written
+     * @throws IOException if a file cannot be read or the repository written;
+     *                     no snapshot is written then
+     */
+    public BackupResult backup(Path dataDir, int threads) throws IOException {
+        long started = nanos(Instant.now());
+        String previousName = latestSnapshot();
+        Manifest previous = previousName != null ? readManifest(previousName) : new Manifest(0, List.of());
+        Map<String, FileRecord> previousFiles = new HashMap<>();
+        for (FileRecord record : previous.files) {
+            previousFiles.put(record.path, record);
+        }
+
+        BackupResult result = new BackupResult();
+        List<FileRecord> records = new ArrayList<>();
+        try (ExecutorService pool = Executors.newFixedThreadPool(threads)) {
+            List<Future<FileRecord>> tasks = new ArrayList<>();
+            for (Path file : listFiles(dataDir)) {
+                tasks.add(pool.submit(() -> backUpFile(dataDir, file, previousFiles.get(relative(dataDir, file)),
+                        previous.started, result)));
+            }
+            for (Future<FileRecord> task : tasks) {
+                FileRecord record = await(task);
+                if (record != null) {
+                    records.add(record);
+                }
+            }
+        }
+
+        result.snapshot = writeManifest(started, records, result);
+        LOG.log(Level.INFO, "Wrote snapshot {0}: {1} files, {2} new chunks", result.snapshot, records.size(),
+                result.getNewChunks());
+        return result;
+    }
+
+    /**
+     * Restore a snapshot into a directory. Files are rebuilt one chunk at a
+     * time, each checked against its name, and only appear once complete.
+     *
+     * @param snapshot The snapshot's name
+     * @param target   The directory to write into
+     * @param threads  How many files to write at once
+     * @return What was restored, and which files could not be
+     * @throws IOException if the snapshot itself cannot be read
+     */
+    public RestoreResult restore(String snapshot, Path target, int threads) throws IOException {
+        Manifest manifest = readManifest(snapshot);
+        Path base = target.toAbsolutePath().normalize();
+        RestoreResult result = new RestoreResult();
+        try (ExecutorService pool = Executors.newFixedThreadPool(threads)) {
+            List<Future<FileRecord>> tasks = new ArrayList<>();
+            for (FileRecord record : manifest.files) {
+                tasks.add(pool.submit(() -> {
+                    try {
+                        restoreFile(record, base, result);
+                    } catch (IOException e) {
+                        LOG.log(Level.ERROR, "Could not restore {0}: {1}", record.path, e.getMessage());
+                        result.failed.add(record.path);
+                    }
+                    return record;
+                }));
+            }
+            for (Future<FileRecord> task : tasks) {
+                await(task);
+            }
+        }
+        return result;
+    }
+
+    // Forgets the derived keys
+    @Override
+    public void close() {
+        chunkKey.destroy();
+        hashKey.destroy();
+    }
+
+    private FileRecord backUpFile(Path dataDir, Path file, FileRecord last, long lastStarted, BackupResult result)
+            throws IOException {
+        String path = relative(dataDir, file);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null; // Deleted since the walk
+        }
+        long modified = nanos(attributes.lastModifiedTime().toInstant());
+        // A file written in the same clock tick as the last backup started could
+        // have changed after it was read without its time changing
+        if (last != null && last.size == attributes.size() && last.modified == modified && modified < lastStarted) {
+            result.files.increment();
+            result.unchangedFiles.increment();
+            return last;
+        }
+
+        // Vault files are replaced by renaming, so an open stream sees one version
+        ChunkCodec codec = new ChunkCodec();
+        StringBuilder chunks = new StringBuilder();
+        long[] size = {0};
+        try (InputStream in = Files.newInputStream(file)) {
+            chunker.split(in, (data, offset, length) -> {
+                if (!chunks.isEmpty()) {
+                    chunks.append(',');
+                }
+                chunks.append(codec.store(data, offset, length, result));
+                size[0] += length;
+            });
+        } catch (NoSuchFileException e) {
+            return null;
+        } finally {
+            codec.close();
+        }
+        result.files.increment();
+        result.bytesRead.add(size[0]);
+        return new FileRecord(path, size[0], modified, chunks.toString());
+    }
+
+    private void restoreFile(FileRecord record, Path base, RestoreResult result) throws IOException {
+        Path file = base.resolve(record.path).normalize();
+        if (!file.startsWith(base) || file.equals(base)) {
+            throw new IOException("Path leaves the target directory");
+        }
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        ChunkCodec codec = new ChunkCodec();
+        byte[] plain = new byte[ContentChunker.MAX_BYTES];
+        long written = 0;
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                if (!record.chunks.isEmpty()) {
+                    for (String name : record.chunks.split(",")) {
+                        int length = codec.load(name, plain);
+                        out.write(plain, 0, length);
+                        written += length;
+                    }
+                }
+            }
+            if (written != record.size) {
+                throw new IOException("Restored " + written + " bytes, expected " + record.size);
+            }
+            Files.setLastModifiedTime(temp, FileTime.from(record.modified, TimeUnit.NANOSECONDS));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            result.files.increment();
+            result.bytes.add(written);
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+            codec.close();
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Hashes, packs and seals chunks; one per task, as ciphers are not thread safe
+    private final class ChunkCodec {
+        private final Mac mac;
+        private final Cipher cipher;
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        private final Inflater inflater = new Inflater(true);
+        private final byte[] packed = new byte[ContentChunker.MAX_BYTES + 1];
+
+        private ChunkCodec() throws IOException {
+            try {
+                mac = Mac.getInstance("HmacSHA256");
+                mac.init(hashKey);
+                cipher = Cipher.getInstance(ALGORITHM);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Could not set up backup encryption: " + e.getMessage(), e);
+            }
+        }
+
+        // Writes the chunk unless the repository has it, and returns its name
+        private String store(byte[] data, int offset, int length, BackupResult result) throws IOException {
+            mac.update(data, offset, length);
+            byte[] id = mac.doFinal();
+            String name = HexFormat.of().formatHex(id);
+            result.chunks.increment();
+            Path chunk = chunkPath(name);
+            if (Files.exists(chunk)) {
+                return name;
+            }
+            int packedLength = pack(data, offset, length);
+            byte[] sealed = seal(cipher, packed, packedLength, id);
+            Arrays.fill(packed, 0, packedLength, (byte) 0);
+            Files.createDirectories(chunk.getParent());
+            writeDurably(chunk, sealed, true);
+            result.newChunks.increment();
+            result.bytesStored.add(sealed.length);
+            return name;
+        }
+
+        // Reads a chunk into plain and returns its length
+        private int load(String name, byte[] plain) throws IOException {
+            byte[] id;
+            try {
+                id = HexFormat.of().parseHex(name);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Bad chunk name: " + name);
+            }
+            int packedLength = unseal(cipher, Files.readAllBytes(chunkPath(name)), id, packed);
+            int length;
+            if (packed[0] == STORED) {
+                length = packedLength - 1;
+                System.arraycopy(packed, 1, plain, 0, length);
+            } else {
+                inflater.reset();
+                inflater.setInput(packed, 1, packedLength - 1);
+                try {
+                    length = inflater.inflate(plain);
+                } catch (DataFormatException e) {
+                    throw new IOException("Chunk " + name + " is damaged", e);
+                }
+                if (!inflater.finished()) {
+                    throw new IOException("Chunk " + name + " is damaged");
+                }
+            }
+            Arrays.fill(packed, 0, packedLength, (byte) 0);
+            // The chunk must be the content its name was made from
+            mac.update(plain, 0, length);
+            if (!MessageDigest.isEqual(mac.doFinal(), id)) {
+                throw new IOException("Chunk " + name + " does not match its name");
+            }
+            return length;
+        }
+
+        // Flag byte, then the content deflated, or as is if that is not smaller
+        private int pack(byte[] data, int offset, int length) {
+            deflater.reset();
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+            int packedLength = 1;
+            while (!deflater.finished() && packedLength < length) {
+                int written = deflater.deflate(packed, packedLength, length - packedLength);
+                if (written == 0) {
+                    break;
+                }
+                packedLength += written;
+            }
+            if (deflater.finished() && packedLength < length) {
+                packed[0] = DEFLATED;
+                return packedLength;
+            }
+            packed[0] = STORED;
+            System.arraycopy(data, offset, packed, 1, length);
+            return length + 1;
+        }
+
+        private void close() {
+            deflater.end();
+            inflater.end();
+        }
+    }
+
+    // Encrypts as "nonce || ciphertext || tag"
+    private byte[] seal(Cipher cipher, byte[] content, int length, byte[] associatedData) throws IOException {
+        byte[] nonce = new byte[NONCE_BYTES];
+        SecureRandoms.nextIv(nonce);
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, chunkKey, new GCMParameterSpec(TAG_BYTES * 8, nonce));
+            cipher.updateAAD(associatedData);
+            byte[] sealed = new byte[NONCE_BYTES + length + TAG_BYTES];
+            System.arraycopy(nonce, 0, sealed, 0, NONCE_BYTES);
+            cipher.doFinal(content, 0, length, sealed, NONCE_BYTES);
+            return sealed;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not encrypt backup data: " + e.getMessage(), e);
+        }
+    }
+
+    // Decrypts into content and returns its length
+    private int unseal(Cipher cipher, byte[] sealed, byte[] associatedData, byte[] content) throws IOException {
+        if (sealed.length < NONCE_BYTES + TAG_BYTES || sealed.length - NONCE_BYTES - TAG_BYTES > content.length) {
+            throw new IOException("Backup data is damaged");
+        }
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, chunkKey, new GCMParameterSpec(TAG_BYTES * 8, sealed, 0, NONCE_BYTES));
+            cipher.updateAAD(associatedData);
+            return cipher.doFinal(sealed, NONCE_BYTES, sealed.length - NONCE_BYTES, content, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Backup data is damaged or was not written with this passphrase", e);
+        }
+    }
+
+    // "PMB1", "started=<ns>", then "path\tsize\tmodified\tchunk,chunk,..." per file
+    private String writeManifest(long started, List<FileRecord> records, BackupResult result) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(new DeflaterOutputStream(compressed), StandardCharsets.UTF_8)) {
+            writer.write(MANIFEST_TAG + "\n");
+            writer.write("started=" + started + "\n");
+            for (FileRecord record : records) {
+                writer.write(record.path + "\t" + record.size + "\t" + record.modified + "\t" + record.chunks + "\n");
+            }
+        }
+        byte[] content = compressed.toByteArray();
+
+        Cipher cipher;
+        try {
+            cipher = Cipher.getInstance(ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not set up backup encryption: " + e.getMessage(), e);
+        }
+        String base = SNAPSHOT_NAME.format(Instant.ofEpochSecond(0, started));
+        for (int attempt = 1; ; attempt++) {
+            String name = attempt == 1 ? base : base + "-" + attempt;
+            Path file = snapshotPath(name);
+            if (Files.exists(file)) {
+                continue;
+            }
+            byte[] sealed = seal(cipher, content, content.length, snapshotData(name));
+            try {
+                writeDurably(file, sealed, false);
+            } catch (FileAlreadyExistsException e) {
+                continue; // Another backup took the name meanwhile
+            }
+            result.bytesStored.add(sealed.length);
+            return name;
+        }
+    }
+
+    private Manifest readManifest(String name) throws IOException {
+        byte[] sealed;
+        try {
+            sealed = Files.readAllBytes(snapshotPath(name));
+        } catch (NoSuchFileException e) {
+            throw new IOException("No such snapshot: " + name);
+        }
+        Cipher cipher;
+        try {
+            cipher = Cipher.getInstance(ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not set up backup encryption: " + e.getMessage(), e);
+        }
+        byte[] content = new byte[sealed.length];
+        int length = unseal(cipher, sealed, snapshotData(name), content);
+
+        List<FileRecord> files = new ArrayList<>();
+        long started;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new InflaterInputStream(new ByteArrayInputStream(content, 0, length)), StandardCharsets.UTF_8))) {
+            String startedLine = MANIFEST_TAG.equals(reader.readLine()) ? reader.readLine() : null;
+            if (startedLine == null || !startedLine.startsWith("started=")) {
+                throw new IOException("Snapshot " + name + " is not in a known format");
+            }
+            started = Long.parseLong(startedLine.substring("started=".length()));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", -1);
+                if (parts.length != 4) {
+                    throw new IOException("Snapshot " + name + " is damaged");
+                }
+                files.add(new FileRecord(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3]));
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Snapshot " + name + " is damaged", e);
+        }
+        return new Manifest(started, files);
+    }
+
+    // Every regular file below dataDir, in path order, except lock and temporary files
+    private List<Path> listFiles(Path dataDir) throws IOException {
+        if (!Files.isDirectory(dataDir)) {
+            throw new NoSuchFileException(dataDir.toString());
+        }
+        Path repository = root.toAbsolutePath().normalize();
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(dataDir)) {
+            walk.filter(Files::isRegularFile).sorted().forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".version") || name.endsWith(".tmp")
+                        || file.toAbsolutePath().normalize().startsWith(repository)) {
+                    return;
+                }
+                if (relative(dataDir, file).matches(".*[\\t\\r\\n].*")) {
+                    LOG.log(Level.WARNING, "Skipping {0}, its name cannot be recorded", file);
+                    return;
+                }
+                files.add(file);
+            });
+        }
+        return files;
+    }
+
+    // Writes a new file in full, forces it to disk, then moves it into place
+    private static void writeDurably(Path target, byte[] bytes, boolean replace) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            if (replace) {
+                // Another backup may store the same chunk; either copy will do
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                Files.move(temp, target);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static <T> T await(Future<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    private static byte[] derive(VaultKey key, String info) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(key.secretKey());
+        return mac.doFinal(info.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private Path chunkPath(String name) {
+        return root.resolve(CHUNKS_DIR).resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    private Path snapshotPath(String name) {
+        return root.resolve(SNAPSHOTS_DIR).resolve(name + SNAPSHOT_SUFFIX);
+    }
+
+    // Binds a snapshot to its name, so snapshots cannot be swapped
+    private static byte[] snapshotData(String name) {
+        return ("snapshot:" + name).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Names are UTC times, so they sort by age; a "-2" suffix marks the second
+    // snapshot of the same second and must not sort before "-10"
+    private static int compareSnapshots(String first, String second) {
+        int firstDash = first.indexOf('-');
+        int secondDash = second.indexOf('-');
+        String firstTime = firstDash < 0 ? first : first.substring(0, firstDash);
+        String secondTime = secondDash < 0 ? second : second.substring(0, secondDash);
+        int byTime = firstTime.compareTo(secondTime);
+        if (byTime != 0) {
+            return byTime;
+        }
+        return Integer.compare(attempt(first, firstDash), attempt(second, secondDash));
+    }
+
+    private static int attempt(String name, int dash) {
+        try {
+            return dash < 0 ? 1 : Integer.parseInt(name.substring(dash + 1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // Paths are recorded with forward slashes whatever the platform
+    private static String relative(Path dataDir, Path file) {
+        return dataDir.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+    }
+
+    private static long nanos(Instant instant) {
+        return TimeUnit.SECONDS.toNanos(instant.getEpochSecond()) + instant.getNano();
+    }
+}
@@ -1,16 +1,24 @@
 package com.example.utils;
 
-import com.example.controllers.UserController.PasswordEntry;
-import javafx.collections.ObservableList;
+import com.example.logging.Log;
+import com.example.metrics.FlightRecording;
+import com.example.metrics.Metrics;
+import com.example.metrics.Timer;
+import com.example.metrics.VaultIoEvent;
+import com.example.models.PasswordEntry;
 
 import java.io.*;
+import java.lang.System.Logger.Level;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
 
 /**
  * This file contains the CSVHandler utility class for loading and saving
@@ -21,8 +29,14 @@ import java.util.List;
 
 public class CSVHandler {
 
+    private static final System.Logger LOG = Log.getLogger(CSVHandler.class);
+
     private static final String CSV_HEADER = "Website/App Name,Username/Email,Password";
     private static final String CSV_FILE_PATH = "/sample-passwords.csv";
+    private static final int MAX_READ_ATTEMPTS = 3;
+    private static final int MAX_UPDATE_ATTEMPTS = 5;
+    private static final Timer VAULT_LOAD_TIMER = Metrics.timer(Metrics.VAULT_LOAD);
+    private static final Timer VAULT_SAVE_TIMER = Metrics.timer(Metrics.VAULT_SAVE);
 
     /**
      * Load password entries from CSV file
@@ -60,12 +74,12 @@ public class CSVHandler {
                     }
                 }
                 reader.close();
-                System.out.println("Loaded " + passwords.size() + " password entries from CSV");
+                LOG.log(Level.INFO, "Loaded {0} password entries from CSV", passwords.size());
             } else {
-                System.err.println("Could not find CSV file: " + CSV_FILE_PATH);
+                LOG.log(Level.ERROR, "Could not find CSV file: {0}", CSV_FILE_PATH);
             }
         } catch (IOException e) {
-            System.err.println("Error loading passwords from CSV: " + e.getMessage());
+            LOG.log(Level.ERROR, "Error loading passwords from CSV: {0}", e.getMessage());
         }
 
         return passwords;
@@ -78,7 +92,7 @@ public class CSVHandler {
      * 
      * @param passwords List of PasswordEntry objects to save
      */
-    public static void savePasswordsToCSV(ObservableList<PasswordEntry> passwords) {
+    public static void savePasswordsToCSV(List<PasswordEntry> passwords) {
         try {
             // Get the path to the resources directory
             URL resourceUrl = CSVHandler.class.getResource(CSV_FILE_PATH);
@@ -96,13 +110,13 @@ public class CSVHandler {
                                 entry.getUsername(),
                                 entry.getPassword());
                     }
-                    System.out.println("Saved " + passwords.size() + " password entries to CSV");
+                    LOG.log(Level.INFO, "Saved {0} password entries to CSV", passwords.size());
                 }
             } else {
-                System.err.println("Could not find CSV file path for saving");
+                LOG.log(Level.ERROR, "Could not find CSV file path for saving");
             }
         } catch (IOException | URISyntaxException e) {
-            System.err.println("Error saving passwords to CSV: " + e.getMessage());
+            LOG.log(Level.ERROR, "Error saving passwords to CSV: {0}", e.getMessage());
         }
     }
 
@@ -153,11 +167,17 @@ public class CSVHandler {
                 return !hasData;
             }
         } catch (IOException e) {
-            System.err.println("Error checking if CSV is empty: " + e.getMessage());
+            LOG.log(Level.ERROR, "Error checking if CSV is empty: {0}", e.getMessage());
         }
         return true; // Consider empty if there's an error
     }
 
+    /**
+     * A vault's entries together with the version they were read at
+     */
+    public record VaultSnapshot(List<PasswordEntry> entries, long version) {
+    }
+
     /**
      * Load password entries from user-specific CSV file
      * 
@@ -165,12 +185,70 @@ public class CSVHandler {
      * @return List of PasswordEntry objects
      */
     public static List<PasswordEntry> loadUserPasswordsFromCSV(String username) {
+        return loadUserVault(username, null).entries();
+    }
+
+    /**
+     * Load a user's vault together with its version for a later
+     * compare-and-swap save
+     * 
+     * @param username The username to load passwords for
+     * @param key      The user's unlocked vault key, given to every entry;
+     *                 null to load without it (entries under the user's key
+     *                 then cannot be decrypted)
+     * @return The entries and the version they belong to
+     */
+    public static VaultSnapshot loadUserVault(String username, VaultKey key) {
+        Path userPasswordFile = DataManager.getUserPasswordFilePath(username);
+
+        // Writers replace the file before bumping the version, so a stable
+        // version around the read means the content is at least that new
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            long version = VaultLocks.readVersion(userPasswordFile);
+            List<PasswordEntry> passwords = readUserPasswords(username, userPasswordFile, key);
+            if (passwords != null && VaultLocks.readVersion(userPasswordFile) == version) {
+                return new VaultSnapshot(passwords, version);
+            }
+        }
+
+        // Writers keep changing the file, read it under the lock instead
+        try {
+            return VaultLocks.withFileLock(userPasswordFile, file -> {
+                List<PasswordEntry> passwords = readUserPasswords(username, userPasswordFile, key);
+                return new VaultSnapshot(passwords != null ? passwords : new ArrayList<>(), file.getVersion());
+            });
+        } catch (IOException e) {
+            LOG.log(Level.ERROR, "Error loading passwords for user {0}: {1}", username, e.getMessage());
+            return new VaultSnapshot(new ArrayList<>(), -1);
+        }
+    }
+
+    /**
+     * Get the current version of a user's vault without loading it
+     * 
+     * @param username The username
+     * @return The version counter, 0 for a vault that was never saved
+     */
+    public static long getUserVaultVersion(String username) {
+        return VaultLocks.readVersion(DataManager.getUserPasswordFilePath(username));
+    }
+
+    // Parses a user's password file, returns null if it could not be read
+    private static List<PasswordEntry> readUserPasswords(String username, Path userPasswordFile, VaultKey key) {
         List<PasswordEntry> passwords = new ArrayList<>();
 
+        long start = VAULT_LOAD_TIMER.start();
+        VaultIoEvent event = FlightRecording.isEnabled() ? new VaultIoEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
         try {
-            Path userPasswordFile = DataManager.getUserPasswordFilePath(username);
             if (Files.exists(userPasswordFile)) {
                 List<String> lines = Files.readAllLines(userPasswordFile);
+                StringPool pool = new StringPool();
+                // Rows still holding plain text (legacy data), encrypted in one batch below
+                List<Integer> legacyIndexes = new ArrayList<>();
+                List<Secret> legacyPasswords = new ArrayList<>();
                 boolean firstLine = true;
 
                 for (String line : lines) {
@@ -186,59 +264,287 @@ public class CSVHandler {
 
                     String[] data = line.split(",");
                     if (data.length >= 3 && !data[0].trim().isEmpty()) {
-                        PasswordEntry entry = new PasswordEntry(
-                                data[0].trim(),
-                                data[1].trim(),
-                                data[2].trim());
+                        // Websites and usernames repeat a lot, keep one copy of each
+                        String website = pool.intern(data[0].trim());
+                        String account = pool.intern(data[1].trim());
+                        String storedPassword = data[2].trim();
 
-                        // Handle encryption status during loading
-                        if (EncryptionUtils.isEncrypted(data[2].trim())) {
-                            // Already encrypted, set directly
-                            entry.setEncryptedPassword(data[2].trim());
+                        // Encrypted passwords are kept as-is, legacy plain text is encrypted
+                        byte[] encrypted = EncryptionUtils.decodeStored(storedPassword);
+                        if (encrypted == null) {
+                            legacyIndexes.add(passwords.size());
+                            legacyPasswords.add(Secret.copyOf(storedPassword));
                         }
-                        passwords.add(entry);
+                        passwords.add(PasswordEntry.fromEncrypted(website, account, encrypted, key));
                     }
                 }
-                System.out.println("Loaded " + passwords.size() + " password entries for user: " + username);
+                if (!legacyPasswords.isEmpty()) {
+                    encryptLegacyPasswords(username, key, passwords, legacyIndexes, legacyPasswords);
+                }
+                LOG.log(Level.INFO, "Loaded {0} password entries for user: {1}", passwords.size(), username);
             } else {
-                System.out.println("No password file found for user: " + username + ". Creating empty file.");
+                LOG.log(Level.INFO, "No password file found for user: {0}. Creating empty file.", username);
                 DataManager.createUserPasswordFile(username);
             }
         } catch (IOException e) {
-            System.err.println("Error loading passwords for user " + username + ": " + e.getMessage());
+            LOG.log(Level.ERROR, "Error loading passwords for user {0}: {1}", username, e.getMessage());
+            return null;
+        } finally {
+            VAULT_LOAD_TIMER.stop(start);
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    commitVaultEvent(event, "load", username, passwords.size(), fileSize(userPasswordFile));
+                }
+            }
         }
 
         return passwords;
     }
 
+    // Encrypts the plain text passwords of an old vault file in one batch.
+    // Keeping plain text in memory is not an option, so a failure fails the load
+    // like an unreadable file.
+    private static void encryptLegacyPasswords(String username, VaultKey key, List<PasswordEntry> passwords,
+            List<Integer> indexes, List<Secret> plaintexts) throws IOException {
+        List<byte[]> associatedData = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            associatedData.add(passwords.get(index).getAssociatedData());
+        }
+        byte[][] encrypted = new byte[plaintexts.size()][];
+        Secret[] secrets = plaintexts.toArray(new Secret[0]);
+        EncryptionUtils.BatchResult result;
+        try {
+            result = EncryptionUtils.encryptAll(secrets, associatedData, key, encrypted, true);
+        } finally {
+            wipeAll(secrets);
+        }
+        for (int i = 0; i < encrypted.length; i++) {
+            if (!result.succeeded(i)) {
+                throw new IOException("Could not encrypt legacy password " + (i + 1) + " of "
+                        + username + ": " + result.getError(i));
+            }
+            passwords.get(indexes.get(i)).setEncryptedBytes(encrypted[i]);
+        }
+        LOG.log(Level.INFO, "Encrypted {0} legacy plain text passwords for user: {1}", encrypted.length, username);
+    }
+
+    // Encrypts passwords written in an older format (CBC, or under the master
+    // key) again in the current one before they are saved, one batch per key.
+    // Entries that cannot be decrypted are written unchanged rather than
+    // losing them.
+    private static void upgradePasswords(String username, List<PasswordEntry> passwords) {
+        // Normally all entries share the session's key, so this is one batch
+        Map<VaultKey, List<PasswordEntry>> outdatedByKey = new IdentityHashMap<>();
+        for (PasswordEntry entry : passwords) {
+            if (entry.needsUpgrade()) {
+                outdatedByKey.computeIfAbsent(entry.getVaultKey(), key -> new ArrayList<>()).add(entry);
+            }
+        }
+        outdatedByKey.forEach((key, outdated) -> upgradePasswords(username, key, outdated));
+    }
+
+    private static void upgradePasswords(String username, VaultKey key, List<PasswordEntry> outdated) {
+        List<byte[]> ciphertexts = new ArrayList<>(outdated.size());
+        List<byte[]> associatedData = new ArrayList<>(outdated.size());
+        for (PasswordEntry entry : outdated) {
+            ciphertexts.add(entry.getEncryptedBytes());
+            associatedData.add(entry.getAssociatedData());
+        }
+        Secret[] plaintexts = new Secret[outdated.size()];
+        byte[][] upgraded = new byte[outdated.size()][];
+        EncryptionUtils.BatchResult result;
+        try {
+            EncryptionUtils.decryptAll(ciphertexts, associatedData, key, plaintexts, true);
+            result = EncryptionUtils.encryptAll(plaintexts, associatedData, key, upgraded, true);
+        } finally {
+            wipeAll(plaintexts);
+        }
+
+        int count = 0;
+        for (int i = 0; i < upgraded.length; i++) {
+            if (result.succeeded(i)) {
+                outdated.get(i).setEncryptedBytes(upgraded[i]);
+                count++;
+            }
+        }
+        LOG.log(Level.INFO, "Upgraded {0} of {1} passwords to the current format for user: {2}", count,
+                outdated.size(), username);
+    }
+
+    // Wipes the plaintexts of a batch; null items are those that failed
+    private static void wipeAll(Secret[] secrets) {
+        for (Secret secret : secrets) {
+            if (secret != null) {
+                secret.close();
+            }
+        }
+    }
+
+    // Fills in the fields of a vault I/O event; only called when it is recorded
+    private static void commitVaultEvent(VaultIoEvent event, String operation, String username, int entries,
+            long bytes) {
+        event.operation = operation;
+        event.userHash = FlightRecording.hashUsername(username);
+        event.entryCount = entries;
+        event.bytes = bytes;
+        event.commit();
+    }
+
+    private static long fileSize(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
     /**
-     * Save password entries to user-specific CSV file
+     * Save password entries to user-specific CSV file, overwriting whatever
+     * is stored
      * 
      * @param username  The username to save passwords for
      * @param passwords List of PasswordEntry objects to save
+     * @return The vault's new version, or -1 if it could not be written
+     */
+    public static long saveUserPasswordsToCSV(String username, List<PasswordEntry> passwords) {
+        Path userPasswordFile = DataManager.getUserPasswordFilePath(username);
+        try {
+            long version = VaultLocks.withFileLock(userPasswordFile, file -> {
+                writeUserPasswords(username, userPasswordFile, passwords);
+                return file.bumpVersion();
+            });
+            LOG.log(Level.INFO, "Saved {0} password entries for user: {1}", passwords.size(), username);
+            return version;
+        } catch (IOException e) {
+            LOG.log(Level.ERROR, "Error saving passwords for user {0}: {1}", username, e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Save password entries only if the vault is still at the expected
+     * version (compare-and-swap)
+     * 
+     * @param username        The username to save passwords for
+     * @param expectedVersion The version the entries were based on
+     * @param passwords       The entries to save
+     * @return The new version, or -1 if the vault was changed by someone else
+     *         or could not be written
+     */
+    public static long saveUserPasswordsIfVersion(String username, long expectedVersion,
+            List<PasswordEntry> passwords) {
+        Path userPasswordFile = DataManager.getUserPasswordFilePath(username);
+        try {
+            return VaultLocks.withFileLock(userPasswordFile, file -> {
+                if (file.getVersion() != expectedVersion) {
+                    return -1L;
+                }
+                writeUserPasswords(username, userPasswordFile, passwords);
+                long version = file.bumpVersion();
+                LOG.log(Level.INFO, "Saved {0} password entries for user: {1}", passwords.size(), username);
+                return version;
+            });
+        } catch (IOException e) {
+            LOG.log(Level.ERROR, "Error saving passwords for user {0}: {1}", username, e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Apply a change to a user's vault without losing concurrent updates.
+     * The change is applied to the given snapshot and saved with a
+     * compare-and-swap; if another writer got there first, the latest vault
+     * is reloaded and the change is applied to it again.
+     * 
+     * @param username The username whose vault to change
+     * @param key      The user's unlocked vault key for entries loaded on a
+     *                 retry, or null
+     * @param base     The snapshot the caller already has, or null to load it
+     * @param change   Changes a copy of the entries and returns the new list;
+     *                 it may run more than once
+     * @return The saved vault, or null if it could not be written
      */
-    public static void saveUserPasswordsToCSV(String username, ObservableList<PasswordEntry> passwords) {
+    public static VaultSnapshot updateUserPasswords(String username, VaultKey key, VaultSnapshot base,
+            UnaryOperator<List<PasswordEntry>> change) {
+        VaultSnapshot snapshot = base != null ? base : loadUserVault(username, key);
+
+        for (int attempt = 0; attempt < MAX_UPDATE_ATTEMPTS; attempt++) {
+            List<PasswordEntry> updated = change.apply(new ArrayList<>(snapshot.entries()));
+            long version = saveUserPasswordsIfVersion(username, snapshot.version(), updated);
+            if (version >= 0) {
+                return new VaultSnapshot(updated, version);
+            }
+            LOG.log(Level.INFO, "Vault of {0} was changed concurrently, merging and retrying", username);
+            snapshot = loadUserVault(username, key);
+        }
+
+        // Heavy contention, apply the change while holding the lock
+        Path userPasswordFile = DataManager.getUserPasswordFilePath(username);
         try {
-            Path userPasswordFile = DataManager.getUserPasswordFilePath(username);
+            return VaultLocks.withFileLock(userPasswordFile, file -> {
+                List<PasswordEntry> current = readUserPasswords(username, userPasswordFile, key);
+                List<PasswordEntry> updated = change.apply(current != null ? current : new ArrayList<>());
+                writeUserPasswords(username, userPasswordFile, updated);
+                return new VaultSnapshot(updated, file.bumpVersion());
+            });
+        } catch (IOException e) {
+            LOG.log(Level.ERROR, "Error saving passwords for user {0}: {1}", username, e.getMessage());
+            return null;
+        }
+    }
 
-            // Ensure parent directories exist
-            Files.createDirectories(userPasswordFile.getParent());
+    /**
+     * Check that a website and username can be written to a vault file.
+     * Rows are unquoted CSV, so a comma or line break would split the row
+     * and detach the password from the names its encryption is bound to.
+     *
+     * @param website  The website
+     * @param username The username
+     * @return true if neither contains a comma, CR or LF
+     */
+    public static boolean isStorable(String website, String username) {
+        return isStorableField(website) && isStorableField(username);
+    }
 
-            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(userPasswordFile))) {
-                // Write header
-                writer.println(CSV_HEADER);
+    private static boolean isStorableField(String value) {
+        return value != null && value.indexOf(',') < 0 && value.indexOf('\r') < 0 && value.indexOf('\n') < 0;
+    }
 
-                // Write data
-                for (PasswordEntry entry : passwords) {
-                    writer.printf("%s,%s,%s%n",
-                            entry.getWebsite(),
-                            entry.getUsername(),
-                            entry.getPassword());
+    // Writes a user's password file; the caller must hold the vault lock
+    private static void writeUserPasswords(String username, Path userPasswordFile,
+            List<PasswordEntry> passwords) throws IOException {
+        long start = VAULT_SAVE_TIMER.start();
+        VaultIoEvent event = FlightRecording.isEnabled() ? new VaultIoEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        List<String> lines = new ArrayList<>(passwords.size() + 1);
+        try {
+            for (PasswordEntry entry : passwords) {
+                if (!isStorable(entry.getWebsite(), entry.getUsername())) {
+                    // Refuse the whole save rather than write a row that cannot be read back
+                    throw new IOException("Website and username must not contain commas or line breaks");
+                }
+            }
+            upgradePasswords(username, passwords);
+            lines.add(CSV_HEADER);
+            for (PasswordEntry entry : passwords) {
+                lines.add(entry.getWebsite() + "," + entry.getUsername() + "," + entry.getPassword());
+            }
+            VaultLocks.writeAtomically(userPasswordFile, lines);
+        } finally {
+            VAULT_SAVE_TIMER.stop(start);
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    long bytes = 0;
+                    for (String line : lines) {
+                        bytes += line.length() + 1;
+                    }
+                    commitVaultEvent(event, "save", username, passwords.size(), bytes);
                 }
-                System.out.println("Saved " + passwords.size() + " password entries for user: " + username);
             }
-        } catch (IOException e) {
-            System.err.println("Error saving passwords for user " + username + ": " + e.getMessage());
         }
     }
 }
@@ -0,0 +1,107 @@
+package com.example.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.SplittableRandom;
+
+/**
+ * This file contains the ContentChunker class, which cuts a file into chunks
+ * at positions chosen by the content itself (content-defined chunking).
+ * A rolling "gear" hash runs over the bytes and a chunk ends wherever the
+ * hash has enough zero bits. Because boundaries depend only on nearby bytes,
+ * inserting or removing a line in a vault shifts the boundaries of one or
+ * two chunks only; every other chunk stays byte for byte the same and can be
+ * deduplicated by its hash. Chunks are between MIN_BYTES and MAX_BYTES long
+ * and about AVERAGE_BYTES on average. Below the average a stricter mask is
+ * used and above it a looser one, which keeps sizes close to the average
+ * (normalised chunking, as in FastCDC).
+ * OOP Concept: This class demonstrates ENCAPSULATION by hiding the hash and
+ * its table behind a single split method.
+ */
+public final class ContentChunker {
+
+    public static final int MIN_BYTES = 16 * 1024;
+    public static final int AVERAGE_BYTES = 64 * 1024;
+    public static final int MAX_BYTES = 256 * 1024;
+
+    // 18 and 14 bits (the average's 16, plus or minus 2) spread over bits 20
+    // to 63 of the hash, which depend on the last 21 to 64 bytes
+    private static final long STRICT_MASK = 0x94a5_294a_5290_0000L;
+    private static final long LOOSE_MASK = 0x9124_4922_4890_0000L;
+
+    /**
+     * Receives each chunk; the array is reused, so copy what must be kept
+     */
+    public interface ChunkConsumer {
+        void accept(byte[] data, int offset, int length) throws IOException;
+    }
+
+    private final long[] gear = new long[256];
+
+    /**
+     * Create a chunker whose boundaries depend on a seed. A secret seed keeps
+     * the boundaries, and so the chunk sizes, from revealing the content.
+     *
+     * @param seed The seed of the hash table
+     */
+    public ContentChunker(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < gear.length; i++) {
+            gear[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Find the end of the chunk that starts at offset
+     *
+     * @param data   The bytes
+     * @param offset Where the chunk starts
+     * @param length How many bytes are available
+     * @return The length of the chunk, at most length
+     */
+    public int cut(byte[] data, int offset, int length) {
+        if (length <= MIN_BYTES) {
+            return length;
+        }
+        int normal = Math.min(length, AVERAGE_BYTES);
+        int end = Math.min(length, MAX_BYTES);
+        long hash = 0;
+        int i = MIN_BYTES;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + gear[data[offset + i] & 0xff];
+            if ((hash & STRICT_MASK) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < end; i++) {
+            hash = (hash << 1) + gear[data[offset + i] & 0xff];
+            if ((hash & LOOSE_MASK) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Read a stream to the end and hand it over chunk by chunk, through one
+     * buffer of MAX_BYTES
+     *
+     * @param in       The content; not closed
+     * @param consumer Receives the chunks in order; an empty stream gives none
+     * @throws IOException if reading fails or the consumer throws
+     */
+    public void split(InputStream in, ChunkConsumer consumer) throws IOException {
+        byte[] buffer = new byte[MAX_BYTES];
+        int filled = 0;
+        while (true) {
+            filled += in.readNBytes(buffer, filled, buffer.length - filled);
+            if (filled == 0) {
+                return;
+            }
+            int length = cut(buffer, 0, filled);
+            consumer.accept(buffer, 0, length);
+            System.arraycopy(buffer, length, buffer, 0, filled - length);
+            filled -= length;
+        }
+    }
+}
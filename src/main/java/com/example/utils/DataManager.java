@@ -1,7 +1,12 @@
 package com.example.utils;
 
+import com.example.logging.Log;
+import com.example.metrics.DataFileEvent;
+import com.example.metrics.FlightRecording;
+
 import java.io.File;
 import java.io.IOException;
+import java.lang.System.Logger.Level;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -9,42 +14,59 @@ import java.nio.file.Paths;
 /**
  * Utility class for managing application data directories and files
  */
-public class DataManager { // Base data directory in project's resources folder
+public class DataManager {
+
+    private static final System.Logger LOG = Log.getLogger(DataManager.class);
+
+    // Base data directory in project's resources folder
     private static final String RESOURCES_DIR = System.getProperty("user.dir") + File.separator + "src" + File.separator
             + "main" + File.separator + "resources";
-    private static final String APP_DATA_DIR = RESOURCES_DIR + File.separator + "data";
+    // -Dpm.data.dir points the app at another data directory (benchmarks, tests)
+    private static final String APP_DATA_DIR = System.getProperty("pm.data.dir",
+            RESOURCES_DIR + File.separator + "data");
     private static final String USERS_DIR = APP_DATA_DIR + File.separator + "users";
     private static final String PASSWORDS_DIR = APP_DATA_DIR + File.separator + "passwords";
+    private static final String ATTACHMENTS_DIR = APP_DATA_DIR + File.separator + "attachments";
+    private static final String ADMIN_DIR = APP_DATA_DIR + File.separator + "admin";
 
     // File names
     private static final String USER_DATA_FILE = "user-data.csv";
-    private static final String USER_DATA_HEADER = "Username,Email,PasswordHash,CreatedAt";
+    private static final String ADMIN_DATA_FILE = "admin-data.csv";
+    private static final String USER_DATA_HEADER = "Username,Email,PasswordHash,VaultKey";
     private static final String PASSWORD_FILE_HEADER = "Website/App Name,Username/Email,Password";
 
     /**
      * Initialize the data directory structure
      */
     public static void initializeDataDirectories() {
+        DataFileEvent event = FlightRecording.isEnabled() ? new DataFileEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        boolean created = false;
         try {
             // Create main data directory
             Path appDataPath = Paths.get(APP_DATA_DIR);
             if (!Files.exists(appDataPath)) {
                 Files.createDirectories(appDataPath);
-                System.out.println("Created app data directory: " + APP_DATA_DIR);
+                created = true;
+                LOG.log(Level.INFO, "Created app data directory: {0}", APP_DATA_DIR);
             }
 
             // Create users directory
             Path usersPath = Paths.get(USERS_DIR);
             if (!Files.exists(usersPath)) {
                 Files.createDirectories(usersPath);
-                System.out.println("Created users directory: " + USERS_DIR);
+                created = true;
+                LOG.log(Level.INFO, "Created users directory: {0}", USERS_DIR);
             }
 
             // Create passwords directory
             Path passwordsPath = Paths.get(PASSWORDS_DIR);
             if (!Files.exists(passwordsPath)) {
                 Files.createDirectories(passwordsPath);
-                System.out.println("Created passwords directory: " + PASSWORDS_DIR);
+                created = true;
+                LOG.log(Level.INFO, "Created passwords directory: {0}", PASSWORDS_DIR);
             }
 
             // Create user data file if it doesn't exist
@@ -52,12 +74,21 @@ public class DataManager { // Base data directory in project's resources folder
             if (!Files.exists(userDataFile)) {
                 Files.createFile(userDataFile);
                 Files.write(userDataFile, USER_DATA_HEADER.getBytes());
-                System.out.println("Created user data file: " + userDataFile);
+                created = true;
+                LOG.log(Level.INFO, "Created user data file: {0}", userDataFile);
             }
 
         } catch (IOException e) {
-            System.err.println("Error initializing data directories: " + e.getMessage());
-            e.printStackTrace();
+            LOG.log(Level.ERROR, "Error initializing data directories", e);
+        } finally {
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.operation = "initialize";
+                    event.created = created;
+                    event.commit();
+                }
+            }
         }
     }
 
@@ -70,6 +101,15 @@ public class DataManager { // Base data directory in project's resources folder
         return Paths.get(USERS_DIR, USER_DATA_FILE);
     }
 
+    /**
+     * Get the path to the admin credentials file
+     *
+     * @return Path to admin-data.csv
+     */
+    public static Path getAdminDataFilePath() {
+        return Paths.get(ADMIN_DIR, ADMIN_DATA_FILE);
+    }
+
     /**
      * Get the path to a user's password CSV file
      * 
@@ -80,6 +120,16 @@ public class DataManager { // Base data directory in project's resources folder
         return Paths.get(PASSWORDS_DIR, "passwords_" + username + ".csv");
     }
 
+    /**
+     * Get the directory of a user's attachment index and encrypted blobs
+     *
+     * @param username The username
+     * @return Path to the directory, created when the first file is attached
+     */
+    public static Path getUserAttachmentsDir(String username) {
+        return Paths.get(ATTACHMENTS_DIR, username);
+    }
+
     /**
      * Create an empty password file for a new user
      * 
@@ -87,18 +137,34 @@ public class DataManager { // Base data directory in project's resources folder
      * @return true if file was created successfully
      */
     public static boolean createUserPasswordFile(String username) {
+        DataFileEvent event = FlightRecording.isEnabled() ? new DataFileEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        boolean created = false;
         try {
             Path userPasswordFile = getUserPasswordFilePath(username);
             if (!Files.exists(userPasswordFile)) {
                 Files.createFile(userPasswordFile);
                 Files.write(userPasswordFile, PASSWORD_FILE_HEADER.getBytes());
-                System.out.println("Created password file for user: " + username);
+                created = true;
+                LOG.log(Level.INFO, "Created password file for user: {0}", username);
                 return true;
             }
             return true; // File already exists
         } catch (IOException e) {
-            System.err.println("Error creating password file for user " + username + ": " + e.getMessage());
+            LOG.log(Level.ERROR, "Error creating password file for user {0}: {1}", username, e.getMessage());
             return false;
+        } finally {
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.operation = "createPasswordFile";
+                    event.userHash = FlightRecording.hashUsername(username);
+                    event.created = created;
+                    event.commit();
+                }
+            }
         }
     }
 
@@ -130,6 +196,15 @@ public class DataManager { // Base data directory in project's resources folder
         return USERS_DIR;
     }
 
+    /**
+     * Get the attachments directory path
+     * 
+     * @return Attachments directory path
+     */
+    public static String getAttachmentsDir() {
+        return ATTACHMENTS_DIR;
+    }
+
     /**
      * Get the passwords directory path
      * 
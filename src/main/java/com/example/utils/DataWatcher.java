@@ -0,0 +1,164 @@
+package com.example.utils;
+
+import com.example.logging.Log;
+
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This file contains the DataWatcher utility class that notices when data
+ * files are changed on disk, for example by another instance of the app, a
+ * sync tool or the command line, and tells the interested listeners.
+ * A single daemon thread watches the users and passwords directories; events
+ * that arrive close together (a write, its rename and the version bump) are
+ * reported as one change per file. Listeners run on the watcher thread.
+ * OOP Concept: This class demonstrates the OBSERVER pattern.
+ */
+public class DataWatcher {
+
+    private static final System.Logger LOG = Log.getLogger(DataWatcher.class);
+
+    // How long to wait for more events of the same burst before reporting
+    private static final long SETTLE_MILLIS = 150;
+    private static final String VERSION_SUFFIX = ".version";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final Map<Path, List<Runnable>> LISTENERS = new ConcurrentHashMap<>();
+    private static volatile WatchService watchService;
+
+    /**
+     * A registered listener; cancel it when the view that owns it goes away
+     */
+    public static class Registration {
+        private final Path file;
+        private final Runnable listener;
+
+        private Registration(Path file, Runnable listener) {
+            this.file = file;
+            this.listener = listener;
+        }
+
+        public void cancel() {
+            List<Runnable> listeners = LISTENERS.get(file);
+            if (listeners != null) {
+                listeners.remove(listener);
+            }
+        }
+    }
+
+    /**
+     * Call a listener whenever the given data file changes on disk
+     *
+     * @param file     A file in the users or passwords directory
+     * @param listener Called on the watcher thread after each change
+     * @return The registration, used to stop listening
+     */
+    public static Registration watch(Path file, Runnable listener) {
+        Path key = normalize(file);
+        LISTENERS.computeIfAbsent(key, path -> new CopyOnWriteArrayList<>()).add(listener);
+        startWatcher();
+        return new Registration(key, listener);
+    }
+
+    // Starts the watcher thread the first time a listener is registered
+    private static void startWatcher() {
+        if (watchService != null) {
+            return;
+        }
+        synchronized (DataWatcher.class) {
+            if (watchService != null) {
+                return;
+            }
+            try {
+                WatchService service = FileSystems.getDefault().newWatchService();
+                for (String dir : new String[] { DataManager.getUsersDir(), DataManager.getPasswordsDir() }) {
+                    Paths.get(dir).register(service,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY,
+                            StandardWatchEventKinds.ENTRY_DELETE);
+                }
+                Thread thread = new Thread(() -> watchLoop(service), "data-watcher");
+                thread.setDaemon(true);
+                thread.start();
+                watchService = service;
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Could not watch data directories: {0}", e.getMessage());
+            }
+        }
+    }
+
+    private static void watchLoop(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Set<Path> changed = new HashSet<>();
+                collectChanges(key, changed);
+
+                // Let the rest of the burst arrive before reporting
+                while ((key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    collectChanges(key, changed);
+                }
+
+                for (Path file : changed) {
+                    notifyListeners(file);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+
+    // Maps the events of one key to the data files they concern
+    private static void collectChanges(WatchKey key, Set<Path> changed) {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost, report every watched file
+                changed.addAll(LISTENERS.keySet());
+                continue;
+            }
+            String name = event.context().toString();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                continue;
+            }
+            if (name.endsWith(VERSION_SUFFIX)) {
+                name = name.substring(0, name.length() - VERSION_SUFFIX.length());
+            }
+            changed.add(normalize(dir.resolve(name)));
+        }
+        key.reset();
+    }
+
+    private static void notifyListeners(Path file) {
+        List<Runnable> listeners = LISTENERS.get(file);
+        if (listeners == null) {
+            return;
+        }
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                LOG.log(Level.ERROR, "Error handling change of {0}: {1}", file, e.getMessage());
+            }
+        }
+    }
+
+    private static Path normalize(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.utils;
+
+import com.example.logging.Log;
+import com.example.metrics.Metrics;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * This file contains the DialogManager utility class that keeps one warmed-up
+ * popup stage per dialog type and reuses it on every open.
+ * OOP Concept: This class demonstrates the OBJECT POOL pattern by reusing
+ * expensive Stage, Scene and FXML objects instead of rebuilding them.
+ */
+public class DialogManager {
+
+    private static final System.Logger LOG = Log.getLogger(DialogManager.class);
+
+    /**
+     * The popup dialogs that are kept in the pool
+     */
+    public enum DialogType {
+        VIEW_PASSWORD("/com/example/fxml/view-password.fxml", "View Password"),
+        EDIT_PASSWORD("/com/example/fxml/change-saved-data.fxml", "Edit Password Entry"),
+        ADD_PASSWORD("/com/example/fxml/add-password.fxml", "Add Password"),
+        ADMIN_PROFILE("/com/example/fxml/change-admin-profile.fxml", "Manage Admin Profile");
+
+        private final String fxmlPath;
+        private final String title;
+
+        DialogType(String fxmlPath, String title) {
+            this.fxmlPath = fxmlPath;
+            this.title = title;
+        }
+
+        public String getFxmlPath() {
+            return fxmlPath;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+    }
+
+    private static final Map<DialogType, PooledDialog> POOL = new EnumMap<>(DialogType.class);
+
+    /**
+     * Build the stages for the given dialog types ahead of time so that the
+     * first click does not pay for FXML loading and CSS processing
+     *
+     * @param types The dialog types to prepare
+     */
+    public static void warmUp(DialogType... types) {
+        for (DialogType type : types) {
+            try {
+                getOrCreate(type);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Could not warm up {0} dialog: {1}", type.getTitle(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Rebind the pooled dialog of the given type and show it modally
+     *
+     * @param type   The dialog to show
+     * @param binder Callback that binds the dialog's controller to the current
+     *               data before it is shown
+     * @throws IOException if the dialog's FXML could not be loaded
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> void showDialog(DialogType type, BiConsumer<T, Stage> binder) throws IOException {
+        long openStartedAt = System.nanoTime();
+        PooledDialog dialog = getOrCreate(type);
+        if (dialog.stage.isShowing()) {
+            dialog.stage.toFront();
+            return;
+        }
+
+        binder.accept((T) dialog.controller, dialog.stage);
+
+        dialog.openStartedAt = openStartedAt;
+        dialog.stage.centerOnScreen();
+        dialog.stage.showAndWait();
+    }
+
+    /**
+     * Get the average time from an open request until the dialog was shown
+     *
+     * @param type The dialog type
+     * @return Average open latency in milliseconds, 0 if never opened
+     */
+    public static double getAverageOpenLatencyMillis(DialogType type) {
+        PooledDialog dialog = POOL.get(type);
+        if (dialog == null || dialog.openCount == 0) {
+            return 0;
+        }
+        return dialog.totalOpenNanos / (double) dialog.openCount / 1_000_000.0;
+    }
+
+    /**
+     * Get the slowest observed open latency of a dialog
+     *
+     * @param type The dialog type
+     * @return Maximum open latency in milliseconds, 0 if never opened
+     */
+    public static double getMaxOpenLatencyMillis(DialogType type) {
+        PooledDialog dialog = POOL.get(type);
+        return dialog == null ? 0 : dialog.maxOpenNanos / 1_000_000.0;
+    }
+
+    /**
+     * Get how many times a dialog has been opened
+     *
+     * @param type The dialog type
+     * @return Number of opens
+     */
+    public static long getOpenCount(DialogType type) {
+        PooledDialog dialog = POOL.get(type);
+        return dialog == null ? 0 : dialog.openCount;
+    }
+
+    // Returns the pooled dialog for a type, building it on first use
+    private static PooledDialog getOrCreate(DialogType type) throws IOException {
+        PooledDialog dialog = POOL.get(type);
+        if (dialog == null) {
+            dialog = createDialog(type);
+            POOL.put(type, dialog);
+        }
+        return dialog;
+    }
+
+    // Loads the FXML, scene and stylesheets of a dialog once
+    private static PooledDialog createDialog(DialogType type) throws IOException {
+        FXMLLoader loader = new FXMLLoader(DialogManager.class.getResource(type.getFxmlPath()));
+        Parent root = loader.load();
+
+        Stage stage = new Stage();
+        stage.initModality(Modality.APPLICATION_MODAL);
+        stage.initStyle(StageStyle.TRANSPARENT);
+        stage.setTitle(type.getTitle());
+
+        Scene scene = new Scene(root);
+        scene.setFill(javafx.scene.paint.Color.TRANSPARENT);
+        scene.getStylesheets().add(DialogManager.class.getResource("/com/example/css/reset.css").toExternalForm());
+        scene.getStylesheets().add(DialogManager.class.getResource("/com/example/css/styles.css").toExternalForm());
+        stage.setScene(scene);
+
+        // Resolve CSS now so the first show does not have to
+        root.applyCss();
+
+        makeDraggable(root, stage);
+
+        PooledDialog dialog = new PooledDialog(stage, loader.getController());
+        stage.setOnShown(event -> dialog.recordOpen(type));
+        return dialog;
+    }
+
+    // Method to make the popup draggable
+    private static void makeDraggable(Parent root, Stage stage) {
+        final double[] xOffset = { 0 };
+        final double[] yOffset = { 0 };
+
+        root.setOnMousePressed(event -> {
+            xOffset[0] = event.getSceneX();
+            yOffset[0] = event.getSceneY();
+        });
+
+        root.setOnMouseDragged(event -> {
+            stage.setX(event.getScreenX() - xOffset[0]);
+            stage.setY(event.getScreenY() - yOffset[0]);
+        });
+    }
+
+    // A stage and controller pair kept alive between opens
+    private static class PooledDialog {
+        private final Stage stage;
+        private final Object controller;
+        private long openStartedAt;
+        private long openCount;
+        private long totalOpenNanos;
+        private long maxOpenNanos;
+
+        PooledDialog(Stage stage, Object controller) {
+            this.stage = stage;
+            this.controller = controller;
+        }
+
+        void recordOpen(DialogType type) {
+            long elapsed = System.nanoTime() - openStartedAt;
+            Metrics.timer(Metrics.DIALOG_OPEN).record(elapsed);
+            openCount++;
+            totalOpenNanos += elapsed;
+            maxOpenNanos = Math.max(maxOpenNanos, elapsed);
+            LOG.log(Level.INFO, "Opened {0} dialog in {1} ms (avg {2} ms over {3} opens)", type.getTitle(),
+                    String.format("%.1f", elapsed / 1_000_000.0),
+                    String.format("%.1f", getAverageOpenLatencyMillis(type)), String.valueOf(openCount));
+        }
+    }
+}
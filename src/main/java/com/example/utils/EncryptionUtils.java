@@ -1,44 +1,112 @@
 package com.example.utils;
 
+import com.example.logging.Log;
+import com.example.metrics.CryptoEvent;
+import com.example.metrics.FlightRecording;
+import com.example.metrics.Metrics;
+import com.example.metrics.Timer;
+
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
-import javax.crypto.spec.SecretKeySpec;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.security.SecureRandom;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
 
 /**
  * This file contains the EncryptionUtils utility class for encrypting and
  * decrypting password data.
+ * Passwords are written with AES-GCM, which detects any change to the stored
+ * value, and the website and username of an entry can be bound to its
+ * password as associated data so a password cannot be moved to another
+ * entry. Vault passwords are encrypted with the owner's VaultKey; the
+ * application master key is only used for values that belong to no user and
+ * to read older vaults. In memory every encrypted password starts with a
+ * format byte: FORMAT_CBC and FORMAT_GCM (master key) or FORMAT_GCM_USER_KEY.
+ * In a file GCM values carry a "v2:" or "v3:" tag and CBC values are plain
+ * Base64, so existing vault files stay valid and are upgraded as they are
+ * rewritten.
  * OOP Concept: This class demonstrates the UTILITY pattern by providing static
  * methods for encryption operations.
  */
 public class EncryptionUtils {
 
-    private static final String ALGORITHM = "AES/CBC/PKCS5Padding";
+    private static final System.Logger LOG = Log.getLogger(EncryptionUtils.class);
+
+    private static final String CBC_ALGORITHM = "AES/CBC/PKCS5Padding";
+    private static final String GCM_ALGORITHM = "AES/GCM/NoPadding";
     private static final String SECRET_KEY_ALGORITHM = "PBKDF2WithHmacSHA256";
     private static final int KEY_LENGTH = 256;
     private static final int ITERATION_COUNT = 65536;
     private static final String MASTER_PASSWORD_SALT = "PasswordManagerSalt123!"; // Fixed salt for app master key
     private static final String MASTER_PASSWORD = "S3cur3P@ssw0rdM@n@ger"; // Hard-coded master password for demo
 
-    private static SecretKey masterKey;
-    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final Timer ENCRYPT_TIMER = Metrics.timer(Metrics.ENCRYPT);
+    private static final Timer DECRYPT_TIMER = Metrics.timer(Metrics.DECRYPT);
+    private static final Timer ENCRYPT_BATCH_TIMER = Metrics.timer(Metrics.ENCRYPT_BATCH);
+    private static final Timer DECRYPT_BATCH_TIMER = Metrics.timer(Metrics.DECRYPT_BATCH);
 
-    static {
-        try {
-            // Initialize master key on class load
-            masterKey = generateMasterKey();
-        } catch (Exception e) {
-            System.err.println("Failed to initialize encryption: " + e.getMessage());
-            throw new RuntimeException("Encryption initialization failed", e);
+    // First byte of every encrypted password in raw form
+    public static final byte FORMAT_CBC = 1;
+    public static final byte FORMAT_GCM = 2;
+    public static final byte FORMAT_GCM_USER_KEY = 3;
+    // Prefixes of GCM values in files; CBC values have none
+    private static final String GCM_TAG = "v2:";
+    private static final String GCM_USER_KEY_TAG = "v3:";
+
+    // Format of new ciphertexts under the master key, -Dpm.crypto.mode=cbc
+    // goes back to CBC
+    private static final byte MASTER_KEY_FORMAT =
+            "cbc".equalsIgnoreCase(System.getProperty("pm.crypto.mode")) ? FORMAT_CBC : FORMAT_GCM;
+
+    private static final int IV_LENGTH = 16;
+    private static final int GCM_NONCE_LENGTH = 12;
+    private static final int GCM_TAG_BITS = 128;
+    // Items per task when a batch is split across the crypto pool
+    private static final int BATCH_CHUNK = 256;
+
+    // Derives the master key on first use so callers that only handle
+    // passwords under a user's key never run its KDF
+    private static class MasterKeyHolder {
+        private static final SecretKey MASTER_KEY;
+
+        static {
+            try {
+                MASTER_KEY = generateMasterKey();
+            } catch (Exception e) {
+                LOG.log(Level.ERROR, "Failed to initialize encryption: {0}", e.getMessage());
+                throw new RuntimeException("Encryption initialization failed", e);
+            }
         }
     }
 
-    // Generates the application master key
+    // Worker threads for large batches, started the first time one is split
+    private static class BatchPool {
+        private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+        private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(), runnable -> {
+                    Thread thread = new Thread(runnable, "crypto-batch-" + THREAD_NUMBER.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    // Generates the application master key, kept off the heap until shutdown
     private static SecretKey generateMasterKey() throws Exception {
         PBEKeySpec spec = new PBEKeySpec(
                 MASTER_PASSWORD.toCharArray(),
@@ -46,77 +114,706 @@ public class EncryptionUtils {
                 ITERATION_COUNT,
                 KEY_LENGTH);
         SecretKeyFactory factory = SecretKeyFactory.getInstance(SECRET_KEY_ALGORITHM);
-        byte[] keyBytes = factory.generateSecret(spec).getEncoded();
-        return new SecretKeySpec(keyBytes, "AES");
+        try {
+            return OffHeapKey.take(factory.generateSecret(spec).getEncoded(), "AES");
+        } finally {
+            spec.clearPassword();
+        }
     }
 
-    // Encrypts a plaintext password and returns a Base64-encoded string with IV
-    // prepended
+    // Encrypts a plaintext password and returns it in its stored text form
     public static String encryptPassword(String plainPassword) {
-        try {
-            // Generate random IV
-            byte[] iv = new byte[16];
-            RANDOM.nextBytes(iv);
-            IvParameterSpec ivSpec = new IvParameterSpec(iv);
+        byte[] encrypted = encryptToBytes(plainPassword);
+        if (encrypted == null) {
+            return plainPassword; // Fallback to unencrypted if encryption fails
+        }
+        return encodeStored(encrypted);
+    }
 
-            // Initialize cipher for encryption
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            cipher.init(Cipher.ENCRYPT_MODE, masterKey, ivSpec);
+    /**
+     * Encrypt a plaintext password into the raw stored form, without binding
+     * it to an entry
+     *
+     * @param plainPassword The password to encrypt
+     * @return Format byte, IV and ciphertext, or null if encryption failed
+     */
+    public static byte[] encryptToBytes(String plainPassword) {
+        return encryptToBytes(plainPassword, null, null);
+    }
 
-            // Encrypt password
-            byte[] encryptedBytes = cipher.doFinal(plainPassword.getBytes(StandardCharsets.UTF_8));
+    /**
+     * Encrypt a plaintext password into the raw stored form: the format byte,
+     * the IV and the ciphertext, without Base64 encoding
+     *
+     * @param plainPassword  The password to encrypt
+     * @param associatedData Data the password is bound to, see
+     *                       associatedData(String, String); null for none.
+     *                       Only GCM can bind data, CBC ignores it.
+     * @param key            The owner's vault key, or null for the master key
+     * @return Format byte, IV and ciphertext, or null if encryption failed
+     */
+    public static byte[] encryptToBytes(String plainPassword, byte[] associatedData, VaultKey key) {
+        byte[] plainBytes = plainPassword != null ? plainPassword.getBytes(StandardCharsets.UTF_8) : null;
+        return encryptUtf8(plainBytes, associatedData, key);
+    }
 
-            // Combine IV and encrypted password and encode to Base64
-            byte[] combined = new byte[iv.length + encryptedBytes.length];
-            System.arraycopy(iv, 0, combined, 0, iv.length);
-            System.arraycopy(encryptedBytes, 0, combined, iv.length, encryptedBytes.length);
+    /**
+     * Encrypt a password held in a Secret into the raw stored form, without
+     * making a String of it
+     *
+     * @param plainPassword  The password to encrypt; read, not closed
+     * @param associatedData Data the password is bound to, or null for none
+     * @param key            The owner's vault key, or null for the master key
+     * @return Format byte, IV and ciphertext, or null if encryption failed
+     */
+    public static byte[] encryptToBytes(Secret plainPassword, byte[] associatedData, VaultKey key) {
+        return encryptUtf8(plainPassword != null ? plainPassword.toUtf8() : null, associatedData, key);
+    }
 
-            return Base64.getEncoder().encodeToString(combined);
+    // Encrypts UTF-8 plaintext and wipes it afterwards
+    private static byte[] encryptUtf8(byte[] plainBytes, byte[] associatedData, VaultKey key) {
+        long start = ENCRYPT_TIMER.start();
+        CryptoEvent event = FlightRecording.isEnabled() ? new CryptoEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        boolean succeeded = false;
+        try {
+            if (plainBytes == null) {
+                LOG.log(Level.ERROR, "Encryption failed: no password");
+                return null;
+            }
+            byte format = writeFormat(key);
+            SecretKey secretKey = secretKey(format, key);
+
+            // Generate random IV
+            byte[] iv = new byte[ivLength(format)];
+            SecureRandoms.nextIv(iv);
+
+            Cipher cipher = Cipher.getInstance(algorithm(format));
+            byte[] combined = seal(cipher, format, secretKey, iv, 0, plainBytes, associatedData);
+            succeeded = true;
+            return combined;
         } catch (Exception e) {
-            System.err.println("Encryption failed: " + e.getMessage());
-            return plainPassword; // Fallback to unencrypted if encryption fails
+            LOG.log(Level.ERROR, "Encryption failed: {0}", e.getMessage());
+            return null;
+        } finally {
+            if (plainBytes != null) {
+                Arrays.fill(plainBytes, (byte) 0);
+            }
+            ENCRYPT_TIMER.stop(start);
+            commitEvent(event, "encrypt", plainBytes != null ? plainBytes.length : 0, succeeded);
         }
     }
 
-    // Decrypts a Base64-encoded encrypted password with prepended IV
+    // Decrypts a password in its stored text form
     public static String decryptPassword(String encryptedPassword) {
+        byte[] combined = decodeStored(encryptedPassword);
+        if (combined == null) {
+            LOG.log(Level.ERROR, "Decryption failed: not an encrypted password");
+            return null;
+        }
+        return decryptBytes(combined);
+    }
+
+    /**
+     * Decrypt a password in the raw stored form that is not bound to an entry
+     *
+     * @param combined Format byte, IV and ciphertext
+     * @return The plaintext password, or null if decryption failed
+     */
+    public static String decryptBytes(byte[] combined) {
+        return decryptBytes(combined, null, null);
+    }
+
+    /**
+     * Decrypt a password in the raw stored form produced by encryptToBytes.
+     * A GCM password that was changed, or is opened with other associated
+     * data than it was encrypted with, fails instead of decrypting to garbage.
+     *
+     * @param combined       Format byte, IV and ciphertext
+     * @param associatedData The data the password was bound to, or null
+     * @param key            The owner's vault key; only needed for passwords
+     *                       in FORMAT_GCM_USER_KEY
+     * @return The plaintext password, or null if decryption failed
+     */
+    public static String decryptBytes(byte[] combined, byte[] associatedData, VaultKey key) {
+        try (Secret decrypted = decryptToSecret(combined, associatedData, key)) {
+            return decrypted != null ? new String(decrypted.chars()) : null;
+        }
+    }
+
+    /**
+     * Decrypt a password in the raw stored form into a Secret, so it never
+     * exists as a String
+     *
+     * @param combined       Format byte, IV and ciphertext
+     * @param associatedData The data the password was bound to, or null
+     * @param key            The owner's vault key; only needed for passwords
+     *                       in FORMAT_GCM_USER_KEY
+     * @return The plaintext password, which the caller must close, or null
+     *         if decryption failed
+     */
+    public static Secret decryptToSecret(byte[] combined, byte[] associatedData, VaultKey key) {
+        long start = DECRYPT_TIMER.start();
+        CryptoEvent event = FlightRecording.isEnabled() ? new CryptoEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        boolean succeeded = false;
         try {
-            // Decode from Base64
-            byte[] combined = Base64.getDecoder().decode(encryptedPassword);
-
-            // Extract IV and encrypted password
-            byte[] iv = new byte[16];
-            byte[] encrypted = new byte[combined.length - 16];
-            System.arraycopy(combined, 0, iv, 0, iv.length);
-            System.arraycopy(combined, iv.length, encrypted, 0, encrypted.length);
-
-            // Initialize cipher for decryption
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            cipher.init(Cipher.DECRYPT_MODE, masterKey, new IvParameterSpec(iv));
-
-            // Decrypt password
-            byte[] decryptedBytes = cipher.doFinal(encrypted);
-            return new String(decryptedBytes, StandardCharsets.UTF_8);
+            if (!isWellFormed(combined)) {
+                LOG.log(Level.ERROR, "Decryption failed: not an encrypted password");
+                return null;
+            }
+            SecretKey secretKey = secretKey(combined[0], key);
+            Cipher cipher = Cipher.getInstance(algorithm(combined[0]));
+            byte[] decryptedBytes = open(cipher, secretKey, combined, associatedData);
+            succeeded = true;
+            Secret decrypted = Secret.fromUtf8(decryptedBytes, 0, decryptedBytes.length);
+            Arrays.fill(decryptedBytes, (byte) 0);
+            return decrypted;
         } catch (Exception e) {
-            System.err.println("Decryption failed: " + e.getMessage());
-            return encryptedPassword; // Return as-is if decryption fails
+            LOG.log(Level.ERROR, "Decryption failed: {0}", e.getMessage());
+            return null;
+        } finally {
+            DECRYPT_TIMER.stop(start);
+            commitEvent(event, "decrypt", combined != null ? combined.length : 0, succeeded);
         }
     }
 
-    // Checks if a string is likely encrypted (Base64 format)
-    public static boolean isEncrypted(String str) {
-        if (str == null || str.isEmpty()) {
+    /**
+     * Build the associated data that binds a password to its entry
+     *
+     * @param website  The entry's website
+     * @param username The entry's username
+     * @return Length-prefixed UTF-8 website followed by the UTF-8 username
+     */
+    public static byte[] associatedData(String website, String username) {
+        byte[] site = website.getBytes(StandardCharsets.UTF_8);
+        byte[] user = username.getBytes(StandardCharsets.UTF_8);
+        // The length keeps "ab" + "c" apart from "a" + "bc"
+        return ByteBuffer.allocate(4 + site.length + user.length)
+                .putInt(site.length)
+                .put(site)
+                .put(user)
+                .array();
+    }
+
+    /**
+     * Check whether an encrypted password is in an older format than the one
+     * new passwords are written in, so it should be re-encrypted when saved
+     *
+     * @param combined A password in raw stored form
+     * @param key      The owner's vault key, or null if not known
+     * @return true if it should be upgraded
+     */
+    public static boolean needsUpgrade(byte[] combined, VaultKey key) {
+        // Formats are numbered oldest first; with -Dpm.crypto.mode=cbc nothing is
+        // downgraded
+        return combined != null && combined.length > 0 && combined[0] < writeFormat(key);
+    }
+
+    /**
+     * Check whether an encrypted password is bound to its entry's website
+     * and username, so renaming the entry requires encrypting it again
+     *
+     * @param combined A password in raw stored form
+     * @return true for GCM passwords
+     */
+    public static boolean isBoundToEntry(byte[] combined) {
+        return combined != null && combined.length > 0 && isGcm(combined[0]);
+    }
+
+    // Encrypts one password with the IV at ivs[ivOffset] into the raw form
+    private static byte[] seal(Cipher cipher, byte format, SecretKey key, byte[] ivs, int ivOffset,
+            byte[] plainBytes, byte[] associatedData) throws GeneralSecurityException {
+        int ivLength = ivLength(format);
+        if (isGcm(format)) {
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, ivs, ivOffset, ivLength));
+            if (associatedData != null) {
+                cipher.updateAAD(associatedData);
+            }
+        } else {
+            cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(ivs, ivOffset, ivLength));
+        }
+
+        // Encrypt straight into the buffer behind the format byte and the IV
+        int header = 1 + ivLength;
+        byte[] combined = new byte[header + cipher.getOutputSize(plainBytes.length)];
+        combined[0] = format;
+        System.arraycopy(ivs, ivOffset, combined, 1, ivLength);
+        int length = header + cipher.doFinal(plainBytes, 0, plainBytes.length, combined, header);
+        return length == combined.length ? combined : Arrays.copyOf(combined, length);
+    }
+
+    // Decrypts one well-formed password; the cipher and key must match its format
+    private static byte[] open(Cipher cipher, SecretKey key, byte[] combined, byte[] associatedData)
+            throws GeneralSecurityException {
+        // The IV and the ciphertext are read in place, without copying them out
+        int ivLength = ivLength(combined[0]);
+        if (isGcm(combined[0])) {
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, combined, 1, ivLength));
+            if (associatedData != null) {
+                cipher.updateAAD(associatedData);
+            }
+        } else {
+            cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(combined, 1, ivLength));
+        }
+        int header = 1 + ivLength;
+        return cipher.doFinal(combined, header, combined.length - header);
+    }
+
+    // Checks the format byte and that there is room for the IV and one
+    // block of ciphertext (CBC) or the authentication tag (GCM)
+    private static boolean isWellFormed(byte[] combined) {
+        if (combined == null || combined.length == 0) {
             return false;
         }
+        switch (combined[0]) {
+            case FORMAT_CBC:
+                return combined.length >= 1 + IV_LENGTH + 16;
+            case FORMAT_GCM:
+            case FORMAT_GCM_USER_KEY:
+                return combined.length >= 1 + GCM_NONCE_LENGTH + GCM_TAG_BITS / 8;
+            default:
+                return false;
+        }
+    }
+
+    // New passwords of a user are encrypted with their key, other values with
+    // the master key
+    private static byte writeFormat(VaultKey key) {
+        return key != null ? FORMAT_GCM_USER_KEY : MASTER_KEY_FORMAT;
+    }
+
+    // Returns the key for a format; fails rather than falling back to the
+    // master key when a user's key is needed but missing or destroyed
+    private static SecretKey secretKey(byte format, VaultKey key) throws GeneralSecurityException {
+        if (format != FORMAT_GCM_USER_KEY) {
+            return MasterKeyHolder.MASTER_KEY;
+        }
+        SecretKey secretKey = key != null ? key.secretKey() : null;
+        if (secretKey == null) {
+            throw new GeneralSecurityException("Vault key is not unlocked");
+        }
+        return secretKey;
+    }
+
+    private static boolean isGcm(byte format) {
+        return format == FORMAT_GCM || format == FORMAT_GCM_USER_KEY;
+    }
+
+    private static String algorithm(byte format) {
+        return isGcm(format) ? GCM_ALGORITHM : CBC_ALGORITHM;
+    }
+
+    private static int ivLength(byte format) {
+        return isGcm(format) ? GCM_NONCE_LENGTH : IV_LENGTH;
+    }
+
+    // Fills in and commits a crypto event if a recording wants it
+    private static void commitEvent(CryptoEvent event, String operation, int bytes, boolean succeeded) {
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = operation;
+                event.bytes = bytes;
+                event.succeeded = succeeded;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * The outcome of a batch operation. Results go into the caller's array;
+     * this records which items failed and why, so no item silently falls
+     * back to its input.
+     */
+    public static final class BatchResult {
+        private final String[] errors;
+        private int failures;
+
+        private BatchResult(int size) {
+            this.errors = new String[size];
+        }
+
+        private void fail(int index, String error) {
+            errors[index] = error != null ? error : "Unknown error";
+        }
+
+        // Counts the failures once all chunks have finished
+        private BatchResult done() {
+            for (String error : errors) {
+                if (error != null) {
+                    failures++;
+                }
+            }
+            return this;
+        }
 
+        public int size() {
+            return errors.length;
+        }
+
+        public boolean succeeded(int index) {
+            return errors[index] == null;
+        }
+
+        // Returns why an item failed, or null if it succeeded
+        public String getError(int index) {
+            return errors[index];
+        }
+
+        public int getFailureCount() {
+            return failures;
+        }
+
+        public boolean allSucceeded() {
+            return failures == 0;
+        }
+    }
+
+    /**
+     * Encrypt many passwords at once with the master key, without binding
+     * them to entries
+     *
+     * @see #encryptAll(List, List, VaultKey, byte[][], boolean)
+     */
+    public static BatchResult encryptAll(List<String> plaintexts, byte[][] out, boolean parallel) {
+        return encryptAll(plaintexts, null, null, out, parallel);
+    }
+
+    /**
+     * Encrypt many passwords given as text, such as generated test data;
+     * passwords of real users go through the Secret[] variant
+     *
+     * @see #encryptAll(Secret[], List, VaultKey, byte[][], boolean)
+     */
+    public static BatchResult encryptAll(List<String> plaintexts, List<byte[]> associatedData, VaultKey key,
+            byte[][] out, boolean parallel) {
+        return encryptAll(plaintexts.size(), i -> {
+            String plaintext = plaintexts.get(i);
+            return plaintext != null ? plaintext.getBytes(StandardCharsets.UTF_8) : null;
+        }, associatedData, key, out, parallel);
+    }
+
+    /**
+     * Encrypt many passwords at once into the raw form of encryptToBytes.
+     * One cipher per worker is reused for all of its items and the IVs for a
+     * whole chunk are drawn from the random generator in one call. The key is
+     * already unlocked, so no item repeats any key derivation.
+     *
+     * @param plaintexts     The passwords to encrypt; read, not closed; null
+     *                       items fail
+     * @param associatedData The data each password is bound to, or null for
+     *                       none; same size as plaintexts
+     * @param key            The owner's vault key, or null for the master key
+     * @param out            Receives the encrypted form of item i at index i,
+     *                       or null where it failed; at least as long as
+     *                       plaintexts
+     * @param parallel       true to split large batches across the crypto pool
+     * @return Which items failed
+     */
+    public static BatchResult encryptAll(Secret[] plaintexts, List<byte[]> associatedData, VaultKey key,
+            byte[][] out, boolean parallel) {
+        return encryptAll(plaintexts.length, i -> plaintexts[i] != null ? plaintexts[i].toUtf8() : null,
+                associatedData, key, out, parallel);
+    }
+
+    private static BatchResult encryptAll(int size, IntFunction<byte[]> plainUtf8, List<byte[]> associatedData,
+            VaultKey key, byte[][] out, boolean parallel) {
+        checkBatch(size, out.length);
+        checkAssociatedData(size, associatedData);
+        BatchResult result = new BatchResult(size);
+        long start = ENCRYPT_BATCH_TIMER.start();
+        try {
+            runBatch(size, parallel,
+                    (from, to) -> encryptRange(plainUtf8, associatedData, key, out, result, from, to));
+        } finally {
+            ENCRYPT_BATCH_TIMER.stop(start);
+        }
+        return result.done();
+    }
+
+    /**
+     * Decrypt many passwords at once that are not bound to entries or
+     * encrypted with a user's key
+     *
+     * @see #decryptAll(List, List, VaultKey, String[], boolean)
+     */
+    public static BatchResult decryptAll(List<byte[]> ciphertexts, String[] out, boolean parallel) {
+        return decryptAll(ciphertexts, null, null, out, parallel);
+    }
+
+    /**
+     * Decrypt many passwords into text, for benchmarks and tools whose
+     * output is text anyway; passwords of real users go through the
+     * Secret[] variant
+     *
+     * @see #decryptAll(List, List, VaultKey, Secret[], boolean)
+     */
+    public static BatchResult decryptAll(List<byte[]> ciphertexts, List<byte[]> associatedData, VaultKey key,
+            String[] out, boolean parallel) {
+        return decryptAll(ciphertexts, associatedData, key, out.length,
+                (i, plainBytes) -> out[i] = plainBytes != null ? new String(plainBytes, StandardCharsets.UTF_8) : null,
+                parallel);
+    }
+
+    /**
+     * Decrypt many passwords at once from the raw form of encryptToBytes.
+     * All formats may be mixed.
+     *
+     * @param ciphertexts    Encrypted form of each item; null items fail
+     * @param associatedData The data each password was bound to, or null for
+     *                       none; same size as ciphertexts
+     * @param key            The owner's vault key, for FORMAT_GCM_USER_KEY items
+     * @param out            Receives the plaintext of item i at index i, or
+     *                       null where it failed; at least as long as
+     *                       ciphertexts. The caller closes the Secrets.
+     * @param parallel       true to split large batches across the crypto pool
+     * @return Which items failed
+     */
+    public static BatchResult decryptAll(List<byte[]> ciphertexts, List<byte[]> associatedData, VaultKey key,
+            Secret[] out, boolean parallel) {
+        return decryptAll(ciphertexts, associatedData, key, out.length,
+                (i, plainBytes) -> out[i] = plainBytes != null ? Secret.fromUtf8(plainBytes, 0, plainBytes.length)
+                        : null,
+                parallel);
+    }
+
+    private static BatchResult decryptAll(List<byte[]> ciphertexts, List<byte[]> associatedData, VaultKey key,
+            int outLength, PlaintextSink out, boolean parallel) {
+        checkBatch(ciphertexts.size(), outLength);
+        checkAssociatedData(ciphertexts.size(), associatedData);
+        BatchResult result = new BatchResult(ciphertexts.size());
+        long start = DECRYPT_BATCH_TIMER.start();
+        try {
+            runBatch(ciphertexts.size(), parallel,
+                    (from, to) -> decryptRange(ciphertexts, associatedData, key, out, result, from, to));
+        } finally {
+            DECRYPT_BATCH_TIMER.stop(start);
+        }
+        return result.done();
+    }
+
+    // Receives the UTF-8 plaintext of item i, or null where it failed; the
+    // bytes are wiped once it returns
+    private interface PlaintextSink {
+        void accept(int index, byte[] plainBytes);
+    }
+
+    private static void encryptRange(IntFunction<byte[]> plainUtf8, List<byte[]> associatedData, VaultKey key,
+            byte[][] out, BatchResult result, int from, int to) {
+        byte format = writeFormat(key);
+        Cipher cipher;
+        SecretKey secretKey;
+        try {
+            secretKey = secretKey(format, key);
+            cipher = Cipher.getInstance(algorithm(format));
+        } catch (GeneralSecurityException e) {
+            failRange(result, from, to, e);
+            return;
+        }
+        int ivLength = ivLength(format);
+        byte[] ivs = new byte[(to - from) * ivLength];
+        SecureRandoms.nextIv(ivs);
+
+        for (int i = from; i < to; i++) {
+            out[i] = null;
+            byte[] plainBytes = plainUtf8.apply(i);
+            if (plainBytes == null) {
+                result.fail(i, "No password");
+                continue;
+            }
+            try {
+                out[i] = seal(cipher, format, secretKey, ivs, (i - from) * ivLength, plainBytes,
+                        associatedData != null ? associatedData.get(i) : null);
+            } catch (GeneralSecurityException e) {
+                result.fail(i, e.getMessage());
+            } finally {
+                Arrays.fill(plainBytes, (byte) 0);
+            }
+        }
+    }
+
+    private static void decryptRange(List<byte[]> ciphertexts, List<byte[]> associatedData, VaultKey key,
+            PlaintextSink out, BatchResult result, int from, int to) {
+        // One cipher per format, created when the first item needs it
+        Cipher cbc = null;
+        Cipher gcm = null;
+
+        for (int i = from; i < to; i++) {
+            out.accept(i, null);
+            byte[] combined = ciphertexts.get(i);
+            if (!isWellFormed(combined)) {
+                result.fail(i, "Not an encrypted password");
+                continue;
+            }
+            try {
+                Cipher cipher;
+                if (isGcm(combined[0])) {
+                    cipher = gcm != null ? gcm : (gcm = Cipher.getInstance(GCM_ALGORITHM));
+                } else {
+                    cipher = cbc != null ? cbc : (cbc = Cipher.getInstance(CBC_ALGORITHM));
+                }
+                byte[] plainBytes = open(cipher, secretKey(combined[0], key), combined,
+                        associatedData != null ? associatedData.get(i) : null);
+                out.accept(i, plainBytes);
+                Arrays.fill(plainBytes, (byte) 0);
+            } catch (GeneralSecurityException e) {
+                result.fail(i, e.getMessage());
+            }
+        }
+    }
+
+    private static void failRange(BatchResult result, int from, int to, Exception e) {
+        LOG.log(Level.ERROR, "Crypto batch failed: {0}", e.getMessage());
+        for (int i = from; i < to; i++) {
+            result.fail(i, e.getMessage());
+        }
+    }
+
+    // Work on the items from (inclusive) to (exclusive)
+    private interface BatchRange {
+        void run(int from, int to);
+    }
+
+    // Runs small batches on the caller's thread and splits large ones into
+    // chunks, the first of which also runs on the caller's thread
+    private static void runBatch(int size, boolean parallel, BatchRange range) {
+        if (!parallel || size < 2 * BATCH_CHUNK) {
+            range.run(0, size);
+            return;
+        }
+        List<Future<?>> chunks = new ArrayList<>();
+        AtomicBoolean abandoned = new AtomicBoolean();
+        for (int from = BATCH_CHUNK; from < size; from += BATCH_CHUNK) {
+            int start = from;
+            int end = Math.min(size, from + BATCH_CHUNK);
+            chunks.add(BatchPool.EXECUTOR.submit(() -> {
+                if (!abandoned.get()) {
+                    range.run(start, end);
+                }
+            }));
+        }
+        boolean completed = false;
+        try {
+            range.run(0, BATCH_CHUNK);
+            for (Future<?> chunk : chunks) {
+                try {
+                    chunk.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for a crypto batch", e);
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Crypto batch failed", e.getCause());
+                }
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                // The chunks write into the caller's arrays, so none may still be
+                // running once this throws: skip those not started yet and wait
+                // for the rest
+                abandoned.set(true);
+                awaitAll(chunks);
+            }
+        }
+    }
+
+    // Waits for every chunk to finish, ignoring their failures and deferring
+    // an interrupt until all are done
+    private static void awaitAll(List<Future<?>> chunks) {
+        boolean interrupted = false;
+        for (Future<?> chunk : chunks) {
+            while (true) {
+                try {
+                    chunk.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void checkBatch(int inputs, int outputs) {
+        if (outputs < inputs) {
+            throw new IllegalArgumentException("Output array holds " + outputs + " items, need " + inputs);
+        }
+    }
+
+    private static void checkAssociatedData(int inputs, List<byte[]> associatedData) {
+        if (associatedData != null && associatedData.size() != inputs) {
+            throw new IllegalArgumentException("Got associated data for " + associatedData.size()
+                    + " items, need " + inputs);
+        }
+    }
+
+    /**
+     * Turn a password as stored in a vault file into the raw form used by
+     * decryptBytes
+     *
+     * @param storedPassword The text from the file: "v2:" or "v3:" and Base64
+     *                       for GCM, only Base64 for CBC
+     * @return Format byte, IV and ciphertext, or null if the value is legacy
+     *         plain text
+     */
+    public static byte[] decodeStored(String storedPassword) {
+        if (storedPassword == null) {
+            return null;
+        }
+        byte format;
+        byte[] body;
         try {
-            Base64.getDecoder().decode(str);
-            // If it successfully decodes and is longer than basic encryption overhead (IV +
-            // minimal content)
-            return str.length() >= 24; // Minimum size for our encryption format
+            if (storedPassword.startsWith(GCM_USER_KEY_TAG)) {
+                format = FORMAT_GCM_USER_KEY;
+                body = Base64.getDecoder().decode(storedPassword.substring(GCM_USER_KEY_TAG.length()));
+            } else if (storedPassword.startsWith(GCM_TAG)) {
+                format = FORMAT_GCM;
+                body = Base64.getDecoder().decode(storedPassword.substring(GCM_TAG.length()));
+            } else if (storedPassword.length() >= 24) { // Minimum size of a CBC password
+                format = FORMAT_CBC;
+                body = Base64.getDecoder().decode(storedPassword);
+            } else {
+                return null;
+            }
         } catch (IllegalArgumentException e) {
-            // Not valid Base64
-            return false;
+            return null; // Not valid Base64
         }
+        byte[] combined = new byte[1 + body.length];
+        combined[0] = format;
+        System.arraycopy(body, 0, combined, 1, body.length);
+        return combined;
+    }
+
+    /**
+     * Turn a password in raw form into the text written to vault files
+     *
+     * @param combined Format byte, IV and ciphertext
+     * @return "v2:" or "v3:" and Base64 for GCM, only Base64 for CBC
+     */
+    public static String encodeStored(byte[] combined) {
+        ByteBuffer body = Base64.getEncoder().encode(ByteBuffer.wrap(combined, 1, combined.length - 1));
+        String encoded = new String(body.array(), body.arrayOffset(), body.remaining(), StandardCharsets.US_ASCII);
+        switch (combined[0]) {
+            case FORMAT_GCM:
+                return GCM_TAG + encoded;
+            case FORMAT_GCM_USER_KEY:
+                return GCM_USER_KEY_TAG + encoded;
+            default:
+                return encoded;
+        }
+    }
+
+    // Checks if a string is an encrypted password in its stored text form
+    public static boolean isEncrypted(String str) {
+        return decodeStored(str) != null;
     }
 }
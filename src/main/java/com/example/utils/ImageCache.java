@@ -0,0 +1,144 @@
+package com.example.utils;
+
+import com.example.logging.Log;
+
+import javafx.scene.control.Button;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.System.Logger.Level;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This file contains the ImageCache utility class that decodes each image
+ * resource once and shares the decoded Image across the whole application.
+ * OOP Concept: This class demonstrates the FLYWEIGHT pattern by sharing
+ * immutable Image objects between all table cells and windows.
+ */
+public class ImageCache {
+
+    private static final System.Logger LOG = Log.getLogger(ImageCache.class);
+
+    public static final String VIEW_ICON = "/com/example/images/action-icons/view-icon.png";
+    public static final String EDIT_ICON = "/com/example/images/action-icons/edit-icon.png";
+    public static final String DELETE_ICON = "/com/example/images/action-icons/delete-icon.png";
+
+    private static final int ACTION_ICON_SIZE = 16;
+    private static final int BYTES_PER_PIXEL = 4; // Decoded images are stored as 32-bit ARGB
+
+    // Missing resources are cached as empty so they are not looked up again
+    private static final Map<String, Optional<Image>> IMAGES = new ConcurrentHashMap<>();
+    private static final AtomicLong REQUESTS = new AtomicLong();
+    private static final AtomicLong DECODES = new AtomicLong();
+    private static final AtomicLong BYTES_SAVED = new AtomicLong();
+
+    /**
+     * Get the shared image for a classpath resource
+     *
+     * @param resourcePath Absolute resource path of the image
+     * @return The decoded image, or null if the resource does not exist
+     */
+    public static Image getImage(String resourcePath) {
+        REQUESTS.incrementAndGet();
+        boolean[] decoded = { false };
+        Optional<Image> image = IMAGES.computeIfAbsent(resourcePath, path -> {
+            decoded[0] = true;
+            return decode(path);
+        });
+
+        if (!decoded[0]) {
+            image.ifPresent(img -> BYTES_SAVED.addAndGet(estimateBytes(img)));
+        }
+        return image.orElse(null);
+    }
+
+    /**
+     * Set a cached icon as the graphic of an action button, keeping the text
+     * fallback when the icon is not available
+     *
+     * @param button       The button to decorate
+     * @param resourcePath Absolute resource path of the icon
+     * @param fallbackText Text shown when the icon cannot be loaded
+     */
+    public static void applyActionIcon(Button button, String resourcePath, String fallbackText) {
+        Image image = getImage(resourcePath);
+        if (image != null) {
+            // ImageView nodes cannot be shared between cells, but the Image they show can
+            ImageView icon = new ImageView(image);
+            icon.setFitHeight(ACTION_ICON_SIZE);
+            icon.setFitWidth(ACTION_ICON_SIZE);
+            button.setGraphic(icon);
+            button.setText("");
+        } else {
+            button.setText(fallbackText); // Keep emoji fallback if icon not found
+        }
+    }
+
+    /**
+     * Get how many times an image was requested from the cache
+     *
+     * @return Number of requests
+     */
+    public static long getRequestCount() {
+        return REQUESTS.get();
+    }
+
+    /**
+     * Get how many images were actually decoded
+     *
+     * @return Number of decodes
+     */
+    public static long getDecodeCount() {
+        return DECODES.get();
+    }
+
+    /**
+     * Get an estimate of the bitmap memory that would have been allocated
+     * without the cache
+     *
+     * @return Saved bytes of decoded pixel data
+     */
+    public static long getBytesSaved() {
+        return BYTES_SAVED.get();
+    }
+
+    /**
+     * Describe the cache statistics in one line
+     *
+     * @return Human readable statistics
+     */
+    public static String getStatsSummary() {
+        return String.format("Image cache: %d requests, %d decodes, ~%.1f KB of bitmaps shared",
+                getRequestCount(), getDecodeCount(), getBytesSaved() / 1024.0);
+    }
+
+    // Decodes an image resource, returning empty if it is missing or unreadable
+    private static Optional<Image> decode(String resourcePath) {
+        try (InputStream stream = ImageCache.class.getResourceAsStream(resourcePath)) {
+            if (stream == null) {
+                LOG.log(Level.WARNING, "Image resource not found: {0}", resourcePath);
+                return Optional.empty();
+            }
+            Image image = new Image(stream);
+            if (image.isError()) {
+                LOG.log(Level.WARNING, "Could not decode image {0}: {1}", resourcePath, image.getException());
+                return Optional.empty();
+            }
+            DECODES.incrementAndGet();
+            return Optional.of(image);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Could not load image {0}: {1}", resourcePath, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    // Estimates the size of an image's decoded pixel buffer
+    private static long estimateBytes(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight() * BYTES_PER_PIXEL;
+    }
+}
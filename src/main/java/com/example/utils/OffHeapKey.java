@@ -0,0 +1,168 @@
+package com.example.utils;
+
+import javax.crypto.SecretKey;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * This file contains the OffHeapKey class, a secret key whose bytes are kept
+ * in direct memory outside the Java heap.
+ * A SecretKeySpec keeps its bytes in a heap array: the garbage collector may
+ * copy it around, it appears in heap dumps and it cannot be destroyed. Here
+ * the bytes live in one direct buffer that never moves, and they are copied
+ * to the heap only while a cipher is initialised: getEncoded hands out a
+ * fresh copy each time, which providers use to set up the cipher. After
+ * destroy, or when the process shuts down, the buffer is overwritten with
+ * zeros and getEncoded returns null, so a cipher can no longer be set up
+ * with the key.
+ * The memory is not locked against swapping; Java has no way to do that
+ * without native code. A provider may also keep its own copy inside an
+ * initialised cipher (the JDK's AES/GCM does) until that cipher is collected.
+ * OOP Concept: This class demonstrates ENCAPSULATION by never giving out the
+ * key material itself, only short-lived copies of it.
+ */
+public final class OffHeapKey implements SecretKey {
+
+    private static final long serialVersionUID = 1L;
+
+    // Key material of every key not yet destroyed, wiped at shutdown
+    private static final Set<Material> LIVE = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(OffHeapKey::destroyAll, "key-wipe"));
+    }
+
+    private final String algorithm;
+    private final transient Material material;
+
+    // The direct buffer and the lock that keeps reads from seeing a half-wiped key
+    private static final class Material {
+        private final ByteBuffer bytes;
+        private final StampedLock lock = new StampedLock();
+        private boolean wiped;
+
+        private Material(int length) {
+            this.bytes = ByteBuffer.allocateDirect(length);
+        }
+
+        private byte[] copy() {
+            long stamp = lock.tryOptimisticRead();
+            byte[] copy = new byte[bytes.capacity()];
+            bytes.get(0, copy);
+            boolean wasWiped = wiped;
+            if (!lock.validate(stamp)) {
+                // Being wiped right now; read again once that is done
+                stamp = lock.readLock();
+                try {
+                    bytes.get(0, copy);
+                    wasWiped = wiped;
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            if (wasWiped) {
+                Arrays.fill(copy, (byte) 0);
+                return null;
+            }
+            return copy;
+        }
+
+        private void wipe() {
+            long stamp = lock.writeLock();
+            try {
+                for (int i = 0; i < bytes.capacity(); i++) {
+                    bytes.put(i, (byte) 0);
+                }
+                wiped = true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    private OffHeapKey(byte[] keyBytes, String algorithm) {
+        this.algorithm = algorithm;
+        this.material = new Material(keyBytes.length);
+        material.bytes.put(0, keyBytes);
+        LIVE.add(material);
+    }
+
+    /**
+     * Move key bytes off the heap
+     *
+     * @param keyBytes  The raw key; overwritten with zeros once copied
+     * @param algorithm The key's algorithm, such as "AES"
+     * @return A key that holds the only remaining copy
+     */
+    public static OffHeapKey take(byte[] keyBytes, String algorithm) {
+        try {
+            return new OffHeapKey(keyBytes, algorithm);
+        } finally {
+            Arrays.fill(keyBytes, (byte) 0);
+        }
+    }
+
+    /**
+     * Wipe every key that has not been destroyed yet; runs at shutdown
+     */
+    static void destroyAll() {
+        for (Material live : LIVE) {
+            live.wipe();
+        }
+        LIVE.clear();
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    @Override
+    public String getFormat() {
+        return "RAW";
+    }
+
+    /**
+     * Copy the key bytes, for a provider initialising a cipher
+     *
+     * @return A new array the caller should wipe, or null once the key has
+     *         been destroyed
+     */
+    @Override
+    public byte[] getEncoded() {
+        return material.copy();
+    }
+
+    // Overwrites the key bytes; ciphers set up afterwards fail
+    @Override
+    public void destroy() {
+        material.wipe();
+        LIVE.remove(material);
+    }
+
+    @Override
+    public boolean isDestroyed() {
+        long stamp = material.lock.readLock();
+        try {
+            return material.wiped;
+        } finally {
+            material.lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapKey[" + algorithm + ", " + material.bytes.capacity() * 8 + " bits"
+                + (isDestroyed() ? ", destroyed" : "") + "]";
+    }
+
+    // Key material must never be written to a stream
+    private void writeObject(ObjectOutputStream out) throws NotSerializableException {
+        throw new NotSerializableException(OffHeapKey.class.getName());
+    }
+}
@@ -1,32 +1,132 @@
 package com.example.utils;
 
+import com.example.logging.Log;
+import com.example.metrics.FlightRecording;
+import com.example.metrics.Metrics;
+import com.example.metrics.PasswordHashEvent;
+import com.example.metrics.Timer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.System.Logger.Level;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * Utility class for password hashing and verification
+ * Utility class for password hashing and verification.
+ * Stored hashes name their scheme, so new schemes can be added without
+ * breaking old hashes: "pbkdf2-sha256$iterations$salt$hash" for current
+ * hashes and "salt:hash" (one round of SHA-256) for hashes from older
+ * versions. The PBKDF2 iteration count is calibrated once per deployment to
+ * take about pm.login.hashMillis on its hardware (saved in
+ * login-hash.properties in the data directory), or fixed with
+ * pm.login.iterations; hashes below it are replaced at the next login.
+ * Verification allocates nothing per attempt once warm: stored hashes are
+ * parsed once per user and cached in binary form, and PBKDF2-HMAC-SHA256 is
+ * computed here on pooled SHA-256 digests and buffers rather than through
+ * SecretKeyFactory, which looks up a provider and allocates per iteration.
+ * Before the first hash, that code is checked against known answers of the
+ * JDK's PBKDF2WithHmacSHA256 and RFC 7914, and refuses to hash on a mismatch.
  */
 public class PasswordUtils {
 
+    private static final System.Logger LOG = Log.getLogger(PasswordUtils.class);
+
     private static final String HASH_ALGORITHM = "SHA-256";
-    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final String PBKDF2_SCHEME = "pbkdf2-sha256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BYTES = 32;
+    private static final int SHA256_BLOCK_BYTES = 64;
+    private static final Timer VERIFY_TIMER = Metrics.timer(Metrics.VERIFY_PASSWORD);
+
+    // Target time of one login hash, configurable with -Dpm.login.hashMillis
+    private static final long TARGET_MILLIS = Long.getLong("pm.login.hashMillis", 100);
+    // Bounds for the calibrated iteration count
+    private static final int MIN_ITERATIONS = 100_000;
+    private static final int MAX_ITERATIONS = 10_000_000;
+    private static final int PROBE_ITERATIONS = 10_000;
+    private static final long CALIBRATION_MILLIS = Long.getLong("pm.login.calibrationMillis", 2000);
+    // Saved result, so each deployment calibrates once rather than per start
+    private static final String CALIBRATION_FILE = "login-hash.properties";
+
+    // Schemes by the name at the start of a stored hash
+    private static final Map<String, HashScheme> SCHEMES = Map.of(PBKDF2_SCHEME, new Pbkdf2Scheme());
+    private static final HashScheme LEGACY_SCHEME = new Sha256Scheme();
+
+    // Parsed hashes by username; an entry is used only while it was parsed
+    // from the user's current stored hash, so a changed hash is reparsed
+    private static final Map<String, ParsedHash> PARSED_HASHES = new ConcurrentHashMap<>();
+
+    // Idle hash contexts. Logins on the API run on virtual threads, which
+    // would each get a new ThreadLocal, so contexts are pooled instead.
+    private static final AtomicReferenceArray<HashContext> CONTEXTS =
+            new AtomicReferenceArray<>(Runtime.getRuntime().availableProcessors() * 2);
+
+    // Calibrates once, the first time the iteration count is needed
+    private static class IterationsHolder {
+        private static final int ITERATIONS = chooseIterations();
+        // A calibrated count varies a little between runs; only clearly
+        // weaker hashes are replaced, so logins do not keep rewriting them
+        private static final int REHASH_BELOW = Integer.getInteger("pm.login.iterations") != null
+                ? ITERATIONS
+                : ITERATIONS / 4 * 3;
+    }
+
+    // A way of hashing login passwords
+    private interface HashScheme {
+        // Decodes a stored hash of this scheme, or returns null if it is malformed
+        ParsedHash parse(String storedHash);
+
+        // Checks the password held by the context against a parsed hash
+        boolean verify(HashContext context, ParsedHash hash) throws DigestException;
+
+        // Checks whether a stored hash is weaker than new hashes would be
+        boolean needsRehash(String storedHash);
+    }
+
+    // A stored hash decoded to the values verification needs
+    private static final class ParsedHash {
+        private final String source;
+        private final HashScheme scheme;
+        private final int iterations;
+        private final byte[] salt;
+        private final byte[] hash;
+
+        private ParsedHash(String source, HashScheme scheme, int iterations, byte[] salt, byte[] hash) {
+            this.source = source;
+            this.scheme = scheme;
+            this.iterations = iterations;
+            this.salt = salt;
+            this.hash = hash;
+        }
+    }
 
     /**
      * Generate a salt for password hashing
-     * 
+     *
      * @return Base64 encoded salt
      */
     public static String generateSalt() {
-        byte[] salt = new byte[16];
-        RANDOM.nextBytes(salt);
-        return Base64.getEncoder().encodeToString(salt);
+        return Base64.getEncoder().encodeToString(newSalt());
     }
 
     /**
-     * Hash a password with salt
-     * 
+     * Hash a password with salt using the legacy scheme (one round of
+     * SHA-256); only used to check hashes created by older versions
+     *
      * @param password The plain text password
      * @param salt     The salt to use
      * @return Base64 encoded hash
@@ -43,36 +143,545 @@ public class PasswordUtils {
     }
 
     /**
-     * Create a password hash with embedded salt
-     * 
+     * Create a password hash with embedded scheme, cost and salt
+     *
      * @param password The plain text password
-     * @return String in format "salt:hash"
+     * @return String in format "pbkdf2-sha256$iterations$salt$hash"
      */
     public static String createPasswordHash(String password) {
-        String salt = generateSalt();
-        String hash = hashPassword(password, salt);
-        return salt + ":" + hash;
+        return createPasswordHash(password, IterationsHolder.ITERATIONS);
+    }
+
+    /**
+     * Create a password hash with a given cost, for example to generate test
+     * data quickly; such hashes are replaced at the user's next login
+     *
+     * @param password   The plain text password
+     * @param iterations PBKDF2 iteration count
+     * @return String in format "pbkdf2-sha256$iterations$salt$hash"
+     */
+    public static String createPasswordHash(String password, int iterations) {
+        try (Secret secret = Secret.wrap(password.toCharArray())) {
+            return createPasswordHash(secret, iterations);
+        }
+    }
+
+    /**
+     * Create a password hash with embedded scheme, cost and salt
+     *
+     * @param password The plain text password; read, not closed
+     * @return String in format "pbkdf2-sha256$iterations$salt$hash"
+     */
+    public static String createPasswordHash(Secret password) {
+        return createPasswordHash(password, IterationsHolder.ITERATIONS);
+    }
+
+    private static String createPasswordHash(Secret password, int iterations) {
+        PasswordHashEvent event = FlightRecording.isEnabled() ? new PasswordHashEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        char[] chars = password.chars();
+        HashContext context = borrowContext();
+        try {
+            byte[] salt = newSalt();
+            context.setPassword(chars);
+            context.pbkdf2(salt, iterations);
+            Base64.Encoder base64 = Base64.getEncoder();
+            return PBKDF2_SCHEME + "$" + iterations + "$" + base64.encodeToString(salt) + "$"
+                    + base64.encodeToString(context.result);
+        } catch (DigestException e) {
+            throw new RuntimeException("Error hashing password", e);
+        } finally {
+            releaseContext(context);
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.operation = "create";
+                    event.commit();
+                }
+            }
+        }
     }
 
     /**
      * Verify a password against a stored hash
-     * 
+     *
      * @param password   The plain text password to verify
-     * @param storedHash The stored hash in format "salt:hash"
+     * @param storedHash The stored hash in any supported format
      * @return true if password matches
      */
     public static boolean verifyPassword(String password, String storedHash) {
+        char[] chars = password.toCharArray();
+        try {
+            return verifyPassword(chars, storedHash);
+        } finally {
+            Arrays.fill(chars, '\0');
+        }
+    }
+
+    /**
+     * Verify a password against a stored hash, parsing the hash on each call
+     *
+     * @param password   The password to verify; not modified
+     * @param storedHash The stored hash in any supported format
+     * @return true if password matches
+     */
+    public static boolean verifyPassword(char[] password, String storedHash) {
+        return verify(password, parse(storedHash));
+    }
+
+    /**
+     * Verify a user's password at login. The user's stored hash is parsed
+     * once and kept in binary form, so repeated logins only run the hash.
+     *
+     * @param username   The user the hash belongs to, as stored
+     * @param password   The password to verify; not modified
+     * @param storedHash The user's stored hash in any supported format
+     * @return true if password matches
+     */
+    public static boolean verifyPassword(String username, char[] password, String storedHash) {
+        ParsedHash parsed = PARSED_HASHES.get(username);
+        if (parsed == null || !parsed.source.equals(storedHash)) {
+            parsed = parse(storedHash);
+            if (parsed != null) {
+                PARSED_HASHES.put(username, parsed);
+            }
+        }
+        return verify(password, parsed);
+    }
+
+    /**
+     * Verify a user's password at login
+     *
+     * @see #verifyPassword(String, char[], String)
+     */
+    public static boolean verifyPassword(String username, Secret password, String storedHash) {
+        return verifyPassword(username, password.chars(), storedHash);
+    }
+
+    /**
+     * Drop a user's cached parsed hash, for example when the user is deleted
+     *
+     * @param username The user, as stored
+     */
+    public static void forgetUser(String username) {
+        PARSED_HASHES.remove(username);
+    }
+
+    /**
+     * Check whether a stored hash should be replaced by a new one, because it
+     * uses an older scheme or fewer iterations than this deployment's cost.
+     * Only call this after the password was verified.
+     *
+     * @param storedHash The stored hash
+     * @return true if the hash should be recreated from the password
+     */
+    public static boolean needsRehash(String storedHash) {
+        HashScheme scheme = schemeOf(storedHash);
+        return scheme != null && scheme.needsRehash(storedHash);
+    }
+
+    /**
+     * Get the iteration count of new hashes, calibrating it on first use.
+     * Long-running entry points call this at startup so the first login
+     * does not wait for the calibration.
+     *
+     * @return PBKDF2 iteration count
+     */
+    public static int getIterations() {
+        return IterationsHolder.ITERATIONS;
+    }
+
+    private static boolean verify(char[] password, ParsedHash parsed) {
+        long start = VERIFY_TIMER.start();
+        PasswordHashEvent event = FlightRecording.isEnabled() ? new PasswordHashEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        boolean matched = false;
+        HashContext context = parsed != null && password != null ? borrowContext() : null;
         try {
+            if (context != null) {
+                context.setPassword(password);
+                matched = parsed.scheme.verify(context, parsed);
+            }
+            return matched;
+        } catch (DigestException e) {
+            return false;
+        } finally {
+            if (context != null) {
+                releaseContext(context);
+            }
+            VERIFY_TIMER.stop(start);
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.operation = "verify";
+                    event.matched = matched;
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    private static ParsedHash parse(String storedHash) {
+        HashScheme scheme = schemeOf(storedHash);
+        return scheme != null ? scheme.parse(storedHash) : null;
+    }
+
+    private static HashScheme schemeOf(String storedHash) {
+        if (storedHash == null) {
+            return null;
+        }
+        int end = storedHash.indexOf('$');
+        if (end < 0) {
+            return storedHash.indexOf(':') > 0 ? LEGACY_SCHEME : null;
+        }
+        return SCHEMES.get(storedHash.substring(0, end));
+    }
+
+    // "pbkdf2-sha256$iterations$salt$hash"
+    private static class Pbkdf2Scheme implements HashScheme {
+        @Override
+        public ParsedHash parse(String storedHash) {
+            String[] parts = storedHash.split("\\$");
+            if (parts.length != 4) {
+                return null;
+            }
+            try {
+                byte[] hash = Base64.getDecoder().decode(parts[3]);
+                int iterations = Integer.parseInt(parts[1]);
+                if (hash.length != HASH_BYTES || iterations < 1) {
+                    return null;
+                }
+                return new ParsedHash(storedHash, this, iterations, Base64.getDecoder().decode(parts[2]), hash);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean verify(HashContext context, ParsedHash hash) throws DigestException {
+            context.pbkdf2(hash.salt, hash.iterations);
+            // Compares every byte, so timing does not reveal how much matched
+            return MessageDigest.isEqual(context.result, hash.hash);
+        }
+
+        @Override
+        public boolean needsRehash(String storedHash) {
+            int start = storedHash.indexOf('$') + 1;
+            int end = storedHash.indexOf('$', start);
+            try {
+                return end < 0 || Integer.parseInt(storedHash, start, end, 10) < IterationsHolder.REHASH_BELOW;
+            } catch (NumberFormatException e) {
+                return true;
+            }
+        }
+    }
+
+    // "salt:hash" with one round of SHA-256, from older versions
+    private static class Sha256Scheme implements HashScheme {
+        @Override
+        public ParsedHash parse(String storedHash) {
             String[] parts = storedHash.split(":");
             if (parts.length != 2) {
-                return false;
+                return null;
             }
-            String salt = parts[0];
-            String hash = parts[1];
-            String testHash = hashPassword(password, salt);
-            return hash.equals(testHash);
-        } catch (Exception e) {
-            return false;
+            try {
+                byte[] hash = Base64.getDecoder().decode(parts[1]);
+                if (hash.length != HASH_BYTES) {
+                    return null;
+                }
+                return new ParsedHash(storedHash, this, 1, Base64.getDecoder().decode(parts[0]), hash);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean verify(HashContext context, ParsedHash hash) throws DigestException {
+            context.sha256(hash.salt);
+            return MessageDigest.isEqual(context.result, hash.hash);
+        }
+
+        @Override
+        public boolean needsRehash(String storedHash) {
+            return true;
+        }
+    }
+
+    // A SHA-256 digest and the buffers for hashing one password at a time.
+    // HMAC is built on the digest directly: Mac.doFinal allocates its result
+    // on every call, and PBKDF2 calls it once per iteration.
+    private static final class HashContext {
+        private final MessageDigest sha256;
+        private final byte[] innerPad = new byte[SHA256_BLOCK_BYTES];
+        private final byte[] outerPad = new byte[SHA256_BLOCK_BYTES];
+        private final byte[] innerHash = new byte[HASH_BYTES];
+        private final byte[] block = new byte[HASH_BYTES];
+        private final byte[] result = new byte[HASH_BYTES];
+        private final byte[] blockIndex = new byte[4];
+        private byte[] password = new byte[SHA256_BLOCK_BYTES];
+        private int passwordLength;
+
+        private HashContext() {
+            try {
+                sha256 = MessageDigest.getInstance(HASH_ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("Error hashing password", e);
+            }
+        }
+
+        // Encodes the password as UTF-8 like PBEKeySpec and String.getBytes
+        // do, replacing unpaired surrogates with '?'
+        private void setPassword(char[] chars) {
+            if (password.length < chars.length * 3) {
+                Arrays.fill(password, (byte) 0);
+                password = new byte[chars.length * 3];
+            }
+            int length = 0;
+            for (int i = 0; i < chars.length; i++) {
+                char c = chars[i];
+                if (c < 0x80) {
+                    password[length++] = (byte) c;
+                } else if (c < 0x800) {
+                    password[length++] = (byte) (0xC0 | c >> 6);
+                    password[length++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate(c) && i + 1 < chars.length
+                        && Character.isLowSurrogate(chars[i + 1])) {
+                    int codePoint = Character.toCodePoint(c, chars[++i]);
+                    password[length++] = (byte) (0xF0 | codePoint >> 18);
+                    password[length++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                    password[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                    password[length++] = (byte) (0x80 | codePoint & 0x3F);
+                } else if (Character.isSurrogate(c)) {
+                    password[length++] = '?';
+                } else {
+                    password[length++] = (byte) (0xE0 | c >> 12);
+                    password[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    password[length++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+            passwordLength = length;
+        }
+
+        // result = SHA-256(salt + password), the legacy scheme
+        private void sha256(byte[] salt) throws DigestException {
+            sha256.update(salt);
+            sha256.update(password, 0, passwordLength);
+            sha256.digest(result, 0, HASH_BYTES);
+        }
+
+        // result = PBKDF2-HMAC-SHA256(password, salt, iterations), one block
+        private void pbkdf2(byte[] salt, int iterations) throws DigestException {
+            pbkdf2(salt, iterations, 1);
+        }
+
+        // result = block number blockNumber (from 1) of the PBKDF2 output;
+        // hashes use only the first, the known answers check the second too
+        private void pbkdf2(byte[] salt, int iterations, int blockNumber) throws DigestException {
+            blockIndex[0] = (byte) (blockNumber >>> 24);
+            blockIndex[1] = (byte) (blockNumber >>> 16);
+            blockIndex[2] = (byte) (blockNumber >>> 8);
+            blockIndex[3] = (byte) blockNumber;
+            // HMAC keys longer than a block are hashed first
+            byte[] key = password;
+            int keyLength = passwordLength;
+            if (keyLength > SHA256_BLOCK_BYTES) {
+                sha256.update(password, 0, passwordLength);
+                sha256.digest(innerHash, 0, HASH_BYTES);
+                key = innerHash;
+                keyLength = HASH_BYTES;
+            }
+            for (int i = 0; i < SHA256_BLOCK_BYTES; i++) {
+                byte k = i < keyLength ? key[i] : 0;
+                innerPad[i] = (byte) (k ^ 0x36);
+                outerPad[i] = (byte) (k ^ 0x5c);
+            }
+
+            sha256.update(innerPad);
+            sha256.update(salt);
+            sha256.update(blockIndex);
+            finishHmac();
+            System.arraycopy(block, 0, result, 0, HASH_BYTES);
+            for (int n = 1; n < iterations; n++) {
+                sha256.update(innerPad);
+                sha256.update(block);
+                finishHmac();
+                for (int i = 0; i < HASH_BYTES; i++) {
+                    result[i] ^= block[i];
+                }
+            }
+        }
+
+        // Completes the HMAC whose message followed innerPad, into block
+        private void finishHmac() throws DigestException {
+            sha256.digest(innerHash, 0, HASH_BYTES);
+            sha256.update(outerPad);
+            sha256.update(innerHash);
+            sha256.digest(block, 0, HASH_BYTES);
+        }
+
+        private void wipe() {
+            sha256.reset();
+            Arrays.fill(password, (byte) 0);
+            Arrays.fill(innerPad, (byte) 0);
+            Arrays.fill(outerPad, (byte) 0);
+            Arrays.fill(innerHash, (byte) 0);
+            Arrays.fill(block, (byte) 0);
+            Arrays.fill(result, (byte) 0);
+            passwordLength = 0;
+        }
+    }
+
+    // PBKDF2-HMAC-SHA256 outputs of the JDK's PBKDF2WithHmacSHA256, checked
+    // once before the first hash since HashContext builds it by hand. The
+    // first is also the RFC 7914 (section 11) vector. Iteration counts are
+    // small so the check costs little at startup. Together they cover
+    // both blocks of a 64-byte output, repeated iterations, a password longer
+    // than an HMAC block (hashed to a key first) and characters outside ASCII.
+    private static final class KnownAnswers {
+        // Password, salt, iterations, expected output in hex
+        private static final String[][] VECTORS = {
+                {"passwd", "salt", "1", "55ac046e56e3089fec1691c22544b605f94185216dde0465e68b9d57c20dacbc"
+                        + "49ca9cccf179b645991664b39d77ef317c71b845b1e30bd509112041d3a19783"},
+                {"passwordPASSWORDpassword", "saltSALTsaltSALTsaltSALTsaltSALTsalt", "16",
+                        "397fd414ca969278991f8218c31fdabb04d862416a6ba16cf8873c02ba8f43f5"},
+                {"password".repeat(12) + "!", "saltSALT", "2",
+                        "117f25a11c1b1313d19f46bfe2658c8dc39962bd84e67f0dc4dea6c39c78198e"
+                        + "f816fa4d22c33c699c49844d10a75ee867c638e1cc2c2f19958f1ce19a2a2a05"},
+                {"p\u00e4ssw\u00f6rd\u20ac\uD83D\uDE00", "salt", "3",
+                        "c0dce06afd292fe040dfeada9eb3c51d362574f93a21f3a9e84cd3de2f5df1d1"
+                        + "69e6083a56981b310ad7486f3f04e9d6500c27b085340dba4da122a9b72e6cae"},
+        };
+        // Null if every answer matched, otherwise what did not
+        private static final String MISMATCH = check();
+
+        private static String check() {
+            HashContext context = new HashContext();
+            try {
+                for (int i = 0; i < VECTORS.length; i++) {
+                    String[] vector = VECTORS[i];
+                    byte[] salt = vector[1].getBytes(StandardCharsets.UTF_8);
+                    byte[] expected = HexFormat.of().parseHex(vector[3]);
+                    context.setPassword(vector[0].toCharArray());
+                    for (int block = 1; block * HASH_BYTES <= expected.length; block++) {
+                        context.pbkdf2(salt, Integer.parseInt(vector[2]), block);
+                        if (!Arrays.equals(context.result, 0, HASH_BYTES,
+                                expected, (block - 1) * HASH_BYTES, block * HASH_BYTES)) {
+                            String mismatch = "vector " + (i + 1) + ", block " + block;
+                            LOG.log(Level.ERROR, "Login hashing differs from PBKDF2WithHmacSHA256 at {0}", mismatch);
+                            return mismatch;
+                        }
+                    }
+                }
+                return null;
+            } catch (DigestException e) {
+                return e.getMessage();
+            } finally {
+                context.wipe();
+            }
+        }
+    }
+
+    // Takes an idle context, starting at a slot picked by the thread so
+    // concurrent logins rarely try the same slots
+    private static HashContext borrowContext() {
+        // A wrong hash would lock users out or weaken their hashes; refuse instead
+        if (KnownAnswers.MISMATCH != null) {
+            throw new IllegalStateException("Login hashing failed its known-answer check: " + KnownAnswers.MISMATCH);
+        }
+        int slots = CONTEXTS.length();
+        int first = (int) (Thread.currentThread().threadId() % slots);
+        for (int i = 0; i < slots; i++) {
+            HashContext context = CONTEXTS.getAndSet((first + i) % slots, null);
+            if (context != null) {
+                return context;
+            }
+        }
+        return new HashContext();
+    }
+
+    // Wipes a context and returns it to the pool, or drops it if the pool is full
+    private static void releaseContext(HashContext context) {
+        context.wipe();
+        int slots = CONTEXTS.length();
+        int first = (int) (Thread.currentThread().threadId() % slots);
+        for (int i = 0; i < slots; i++) {
+            if (CONTEXTS.compareAndSet((first + i) % slots, null, context)) {
+                return;
+            }
+        }
+    }
+
+    private static byte[] newSalt() {
+        byte[] salt = new byte[SALT_BYTES];
+        SecureRandoms.get().nextBytes(salt);
+        return salt;
+    }
+
+    // Uses -Dpm.login.iterations if set, then the count saved by an earlier
+    // calibration for the same target, and only otherwise calibrates
+    private static int chooseIterations() {
+        Integer fixed = Integer.getInteger("pm.login.iterations");
+        if (fixed != null) {
+            return fixed;
+        }
+        Path settingsFile = Paths.get(DataManager.getAppDataDir(), CALIBRATION_FILE);
+        Properties settings = new Properties();
+        if (Files.exists(settingsFile)) {
+            try (Reader reader = Files.newBufferedReader(settingsFile)) {
+                settings.load(reader);
+                if (String.valueOf(TARGET_MILLIS).equals(settings.getProperty("targetMillis"))) {
+                    return Integer.parseInt(settings.getProperty("iterations"));
+                }
+            } catch (IOException | NumberFormatException e) {
+                LOG.log(Level.WARNING, "Ignoring unreadable {0}: {1}", settingsFile, e.getMessage());
+            }
+        }
+
+        int iterations = calibrate();
+        settings.setProperty("targetMillis", String.valueOf(TARGET_MILLIS));
+        settings.setProperty("iterations", String.valueOf(iterations));
+        try {
+            Files.createDirectories(settingsFile.getParent());
+            try (Writer writer = Files.newBufferedWriter(settingsFile)) {
+                settings.store(writer, "Login hash cost for this machine, delete to recalibrate");
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Could not save {0}: {1}", settingsFile, e.getMessage());
+        }
+        return iterations;
+    }
+
+    // Times short PBKDF2 runs for CALIBRATION_MILLIS and scales the fastest
+    // to the target login time. Early runs are slow until the JIT has
+    // compiled SHA-256, so the probing runs for a fixed time rather than
+    // a fixed number of runs.
+    private static int calibrate() {
+        HashContext context = borrowContext();
+        try {
+            byte[] salt = new byte[SALT_BYTES];
+            context.setPassword("calibration".toCharArray());
+            long best = Long.MAX_VALUE;
+            long deadline = System.nanoTime() + CALIBRATION_MILLIS * 1_000_000L;
+            do {
+                long start = System.nanoTime();
+                context.pbkdf2(salt, PROBE_ITERATIONS);
+                best = Math.min(best, System.nanoTime() - start);
+            } while (System.nanoTime() < deadline);
+
+            long scaled = PROBE_ITERATIONS * (TARGET_MILLIS * 1_000_000L) / Math.max(1, best);
+            int iterations = (int) Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, scaled / 1000 * 1000));
+            LOG.log(Level.INFO, "Login hashing calibrated to {0} iterations for about {1} ms",
+                    String.valueOf(iterations), TARGET_MILLIS);
+            return iterations;
+        } catch (DigestException e) {
+            LOG.log(Level.ERROR, "Login hash calibration failed: {0}", e.getMessage());
+            return MIN_ITERATIONS;
+        } finally {
+            releaseContext(context);
         }
     }
 }
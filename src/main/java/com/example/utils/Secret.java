@@ -0,0 +1,177 @@
+package com.example.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This file contains the Secret class, a password or other plaintext kept in
+ * a char array that is overwritten with zeros when it is no longer needed.
+ * A String cannot be wiped and stays on the heap until it is collected, so
+ * plaintext passwords travel between the forms, the entry model, the
+ * encryption code and login as Secrets instead. Each Secret has one owner
+ * that closes it, preferably with try-with-resources; methods that return a
+ * Secret hand ownership to the caller, and methods that take one only read
+ * it unless they say otherwise. A String is only made where a screen or a
+ * response needs one.
+ * OOP Concept: This class demonstrates ENCAPSULATION by keeping the
+ * characters private and controlling how long they exist.
+ */
+public final class Secret implements AutoCloseable {
+
+    private final char[] chars;
+    private boolean wiped;
+
+    private Secret(char[] chars) {
+        this.chars = chars;
+    }
+
+    /**
+     * Take ownership of a char array; it is wiped when the Secret is closed
+     *
+     * @param chars The characters, not copied
+     * @return A Secret over the array
+     */
+    public static Secret wrap(char[] chars) {
+        return new Secret(chars);
+    }
+
+    /**
+     * Copy characters, for example from a password field's content, without
+     * making a String of them
+     *
+     * @param text The characters to copy
+     * @return A new Secret
+     */
+    public static Secret copyOf(CharSequence text) {
+        char[] chars = new char[text.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = text.charAt(i);
+        }
+        return new Secret(chars);
+    }
+
+    /**
+     * Copy characters without leading and trailing whitespace, like
+     * String.trim
+     *
+     * @param text The characters to copy
+     * @return A new Secret
+     */
+    public static Secret copyOfTrimmed(CharSequence text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return copyOf(text.subSequence(start, end));
+    }
+
+    /**
+     * Decode UTF-8 bytes, for example a decrypted password. Malformed input
+     * is replaced like new String(bytes, UTF_8) does.
+     *
+     * @param bytes  The bytes; not modified, the caller wipes them
+     * @param offset Where the text starts
+     * @param length Number of bytes
+     * @return A new Secret
+     */
+    public static Secret fromUtf8(byte[] bytes, int offset, int length) {
+        CharBuffer decoded = null;
+        try {
+            decoded = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .decode(ByteBuffer.wrap(bytes, offset, length));
+            return new Secret(Arrays.copyOfRange(decoded.array(), 0, decoded.limit()));
+        } catch (CharacterCodingException e) {
+            throw new IllegalStateException("UTF-8 decoding with replacement cannot fail", e);
+        } finally {
+            if (decoded != null) {
+                Arrays.fill(decoded.array(), '\0');
+            }
+        }
+    }
+
+    /**
+     * Encode as UTF-8, for example to encrypt it
+     *
+     * @return A new array the caller must wipe
+     */
+    public byte[] toUtf8() {
+        ByteBuffer encoded = null;
+        try {
+            encoded = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .encode(CharBuffer.wrap(chars()));
+            return Arrays.copyOfRange(encoded.array(), 0, encoded.limit());
+        } catch (CharacterCodingException e) {
+            throw new IllegalStateException("UTF-8 encoding with replacement cannot fail", e);
+        } finally {
+            if (encoded != null) {
+                Arrays.fill(encoded.array(), (byte) 0);
+            }
+        }
+    }
+
+    /**
+     * Get the characters to read them; the array stays owned by this Secret
+     * and is wiped when it is closed
+     *
+     * @return The characters, not a copy
+     */
+    public char[] chars() {
+        if (wiped) {
+            throw new IllegalStateException("Secret was already wiped");
+        }
+        return chars;
+    }
+
+    public int length() {
+        return chars.length;
+    }
+
+    public boolean isEmpty() {
+        return chars.length == 0;
+    }
+
+    /**
+     * Copy this Secret, for an owner that needs its own
+     *
+     * @return A new Secret with the same characters
+     */
+    public Secret copy() {
+        return new Secret(chars().clone());
+    }
+
+    /**
+     * Overwrite the characters with zeros; further reads fail
+     */
+    public void wipe() {
+        Arrays.fill(chars, '\0');
+        wiped = true;
+    }
+
+    public boolean isWiped() {
+        return wiped;
+    }
+
+    // Same as wipe, so a Secret can be used with try-with-resources
+    @Override
+    public void close() {
+        wipe();
+    }
+
+    // Never shows the characters, so a Secret can be logged by mistake safely
+    @Override
+    public String toString() {
+        return "Secret[" + chars.length + " chars]";
+    }
+}
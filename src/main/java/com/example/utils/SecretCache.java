@@ -0,0 +1,220 @@
+package com.example.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This file contains the SecretCache utility class that keeps recently
+ * decrypted passwords for a short time, so revealing, editing or copying the
+ * same entry again does not decrypt it again.
+ * The cache is small and short-lived on purpose: it holds at most a few dozen
+ * secrets, each for a limited time, as Secrets that are overwritten with
+ * zeros when they are evicted, expire or the user logs out.
+ * Entries are keyed by the identity of the object that owns the secret, and
+ * a cached value is only used while the owner still has the same ciphertext.
+ * Each secret also records its scope, the vault key it was decrypted with,
+ * so a session that ends wipes its own secrets and leaves other users' alone.
+ * OOP Concept: This class demonstrates ENCAPSULATION by hiding how plaintext
+ * is stored and cleaned up.
+ */
+public class SecretCache {
+
+    // Configurable with -Dpm.secrets.cacheSize and -Dpm.secrets.ttlSeconds
+    private static final int MAX_ENTRIES = Integer.getInteger("pm.secrets.cacheSize", 64);
+    private static final long TTL_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong("pm.secrets.ttlSeconds", 30));
+
+    private static final Map<IdentityKey, CachedSecret> SECRETS = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<IdentityKey, CachedSecret> eldest) {
+            if (size() > MAX_ENTRIES) {
+                eldest.getValue().wipe();
+                return true;
+            }
+            return false;
+        }
+    };
+    private static volatile ScheduledExecutorService sweeper;
+
+    private static class CachedSecret {
+        private final Object scope;
+        private final byte[] ciphertext;
+        private final Secret plaintext;
+        private final long expiresAt;
+
+        private CachedSecret(Object scope, byte[] ciphertext, Secret plaintext, long expiresAt) {
+            this.scope = scope;
+            this.ciphertext = ciphertext;
+            this.plaintext = plaintext;
+            this.expiresAt = expiresAt;
+        }
+
+        private void wipe() {
+            plaintext.wipe();
+        }
+    }
+
+    /**
+     * Get a cached secret
+     *
+     * @param owner      The object the secret belongs to, compared by identity
+     * @param ciphertext The owner's current ciphertext, compared by identity
+     * @return A copy of the plaintext that the caller must close, or null if
+     *         it is not cached, has expired or was cached for a different
+     *         ciphertext
+     */
+    public static synchronized Secret get(Object owner, byte[] ciphertext) {
+        if (MAX_ENTRIES <= 0) {
+            return null;
+        }
+        IdentityKey key = new IdentityKey(owner);
+        CachedSecret secret = SECRETS.get(key);
+        if (secret == null) {
+            return null;
+        }
+        if (secret.ciphertext != ciphertext || System.currentTimeMillis() >= secret.expiresAt) {
+            SECRETS.remove(key);
+            secret.wipe();
+            return null;
+        }
+        return secret.plaintext.copy();
+    }
+
+    /**
+     * Cache a decrypted secret
+     *
+     * @param owner      The object the secret belongs to, compared by identity
+     * @param scope      What the secret was decrypted with, such as a
+     *                   session's vault key, compared by identity; may be null
+     * @param ciphertext The ciphertext it was decrypted from
+     * @param plaintext  The decrypted secret; the cache keeps its own copy,
+     *                   which it wipes when the entry leaves the cache
+     */
+    public static void put(Object owner, Object scope, byte[] ciphertext, Secret plaintext) {
+        if (MAX_ENTRIES <= 0 || TTL_MILLIS <= 0) {
+            return;
+        }
+        synchronized (SecretCache.class) {
+            CachedSecret previous = SECRETS.put(new IdentityKey(owner),
+                    new CachedSecret(scope, ciphertext, plaintext.copy(), System.currentTimeMillis() + TTL_MILLIS));
+            if (previous != null) {
+                previous.wipe();
+            }
+        }
+        startSweeper();
+    }
+
+    /**
+     * Forget the cached secret of one owner, for example after its password
+     * was changed
+     *
+     * @param owner The object the secret belongs to
+     */
+    public static synchronized void remove(Object owner) {
+        CachedSecret secret = SECRETS.remove(new IdentityKey(owner));
+        if (secret != null) {
+            secret.wipe();
+        }
+    }
+
+    /**
+     * Wipe and drop the secrets decrypted with one scope; called when the
+     * session that owns that vault key ends
+     *
+     * @param scope The scope given to put, compared by identity
+     * @return Number of secrets dropped
+     */
+    public static synchronized int clearScope(Object scope) {
+        int cleared = 0;
+        Iterator<CachedSecret> secrets = SECRETS.values().iterator();
+        while (secrets.hasNext()) {
+            CachedSecret secret = secrets.next();
+            if (secret.scope == scope) {
+                secret.wipe();
+                secrets.remove();
+                cleared++;
+            }
+        }
+        return cleared;
+    }
+
+    /**
+     * Wipe and drop every cached secret
+     */
+    public static synchronized void clear() {
+        for (CachedSecret secret : SECRETS.values()) {
+            secret.wipe();
+        }
+        SECRETS.clear();
+    }
+
+    /**
+     * Wipe and drop the secrets whose time to live has passed
+     *
+     * @return Number of expired secrets
+     */
+    public static synchronized int evictExpired() {
+        long now = System.currentTimeMillis();
+        int expired = 0;
+        Iterator<CachedSecret> secrets = SECRETS.values().iterator();
+        while (secrets.hasNext()) {
+            CachedSecret secret = secrets.next();
+            if (now >= secret.expiresAt) {
+                secret.wipe();
+                secrets.remove();
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Get the number of cached secrets
+     *
+     * @return Cached secret count
+     */
+    public static synchronized int size() {
+        return SECRETS.size();
+    }
+
+    // Starts the background thread that wipes expired secrets nobody asks for
+    private static void startSweeper() {
+        if (sweeper != null) {
+            return;
+        }
+        synchronized (SecretCache.class) {
+            if (sweeper == null) {
+                long period = Math.max(1_000, TTL_MILLIS / 2);
+                ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "secret-sweeper");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                executor.scheduleAtFixedRate(SecretCache::evictExpired, period, period, TimeUnit.MILLISECONDS);
+                sweeper = executor;
+            }
+        }
+    }
+
+    // Compares owners by identity, whatever their equals method does
+    private static final class IdentityKey {
+        private final Object owner;
+
+        private IdentityKey(Object owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof IdentityKey && ((IdentityKey) other).owner == owner;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(owner);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.utils;
+
+import com.example.logging.Log;
+
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This file contains the SecureRandoms utility class, the source of all
+ * random keys, salts, IVs and session ids.
+ * A single shared SecureRandom serialises every thread that encrypts or
+ * registers at the same time, and the platform default may read the system
+ * entropy device on each call. Instead there are a few independent DRBG
+ * (SP 800-90A) generators, each seeded from the system source when first
+ * used, and every thread draws from the one its id maps to. Virtual threads
+ * come and go per request, so generators are not kept per thread but
+ * striped, twice as many as there are cores.
+ * Nonces and IVs, which are public anyway, can also be handed out from a
+ * pre-generated block per generator (-Dpm.random.ivBatchBytes, default
+ * 1024, 0 to turn off), so most IVs cost a copy rather than a DRBG call.
+ * OOP Concept: This class demonstrates the UTILITY PATTERN by hiding which
+ * generator serves a caller behind static methods.
+ */
+public class SecureRandoms {
+
+    private static final System.Logger LOG = Log.getLogger(SecureRandoms.class);
+
+    private static final int STRENGTH_BITS = 256;
+    private static final int IV_BATCH_BYTES = Integer.getInteger("pm.random.ivBatchBytes", 1024);
+
+    // Created on first use, so a process that never needs randomness (such
+    // as listing a vault from the command line) seeds nothing
+    private static final AtomicReferenceArray<Stripe> STRIPES =
+            new AtomicReferenceArray<>(Runtime.getRuntime().availableProcessors() * 2);
+
+    // One generator and its block of pre-generated nonce bytes
+    private static final class Stripe {
+        private final SecureRandom random;
+        private final byte[] ivBlock = new byte[IV_BATCH_BYTES];
+        private int ivPosition = IV_BATCH_BYTES;
+
+        private Stripe(SecureRandom random) {
+            this.random = random;
+        }
+
+        private synchronized void nextIv(byte[] out, int offset, int length) {
+            if (length > IV_BATCH_BYTES / 4) {
+                // Too large to batch, or batching is off
+                byte[] fresh = new byte[length];
+                random.nextBytes(fresh);
+                System.arraycopy(fresh, 0, out, offset, length);
+                return;
+            }
+            if (ivPosition + length > IV_BATCH_BYTES) {
+                random.nextBytes(ivBlock);
+                ivPosition = 0;
+            }
+            System.arraycopy(ivBlock, ivPosition, out, offset, length);
+            // Handed-out bytes are cleared so they cannot be given out again
+            Arrays.fill(ivBlock, ivPosition, ivPosition + length, (byte) 0);
+            ivPosition += length;
+        }
+    }
+
+    /**
+     * Get the generator for the calling thread, for keys, salts and ids
+     *
+     * @return A thread-safe generator, usually used by this thread alone
+     */
+    public static SecureRandom get() {
+        return stripe().random;
+    }
+
+    /**
+     * Fill an array with a fresh nonce or IV, from the pre-generated block
+     * when batching is on. Only for values that are not secret.
+     *
+     * @param iv The array to fill
+     */
+    public static void nextIv(byte[] iv) {
+        nextIv(iv, 0, iv.length);
+    }
+
+    /**
+     * Fill part of an array with a fresh nonce or IV
+     *
+     * @param out    The array to fill
+     * @param offset Where the nonce starts
+     * @param length Nonce length in bytes
+     */
+    public static void nextIv(byte[] out, int offset, int length) {
+        stripe().nextIv(out, offset, length);
+    }
+
+    private static Stripe stripe() {
+        int index = (int) (Thread.currentThread().threadId() % STRIPES.length());
+        Stripe stripe = STRIPES.get(index);
+        if (stripe == null) {
+            STRIPES.compareAndSet(index, null, new Stripe(newGenerator(index)));
+            stripe = STRIPES.get(index);
+        }
+        return stripe;
+    }
+
+    // A DRBG seeded from the system entropy source; the personalization
+    // string keeps stripes distinct even if two were seeded identically
+    private static SecureRandom newGenerator(int index) {
+        byte[] personalization = ByteBuffer.allocate(64)
+                .put("pm-random".getBytes(StandardCharsets.US_ASCII))
+                .putInt(index)
+                .putLong(System.nanoTime())
+                .putLong(ProcessHandle.current().pid())
+                .array();
+        try {
+            return SecureRandom.getInstance("DRBG", DrbgParameters.instantiation(STRENGTH_BITS,
+                    DrbgParameters.Capability.RESEED_ONLY, personalization));
+        } catch (NoSuchAlgorithmException e) {
+            LOG.log(Level.WARNING, "DRBG not available, using the default generator: {0}", e.getMessage());
+            return new SecureRandom();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.utils;
+
+import com.example.logging.Log;
+import com.example.models.User;
+
+import java.lang.System.Logger.Level;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This file contains the SessionRegistry utility class that maps session ids
+ * to user sessions and evicts sessions that have been idle for too long.
+ * OOP Concept: This class demonstrates the REGISTRY pattern by giving every
+ * caller (desktop UI, HTTP API, command line) its own session in one JVM.
+ */
+public class SessionRegistry {
+
+    private static final System.Logger LOG = Log.getLogger(SessionRegistry.class);
+
+    // Idle timeout in minutes, configurable with -Dpm.session.idleMinutes
+    private static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES
+            .toMillis(Long.getLong("pm.session.idleMinutes", 15));
+
+    private static final Map<String, UserSession> SESSIONS = new ConcurrentHashMap<>();
+    private static volatile ScheduledExecutorService evictor;
+
+    /**
+     * Start a new session for an authenticated user
+     *
+     * @param user      The authenticated user
+     * @param vaultKey  The user's unlocked vault key; the session owns it
+     *                  and destroys it when it ends
+     * @param evictable false if the session must never be evicted as idle
+     * @return The new session
+     */
+    public static UserSession createSession(User user, VaultKey vaultKey, boolean evictable) {
+        UserSession session;
+        do {
+            session = new UserSession(newSessionId(), user, vaultKey, evictable);
+        } while (SESSIONS.putIfAbsent(session.getId(), session) != null);
+
+        if (evictable) {
+            startEvictor();
+        }
+        return session;
+    }
+
+    /**
+     * Look up a live session and mark it as used
+     *
+     * @param sessionId The session id
+     * @return The session, or null if it does not exist or has been evicted
+     */
+    public static UserSession getSession(String sessionId) {
+        if (sessionId == null) {
+            return null;
+        }
+        UserSession session = SESSIONS.get(sessionId);
+        if (session == null) {
+            return null;
+        }
+        if (isIdle(session, System.currentTimeMillis())) {
+            endSession(sessionId);
+            return null;
+        }
+        session.touch();
+        return session;
+    }
+
+    /**
+     * End a session and release its state
+     *
+     * @param sessionId The session id
+     * @return true if a session was ended
+     */
+    public static boolean endSession(String sessionId) {
+        UserSession session = sessionId != null ? SESSIONS.remove(sessionId) : null;
+        if (session == null) {
+            return false;
+        }
+        session.close();
+        return true;
+    }
+
+    /**
+     * End every session of a user, for example after the account was deleted
+     *
+     * @param username The username
+     * @return Number of sessions ended
+     */
+    public static int endSessionsForUser(String username) {
+        int ended = 0;
+        for (UserSession session : SESSIONS.values()) {
+            if (session.getUsername().equalsIgnoreCase(username) && endSession(session.getId())) {
+                ended++;
+            }
+        }
+        return ended;
+    }
+
+    /**
+     * Drop the cached vault of all of a user's sessions except one, so they
+     * reload it after that session changed it
+     *
+     * @param username      The username
+     * @param exceptSession The session that made the change, may be null
+     */
+    public static void invalidateVaults(String username, UserSession exceptSession) {
+        for (UserSession session : SESSIONS.values()) {
+            if (session != exceptSession && session.getUsername().equalsIgnoreCase(username)) {
+                session.invalidateVault();
+            }
+        }
+    }
+
+    /**
+     * Get the number of live sessions
+     *
+     * @return Active session count
+     */
+    public static int getActiveSessionCount() {
+        return SESSIONS.size();
+    }
+
+    /**
+     * Remove all evictable sessions that have been idle longer than the
+     * timeout
+     *
+     * @return Number of evicted sessions
+     */
+    public static int evictIdleSessions() {
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+        Iterator<UserSession> sessions = SESSIONS.values().iterator();
+        while (sessions.hasNext()) {
+            UserSession session = sessions.next();
+            if (isIdle(session, now) && SESSIONS.remove(session.getId(), session)) {
+                session.close();
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            LOG.log(Level.INFO, "Evicted {0} idle sessions", evicted);
+        }
+        return evicted;
+    }
+
+    private static boolean isIdle(UserSession session, long now) {
+        return session.isEvictable() && now - session.getLastAccessAt() > IDLE_TIMEOUT_MILLIS;
+    }
+
+    // Starts the background eviction thread once an evictable session exists
+    private static void startEvictor() {
+        if (evictor != null) {
+            return;
+        }
+        synchronized (SessionRegistry.class) {
+            if (evictor == null) {
+                long period = Math.max(1_000, Math.min(IDLE_TIMEOUT_MILLIS / 4, TimeUnit.MINUTES.toMillis(1)));
+                ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "session-evictor");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                executor.scheduleAtFixedRate(SessionRegistry::evictIdleSessions, period, period,
+                        TimeUnit.MILLISECONDS);
+                evictor = executor;
+            }
+        }
+    }
+
+    private static String newSessionId() {
+        byte[] bytes = new byte[32];
+        SecureRandoms.get().nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,298 @@
+package com.example.utils;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * This file contains the StreamingAead utility class, which encrypts
+ * attachments of any size through a fixed-size buffer.
+ * The plaintext is cut into chunks of CHUNK_BYTES, and each chunk is sealed
+ * with AES-GCM on its own. A chunk's nonce is a random per-file prefix, the
+ * chunk number and a flag marking the last chunk. Chunks therefore cannot be
+ * reordered, dropped or cut off at the end without decryption failing, and
+ * no plaintext is released before its chunk has been authenticated. Each
+ * file gets its own key, derived from the owner's VaultKey and a random
+ * salt, so nonces never repeat under one key, however many files there are.
+ * Layout: "PMS1", chunk size (int), salt (16 bytes), nonce prefix (7 bytes),
+ * then each chunk's ciphertext followed by its 16-byte tag.
+ * OOP Concept: This class demonstrates ABSTRACTION by offering encryption as
+ * ordinary input and output streams.
+ */
+public class StreamingAead {
+
+    private static final byte[] MAGIC = "PMS1".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEY_INFO = "pm-stream-key".getBytes(StandardCharsets.US_ASCII);
+    private static final String ALGORITHM = "AES/GCM/NoPadding";
+    private static final int CHUNK_BYTES = 64 * 1024;
+    private static final int MIN_CHUNK_BYTES = 1024;
+    private static final int MAX_CHUNK_BYTES = 1024 * 1024;
+    private static final int SALT_BYTES = 16;
+    private static final int PREFIX_BYTES = 7;
+    private static final int TAG_BYTES = 16;
+    private static final int HEADER_BYTES = MAGIC.length + 4 + SALT_BYTES + PREFIX_BYTES;
+
+    /**
+     * Start encrypting into a stream. The header is written at once; the last
+     * chunk is written when the returned stream is closed, which also closes
+     * the target.
+     *
+     * @param target         Where the encrypted bytes go; closed at once if
+     *                       this fails
+     * @param key            The owner's vault key
+     * @param associatedData Data the content is bound to, or null for none
+     * @return A stream that encrypts whatever is written to it
+     * @throws IOException if the key is not unlocked or writing fails
+     */
+    public static OutputStream encryptingStream(OutputStream target, VaultKey key, byte[] associatedData)
+            throws IOException {
+        byte[] header = new byte[HEADER_BYTES];
+        byte[] salt = new byte[SALT_BYTES];
+        SecureRandoms.get().nextBytes(salt);
+        ByteBuffer.wrap(header).put(MAGIC).putInt(CHUNK_BYTES).put(salt);
+        SecureRandoms.nextIv(header, MAGIC.length + 4 + SALT_BYTES, PREFIX_BYTES);
+        try {
+            ChunkCipher chunks = new ChunkCipher(key, header, associatedData, Cipher.ENCRYPT_MODE);
+            target.write(header);
+            return new EncryptingStream(target, chunks);
+        } catch (IOException e) {
+            target.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Start decrypting a stream written by encryptingStream. Reading fails
+     * with an IOException as soon as a chunk does not authenticate or the
+     * content was cut short.
+     *
+     * @param source         The encrypted bytes; closed with the returned
+     *                       stream, or at once if this fails
+     * @param key            The owner's vault key
+     * @param associatedData The data the content was bound to, or null
+     * @return A stream of the plaintext
+     * @throws IOException if the header is damaged or the key is not unlocked
+     */
+    public static InputStream decryptingStream(InputStream source, VaultKey key, byte[] associatedData)
+            throws IOException {
+        try {
+            byte[] header = source.readNBytes(HEADER_BYTES);
+            if (header.length < HEADER_BYTES || !Arrays.equals(header, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+                throw new IOException("Not an encrypted attachment");
+            }
+            int chunkBytes = ByteBuffer.wrap(header, MAGIC.length, 4).getInt();
+            if (chunkBytes < MIN_CHUNK_BYTES || chunkBytes > MAX_CHUNK_BYTES) {
+                throw new IOException("Unsupported chunk size: " + chunkBytes);
+            }
+            return new DecryptingStream(source, new ChunkCipher(key, header, associatedData, Cipher.DECRYPT_MODE),
+                    chunkBytes);
+        } catch (IOException e) {
+            source.close();
+            throw e;
+        }
+    }
+
+    // The per-file key and nonce sequence shared by both directions
+    private static final class ChunkCipher {
+        private final Cipher cipher;
+        private final OffHeapKey fileKey;
+        private final int mode;
+        private final byte[] nonce = new byte[12];
+        private final byte[] header;
+        private final byte[] associatedData;
+        private int chunk;
+
+        private ChunkCipher(VaultKey key, byte[] header, byte[] associatedData, int mode) throws IOException {
+            SecretKey vaultKey = key != null ? key.secretKey() : null;
+            if (vaultKey == null) {
+                throw new IOException("Vault key is not unlocked");
+            }
+            this.mode = mode;
+            this.header = header;
+            this.associatedData = associatedData;
+            System.arraycopy(header, MAGIC.length + 4 + SALT_BYTES, nonce, 0, PREFIX_BYTES);
+            try {
+                // HMAC(vault key, salt || info) as in HKDF, one block is a full AES-256 key
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(vaultKey);
+                mac.update(header, MAGIC.length + 4, SALT_BYTES);
+                mac.update(KEY_INFO);
+                fileKey = OffHeapKey.take(mac.doFinal(), "AES");
+                cipher = Cipher.getInstance(ALGORITHM);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Could not set up attachment encryption: " + e.getMessage(), e);
+            }
+        }
+
+        // Seals or opens the next chunk
+        private int process(byte[] input, int length, byte[] output, boolean last) throws IOException {
+            if (chunk == Integer.MAX_VALUE) {
+                throw new IOException("Attachment is too large");
+            }
+            ByteBuffer.wrap(nonce, PREFIX_BYTES, 5).putInt(chunk).put((byte) (last ? 1 : 0));
+            try {
+                cipher.init(mode, fileKey, new GCMParameterSpec(TAG_BYTES * 8, nonce));
+                cipher.updateAAD(header);
+                if (associatedData != null) {
+                    cipher.updateAAD(associatedData);
+                }
+                int written = cipher.doFinal(input, 0, length, output, 0);
+                chunk++;
+                return written;
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Attachment is damaged or does not belong here", e);
+            }
+        }
+
+        private void destroy() {
+            fileKey.destroy();
+        }
+    }
+
+    private static final class EncryptingStream extends OutputStream {
+        private final OutputStream target;
+        private final ChunkCipher chunks;
+        private final byte[] plain = new byte[CHUNK_BYTES];
+        private final byte[] sealed = new byte[CHUNK_BYTES + TAG_BYTES];
+        private int length;
+        private boolean closed;
+
+        private EncryptingStream(OutputStream target, ChunkCipher chunks) {
+            this.target = target;
+            this.chunks = chunks;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int count) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            while (count > 0) {
+                // A full chunk is only sealed once more data arrives, so the
+                // last chunk is known to be last when it is sealed
+                if (length == CHUNK_BYTES) {
+                    writeChunk(false);
+                }
+                int taken = Math.min(count, CHUNK_BYTES - length);
+                System.arraycopy(bytes, offset, plain, length, taken);
+                length += taken;
+                offset += taken;
+                count -= taken;
+            }
+        }
+
+        private void writeChunk(boolean last) throws IOException {
+            int written = chunks.process(plain, length, sealed, last);
+            target.write(sealed, 0, written);
+            Arrays.fill(plain, 0, length, (byte) 0);
+            length = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try (target) {
+                writeChunk(true);
+            } finally {
+                chunks.destroy();
+            }
+        }
+    }
+
+    private static final class DecryptingStream extends InputStream {
+        private final InputStream source;
+        private final ChunkCipher chunks;
+        // One sealed chunk plus one byte to see whether another follows
+        private final byte[] sealed;
+        private final byte[] plain;
+        private int sealedLength;
+        private int position;
+        private int limit;
+        private boolean lastRead;
+        private boolean closed;
+
+        private DecryptingStream(InputStream source, ChunkCipher chunks, int chunkBytes) {
+            this.source = source;
+            this.chunks = chunks;
+            this.sealed = new byte[chunkBytes + TAG_BYTES + 1];
+            this.plain = new byte[chunkBytes];
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (count == 0) {
+                return 0;
+            }
+            while (position == limit) {
+                if (lastRead) {
+                    return -1;
+                }
+                readChunk();
+            }
+            int given = Math.min(count, limit - position);
+            System.arraycopy(plain, position, bytes, offset, given);
+            position += given;
+            return given;
+        }
+
+        @Override
+        public int available() {
+            return limit - position;
+        }
+
+        private void readChunk() throws IOException {
+            sealedLength += source.readNBytes(sealed, sealedLength, sealed.length - sealedLength);
+            boolean last = sealedLength < sealed.length;
+            int chunkLength = last ? sealedLength : sealed.length - 1;
+            if (chunkLength < TAG_BYTES) {
+                throw new EOFException("Attachment is cut short");
+            }
+            Arrays.fill(plain, 0, limit, (byte) 0);
+            limit = chunks.process(sealed, chunkLength, plain, last);
+            position = 0;
+            lastRead = last;
+            if (!last) {
+                // Keep the byte read ahead as the start of the next chunk
+                sealed[0] = sealed[chunkLength];
+                sealedLength = 1;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            Arrays.fill(plain, (byte) 0);
+            chunks.destroy();
+            source.close();
+        }
+    }
+}
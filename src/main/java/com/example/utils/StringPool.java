@@ -0,0 +1,40 @@
+package com.example.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This file contains the StringPool class that hands out one shared String
+ * object for equal values. Large vaults repeat the same websites and the same
+ * usernames or email addresses many times; reading a file through a pool keeps
+ * a single copy of each. Unlike String.intern the pool is an ordinary object,
+ * so its table is freed as soon as the file has been read.
+ * OOP Concept: This class demonstrates the FLYWEIGHT pattern.
+ */
+public class StringPool {
+
+    private final Map<String, String> values = new HashMap<>();
+
+    /**
+     * Get the pooled copy of a value, adding it if it is new
+     *
+     * @param value The value, may be null
+     * @return An equal String shared with earlier calls
+     */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String pooled = values.putIfAbsent(value, value);
+        return pooled != null ? pooled : value;
+    }
+
+    /**
+     * Get the number of distinct values in the pool
+     *
+     * @return Distinct value count
+     */
+    public int size() {
+        return values.size();
+    }
+}
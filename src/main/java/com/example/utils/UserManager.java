@@ -1,12 +1,20 @@
 package com.example.utils;
 
+import com.example.logging.Log;
+import com.example.metrics.FlightRecording;
+import com.example.metrics.Metrics;
+import com.example.metrics.Timer;
+import com.example.metrics.UserLookupEvent;
 import com.example.models.User;
 
-import java.io.*;
+import java.io.IOException;
+import java.lang.System.Logger.Level;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 /**
  * This file contains the UserManager utility class that handles user
@@ -16,68 +24,214 @@ import java.util.List;
  */
 public class UserManager {
 
-    private static final String USER_DATA_HEADER = "Username,Email,PasswordHash";
-    private static User currentUser = null;
+    private static final System.Logger LOG = Log.getLogger(UserManager.class);
+
+    private static final String USER_DATA_HEADER = "Username,Email,PasswordHash,VaultKey";
+    private static final Timer LOOKUP_TIMER = Metrics.timer(Metrics.USER_LOOKUP);
+    // The desktop UI is a single-session client of the SessionRegistry
+    private static volatile String desktopSessionId = null;
 
     // Initialize data directories when class is loaded
     static {
         DataManager.initializeDataDirectories();
     } // Creates a new user account in the system
 
-    public static boolean registerUser(String username, String email, String password) {
+    public static boolean registerUser(String username, String email, Secret password) {
         // Check if user already exists
         if (findUserByUsername(username) != null || findUserByEmail(email) != null) {
             return false;
         }
 
-        // Create new user with hashed password
+        // Create new user with hashed password and a vault key only they can unlock
         String passwordHash = PasswordUtils.createPasswordHash(password);
-        User newUser = new User(username, email, passwordHash);
+        VaultKey vaultKey = VaultKey.generate();
+        String wrappedKey = vaultKey.wrap(password, username);
+        vaultKey.destroy();
+        if (wrappedKey == null) {
+            return false;
+        }
+        User newUser = new User(username, email, passwordHash, wrappedKey);
 
-        // Save to CSV
+        // Save to CSV, checking again in case someone registered meanwhile
         return saveUserToCSV(newUser);
     } // Verifies user credentials and logs them in
 
-    public static boolean authenticateUser(String usernameOrEmail, String password) {
+    public static boolean authenticateUser(String usernameOrEmail, Secret password) {
+        User user = verifyCredentials(usernameOrEmail, password);
+        user = user != null ? rehashIfNeeded(user, password) : null;
+        VaultKey vaultKey = user != null ? unlockVaultKey(user, password) : null;
+        if (vaultKey != null) {
+            // Evicted when idle like any other session, so the unlocked key does not
+            // stay in memory while the window sits unattended; the UI then locks
+            UserSession session = SessionRegistry.createSession(user, vaultKey, true);
+            String previousSessionId = desktopSessionId;
+            desktopSessionId = session.getId();
+            SessionRegistry.endSession(previousSessionId);
+            return true;
+        }
+
+        return false;
+    } // Verifies user credentials and starts an independent session for them
+
+    public static UserSession login(String usernameOrEmail, Secret password) {
+        User user = verifyCredentials(usernameOrEmail, password);
+        user = user != null ? rehashIfNeeded(user, password) : null;
+        VaultKey vaultKey = user != null ? unlockVaultKey(user, password) : null;
+        return vaultKey != null ? SessionRegistry.createSession(user, vaultKey, true) : null;
+    } // Verifies user credentials and starts a session that can list the vault but not decrypt or add to it
+
+    public static UserSession loginWithoutVaultKey(String usernameOrEmail, Secret password) {
+        User user = verifyCredentials(usernameOrEmail, password);
+        // Skips the vault key derivation, and the rehash with its one-time
+        // calibration; both happen at the user's next full login
+        return user != null ? SessionRegistry.createSession(user, null, true) : null;
+    } // Unlocks a verified user's vault key, creating it on their first login
+
+    private static VaultKey unlockVaultKey(User user, Secret password) {
+        if (user.getWrappedVaultKey() != null) {
+            return VaultKey.unwrap(user.getWrappedVaultKey(), password, user.getUsername());
+        }
+
+        // Accounts from before vault keys get one now; their passwords move
+        // under it the next time their vault is saved
+        VaultKey vaultKey = VaultKey.generate();
+        String wrappedKey = vaultKey.wrap(password, user.getUsername());
+        if (wrappedKey == null) {
+            return null;
+        }
+        try {
+            User stored = updateUser(user.getUsername(), existing -> existing.getWrappedVaultKey() != null
+                    ? existing // Another login was first
+                    : new User(existing.getUsername(), existing.getEmail(), existing.getPasswordHash(), wrappedKey));
+            String storedKey = stored != null ? stored.getWrappedVaultKey() : null;
+            if (storedKey == null) {
+                return null; // Deleted meanwhile
+            }
+            if (!storedKey.equals(wrappedKey)) {
+                vaultKey.destroy();
+                return VaultKey.unwrap(storedKey, password, user.getUsername());
+            }
+            LOG.log(Level.INFO, "Created a vault key for user: {0}", user.getUsername());
+            return vaultKey;
+        } catch (IOException e) {
+            LOG.log(Level.ERROR, "Error saving the vault key of {0}: {1}", user.getUsername(), e.getMessage());
+            vaultKey.destroy();
+            return null;
+        }
+    } // Replaces a verified user's password hash if it is weaker than new hashes
+
+    private static User rehashIfNeeded(User user, Secret password) {
+        String oldHash = user.getPasswordHash();
+        if (!PasswordUtils.needsRehash(oldHash)) {
+            return user;
+        }
+        String newHash = PasswordUtils.createPasswordHash(password);
+        try {
+            User stored = updateUser(user.getUsername(), existing -> existing.getPasswordHash().equals(oldHash)
+                    ? new User(existing.getUsername(), existing.getEmail(), newHash, existing.getWrappedVaultKey())
+                    : existing); // Changed meanwhile, keep the newer hash
+            if (stored != null && stored.getPasswordHash().equals(newHash)) {
+                LOG.log(Level.INFO, "Rehashed the password of user: {0}", user.getUsername());
+            }
+            return stored != null ? stored : user;
+        } catch (IOException e) {
+            // The old hash still works, so the login goes ahead and the next one retries
+            LOG.log(Level.WARNING, "Error rehashing the password of {0}: {1}", user.getUsername(), e.getMessage());
+            return user;
+        }
+    } // Replaces one user's row under the user file lock; the change returns its argument to leave it as is
+
+    private static User updateUser(String username, UnaryOperator<User> change) throws IOException {
+        return VaultLocks.withFileLock(DataManager.getUserDataFilePath(), file -> {
+            List<User> users = loadUsersFromCSV();
+            for (int i = 0; i < users.size(); i++) {
+                User existing = users.get(i);
+                if (existing.getUsername().equals(username)) {
+                    User updated = change.apply(existing);
+                    if (updated != existing) {
+                        users.set(i, updated);
+                        saveAllUsersToCSV(users);
+                        file.bumpVersion();
+                    }
+                    return updated;
+                }
+            }
+            return null; // Deleted meanwhile
+        });
+    } // Ends an independent session started with login
+
+    public static boolean logout(String sessionId) {
+        return SessionRegistry.endSession(sessionId);
+    } // Returns the user of a session, or null if the session is not active
+
+    public static User getUser(String sessionId) {
+        UserSession session = SessionRegistry.getSession(sessionId);
+        return session != null ? session.getUser() : null;
+    } // Checks user credentials without changing the logged-in user
+
+    public static User verifyCredentials(String usernameOrEmail, Secret password) {
         User user = findUserByUsername(usernameOrEmail);
         if (user == null) {
             user = findUserByEmail(usernameOrEmail);
         }
 
-        if (user != null && PasswordUtils.verifyPassword(password, user.getPasswordHash())) {
-            currentUser = user;
-            return true;
+        if (user == null) {
+            return null;
         }
 
-        return false;
+        return PasswordUtils.verifyPassword(user.getUsername(), password, user.getPasswordHash()) ? user : null;
+    } // Returns the session of the desktop user
+
+    public static UserSession getCurrentSession() {
+        return SessionRegistry.getSession(desktopSessionId);
     } // Returns the currently logged-in user
 
     public static User getCurrentUser() {
-        return currentUser;
-    } // Logs out the current user by clearing the reference
+        UserSession session = getCurrentSession();
+        return session != null ? session.getUser() : null;
+    } // Logs out the current user by ending the desktop session
 
     public static void logout() {
-        currentUser = null;
+        SessionRegistry.endSession(desktopSessionId);
+        desktopSessionId = null;
     } // Checks if a user is currently logged into the system
 
     public static boolean isUserLoggedIn() {
-        return currentUser != null;
+        return getCurrentSession() != null;
     } // Searches for and returns a user by their username
 
     public static User findUserByUsername(String username) {
-        List<User> users = loadUsersFromCSV();
-        return users.stream()
-                .filter(user -> user.getUsername().equalsIgnoreCase(username))
-                .findFirst()
-                .orElse(null);
+        return findUser("username", username, user -> user.getUsername().equalsIgnoreCase(username));
     } // Searches for and returns a user by their email address
 
     public static User findUserByEmail(String email) {
+        return findUser("email", email, user -> user.getEmail().equalsIgnoreCase(email));
+    } // Scans the user records for the first match, timing the lookup
+
+    private static User findUser(String by, String value, Predicate<User> matches) {
+        long start = LOOKUP_TIMER.start();
+        UserLookupEvent event = FlightRecording.isEnabled() ? new UserLookupEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
         List<User> users = loadUsersFromCSV();
-        return users.stream()
-                .filter(user -> user.getEmail().equalsIgnoreCase(email))
+        User found = users.stream()
+                .filter(matches)
                 .findFirst()
                 .orElse(null);
+        LOOKUP_TIMER.stop(start);
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.by = by;
+                event.userHash = FlightRecording.hashUsername(value);
+                event.userCount = users.size();
+                event.found = found != null;
+                event.commit();
+            }
+        }
+        return found;
     } // Loads all user records from the CSV file
 
     private static List<User> loadUsersFromCSV() {
@@ -99,69 +253,70 @@ public class UserManager {
                     }
                     String[] data = line.split(",");
                     if (data.length >= 3) {
-                        // Only use the 3-parameter constructor - we no longer track creation date
+                        // Users from before vault keys have no fourth column
+                        String wrappedKey = data.length >= 4 && !data[3].trim().isEmpty() ? data[3].trim() : null;
                         users.add(new User(
                                 data[0].trim(),
                                 data[1].trim(),
-                                data[2].trim()));
+                                data[2].trim(),
+                                wrappedKey));
                     }
                 }
-                System.out.println("Loaded " + users.size() + " users");
+                LOG.log(Level.INFO, "Loaded {0} users", users.size());
             } else {
-                System.out.println("User data file does not exist, starting with empty user list");
+                LOG.log(Level.INFO, "User data file does not exist, starting with empty user list");
             }
         } catch (IOException e) {
-            System.err.println("Error loading users from CSV: " + e.getMessage());
+            LOG.log(Level.ERROR, "Error loading users from CSV: {0}", e.getMessage());
         }
 
         return users;
     } // Adds a new user to the CSV storage
 
     private static boolean saveUserToCSV(User user) {
+        Path userDataFile = DataManager.getUserDataFilePath();
         try {
-            // First, load existing users
-            List<User> existingUsers = loadUsersFromCSV();
-            existingUsers.add(user);
-
-            // Save all users back to CSV
-            return saveAllUsersToCSV(existingUsers);
-        } catch (Exception e) {
-            System.err.println("Error saving user to CSV: " + e.getMessage());
-            return false;
-        }
-    } // Saves all users to the CSV file
-
-    private static boolean saveAllUsersToCSV(List<User> users) {
-        try {
-            Path userDataFile = DataManager.getUserDataFilePath();
-
-            // Ensure parent directories exist
-            Files.createDirectories(userDataFile.getParent());
-
-            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(userDataFile))) {
-                // Write header
-                writer.println(USER_DATA_HEADER); // Write users (only core fields)
-                for (User user : users) {
-                    writer.printf("%s,%s,%s%n",
-                            user.getUsername(),
-                            user.getEmail(),
-                            user.getPasswordHash());
+            boolean saved = VaultLocks.withFileLock(userDataFile, file -> {
+                // Load existing users while no one else can write them
+                List<User> existingUsers = loadUsersFromCSV();
+                for (User existing : existingUsers) {
+                    if (existing.getUsername().equalsIgnoreCase(user.getUsername())
+                            || existing.getEmail().equalsIgnoreCase(user.getEmail())) {
+                        return false;
+                    }
                 }
-            }
+                existingUsers.add(user);
 
-            System.out.println("Saved " + users.size() + " users to: " + userDataFile);
+                // Save all users back to CSV
+                saveAllUsersToCSV(existingUsers);
+                file.bumpVersion();
+                return true;
+            });
 
             // Create password file for the new user if it doesn't exist
-            if (!users.isEmpty()) {
-                User lastUser = users.get(users.size() - 1);
-                DataManager.createUserPasswordFile(lastUser.getUsername());
+            if (saved) {
+                DataManager.createUserPasswordFile(user.getUsername());
             }
-
-            return true;
+            return saved;
         } catch (IOException e) {
-            System.err.println("Error saving users to CSV: " + e.getMessage());
+            LOG.log(Level.ERROR, "Error saving user to CSV: {0}", e.getMessage());
             return false;
         }
+    } // Saves all users to the CSV file; the caller must hold its lock
+
+    private static void saveAllUsersToCSV(List<User> users) throws IOException {
+        Path userDataFile = DataManager.getUserDataFilePath();
+
+        List<String> lines = new ArrayList<>(users.size() + 1);
+        // Write header
+        lines.add(USER_DATA_HEADER); // Write users (only core fields)
+        for (User user : users) {
+            String line = user.getUsername() + "," + user.getEmail() + "," + user.getPasswordHash();
+            lines.add(user.getWrappedVaultKey() != null ? line + "," + user.getWrappedVaultKey() : line);
+        }
+        VaultLocks.writeAtomically(userDataFile, lines);
+
+        LOG.log(Level.INFO, "Saved {0} users to: {1}", users.size(), userDataFile);
     } // Returns a list of all registered users
 
     public static List<User> getAllUsers() {
@@ -169,51 +324,58 @@ public class UserManager {
     } // Removes a user from the system by their email
 
     public static boolean deleteUser(String email) {
-        List<User> users = loadUsersFromCSV();
+        User userToDelete;
+        try {
+            userToDelete = VaultLocks.withFileLock(DataManager.getUserDataFilePath(), file -> {
+                List<User> users = loadUsersFromCSV();
 
-        // Find the user before removing to get username for password file deletion
-        User userToDelete = null;
-        for (User user : users) {
-            if (user.getEmail().equals(email)) {
-                userToDelete = user;
-                break;
-            }
+                // Find the user before removing to get username for password file deletion
+                User found = null;
+                for (User user : users) {
+                    if (user.getEmail().equals(email)) {
+                        found = user;
+                        break;
+                    }
+                }
+                if (found == null) {
+                    return null;
+                }
+
+                // Save updated user list
+                users.remove(found);
+                saveAllUsersToCSV(users);
+                file.bumpVersion();
+                return found;
+            });
+        } catch (IOException e) {
+            LOG.log(Level.ERROR, "Error deleting user from CSV: {0}", e.getMessage());
+            return false;
+        }
+        if (userToDelete == null) {
+            return false;
         }
 
-        boolean removed = users.removeIf(user -> user.getEmail().equals(email));
-        if (removed && userToDelete != null) {
-            // Delete the user's password file first
-            try {
-                Path passwordFilePath = DataManager.getUserPasswordFilePath(userToDelete.getUsername());
-                if (Files.exists(passwordFilePath)) {
-                    Files.delete(passwordFilePath);
-                    System.out.println("Deleted password file: " + passwordFilePath);
-                }
-            } catch (IOException e) {
-                System.err.println("Error deleting user password file: " + e.getMessage());
-                // Continue with user deletion even if password file deletion fails
-            }
+        // Sign the deleted user out everywhere
+        SessionRegistry.endSessionsForUser(userToDelete.getUsername());
+        PasswordUtils.forgetUser(userToDelete.getUsername());
 
-            // Save updated user list
-            String userDataFile = DataManager.getUserDataFilePath().toString();
-            try (PrintWriter writer = new PrintWriter(new FileWriter(userDataFile))) {
-                // Write header
-                writer.println(USER_DATA_HEADER); // Write remaining users (only core fields)
-                for (User user : users) {
-                    writer.printf("%s,%s,%s%n",
-                            user.getUsername(),
-                            user.getEmail(),
-                            user.getPasswordHash());
+        // Delete the password file under its lock so no save is cut in half
+        Path passwordFilePath = DataManager.getUserPasswordFilePath(userToDelete.getUsername());
+        try {
+            VaultLocks.withFileLock(passwordFilePath, file -> {
+                if (Files.deleteIfExists(passwordFilePath)) {
+                    LOG.log(Level.INFO, "Deleted password file: {0}", passwordFilePath);
                 }
-
-                System.out.println("User and all associated data deleted: " + email);
-                return true;
-            } catch (IOException e) {
-                System.err.println("Error deleting user from CSV: " + e.getMessage());
-                return false;
-            }
+                VaultLocks.deleteVersion(passwordFilePath);
+                return null;
+            });
+        } catch (IOException e) {
+            LOG.log(Level.ERROR, "Error deleting user password file: {0}", e.getMessage());
+            // The user is already removed, a leftover file is harmless
         }
+        AttachmentStore.deleteUser(userToDelete.getUsername());
 
-        return false;
+        LOG.log(Level.INFO, "User and all associated data deleted: {0}", email);
+        return true;
     }
 }
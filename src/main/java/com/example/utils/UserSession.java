@@ -0,0 +1,215 @@
+package com.example.utils;
+
+import com.example.models.PasswordEntry;
+import com.example.models.User;
+
+import com.example.utils.CSVHandler.VaultSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.UnaryOperator;
+
+/**
+ * This file contains the UserSession class that holds the state of one
+ * logged-in user: who they are, when they were last active, the vault key
+ * unlocked at login and their loaded vault.
+ * OOP Concept: This class demonstrates ENCAPSULATION by keeping each user's
+ * context separate so several users can be served from one JVM.
+ */
+public class UserSession {
+
+    private final String id;
+    private final User user;
+    private final boolean evictable;
+    private final long createdAt;
+    private volatile long lastAccessAt;
+    private volatile boolean closed;
+    // Unlocked once at login and destroyed when the session ends
+    private final VaultKey vaultKey;
+
+    // Vault state, guarded by this session
+    private List<PasswordEntry> vault;
+    // Set by other sessions without taking this session's lock, so two
+    // sessions saving at the same time cannot deadlock
+    private volatile boolean vaultStale;
+    private long vaultVersion = -1;
+    // Run once when the session ends, on the thread that ends it
+    private final List<Runnable> closeListeners = new CopyOnWriteArrayList<>();
+
+    UserSession(String id, User user, VaultKey vaultKey, boolean evictable) {
+        this.id = id;
+        this.user = user;
+        this.vaultKey = vaultKey;
+        this.evictable = evictable;
+        this.createdAt = System.currentTimeMillis();
+        this.lastAccessAt = createdAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public String getUsername() {
+        return user.getUsername();
+    }
+
+    // Returns the user's unlocked key; new entries must be encrypted with it
+    public VaultKey getVaultKey() {
+        return vaultKey;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getLastAccessAt() {
+        return lastAccessAt;
+    }
+
+    // Returns false for sessions that must survive idle periods
+    public boolean isEvictable() {
+        return evictable;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Mark the session as used now so it is not evicted as idle
+     */
+    public void touch() {
+        lastAccessAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Get this session's vault, loading it on first use and reloading it when
+     * the file was changed by another session or process since it was loaded
+     *
+     * @return The live, mutable list of entries; call saveVault after changing it
+     */
+    public synchronized List<PasswordEntry> getVault() {
+        checkOpen();
+        if (vault == null || vaultStale || CSVHandler.getUserVaultVersion(getUsername()) != vaultVersion) {
+            vaultStale = false;
+            VaultSnapshot snapshot = CSVHandler.loadUserVault(getUsername(), vaultKey);
+            vault = new ArrayList<>(snapshot.entries());
+            vaultVersion = snapshot.version();
+        }
+        return vault;
+    }
+
+    /**
+     * Reload this session's vault if it was saved elsewhere since this
+     * session last loaded or saved it
+     *
+     * @return The reloaded vault, or null if this session already has the
+     *         latest version (for example because it made the change itself)
+     */
+    public synchronized List<PasswordEntry> reloadVaultIfChanged() {
+        checkOpen();
+        if (vault != null && !vaultStale && CSVHandler.getUserVaultVersion(getUsername()) == vaultVersion) {
+            return null;
+        }
+        vault = null;
+        return getVault();
+    }
+
+    /**
+     * Write this session's vault back to the user's CSV file and make the
+     * user's other sessions reload it. This overwrites changes made elsewhere
+     * since the vault was loaded; prefer updateVault for single edits.
+     */
+    public synchronized void saveVault() {
+        checkOpen();
+        if (vault != null) {
+            vaultVersion = CSVHandler.saveUserPasswordsToCSV(getUsername(), vault);
+            SessionRegistry.invalidateVaults(getUsername(), this);
+        }
+    }
+
+    /**
+     * Apply a change to this user's vault with optimistic concurrency: if
+     * another session or process saved the vault in the meantime, the change
+     * is applied again on top of their version instead of overwriting it
+     *
+     * @param change Changes a copy of the entries and returns the new list;
+     *               it may run more than once, so it must not have side effects
+     * @return The vault after the change, or null if it could not be saved
+     */
+    public synchronized List<PasswordEntry> updateVault(UnaryOperator<List<PasswordEntry>> change) {
+        checkOpen();
+        VaultSnapshot base = vault != null && !vaultStale ? new VaultSnapshot(vault, vaultVersion) : null;
+        VaultSnapshot saved = CSVHandler.updateUserPasswords(getUsername(), vaultKey, base, change);
+        if (saved == null) {
+            return null;
+        }
+        vaultStale = false;
+        vault = new ArrayList<>(saved.entries());
+        vaultVersion = saved.version();
+        SessionRegistry.invalidateVaults(getUsername(), this);
+        return vault;
+    }
+
+    /**
+     * Replace this session's vault with the given entries and save it
+     *
+     * @param entries The complete new vault contents
+     */
+    public synchronized void saveVault(List<PasswordEntry> entries) {
+        checkOpen();
+        vault = new ArrayList<>(entries);
+        saveVault();
+    }
+
+    /**
+     * Drop the loaded vault so the next access reads it from disk again
+     */
+    public void invalidateVault() {
+        vaultStale = true;
+    }
+
+    /**
+     * Run an action when this session ends, whether by logout or by being
+     * evicted as idle; it runs right away if the session has already ended
+     *
+     * @param listener The action, run on the thread that ends the session
+     */
+    public void onClose(Runnable listener) {
+        closeListeners.add(listener);
+        if (closed && closeListeners.remove(listener)) {
+            listener.run();
+        }
+    }
+
+    // Releases the session's state; called by SessionRegistry when it ends
+    void close() {
+        synchronized (this) {
+            closed = true;
+            vault = null;
+            // Neither the key nor the passwords decrypted with it may outlive a
+            // logout; other sessions keep their cached passwords
+            if (vaultKey != null) {
+                SecretCache.clearScope(vaultKey);
+                vaultKey.destroy();
+            }
+        }
+        // Outside the lock, so a listener may call back into the session
+        for (Runnable listener : closeListeners) {
+            if (closeListeners.remove(listener)) {
+                listener.run();
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Session has ended: " + id);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.utils;
+
+import com.example.logging.Log;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import java.lang.System.Logger.Level;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * This file contains the VaultKey class, the random data key that encrypts
+ * one user's vault (envelope encryption).
+ * The key is stored in the user data file wrapped (encrypted) by a key
+ * derived from the user's login password, so a vault can only be read by
+ * someone who knows that password, not by anyone who has the application.
+ * The expensive derivation runs once per login; the unwrapped key is then
+ * kept by the session as an OffHeapKey and destroyed when the session ends.
+ * Wrapped keys look like "k1:iterations:salt:nonce+ciphertext" (Base64 parts).
+ * OOP Concept: This class demonstrates ENCAPSULATION by hiding the key
+ * material behind wrap, unwrap and destroy.
+ */
+public class VaultKey {
+
+    private static final System.Logger LOG = Log.getLogger(VaultKey.class);
+
+    private static final String WRAPPED_TAG = "k1";
+    private static final String KDF_ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String WRAP_ALGORITHM = "AES/GCM/NoPadding";
+    private static final int KEY_BYTES = 32;
+    private static final int SALT_BYTES = 16;
+    private static final int NONCE_BYTES = 12;
+    private static final int TAG_BITS = 128;
+    // Iterations for newly wrapped keys, configurable with -Dpm.keys.iterations;
+    // each wrapped key records its own count, so changing this keeps old keys valid
+    private static final int ITERATIONS = Integer.getInteger("pm.keys.iterations", 210_000);
+
+    private final OffHeapKey key;
+
+    // Moves the key bytes off the heap and wipes the array
+    private VaultKey(byte[] keyBytes) {
+        this.key = OffHeapKey.take(keyBytes, "AES");
+    }
+
+    /**
+     * Create a new random data key for a user who does not have one yet
+     *
+     * @return A new key
+     */
+    public static VaultKey generate() {
+        byte[] keyBytes = new byte[KEY_BYTES];
+        SecureRandoms.get().nextBytes(keyBytes);
+        return new VaultKey(keyBytes);
+    }
+
+    /**
+     * Encrypt this key for storage in the user data file
+     *
+     * @param password The user's login password
+     * @param username The user it belongs to, bound to the wrapped key
+     * @return The wrapped key, or null if it could not be wrapped
+     */
+    public String wrap(Secret password, String username) {
+        byte[] keyBytes = key.getEncoded();
+        if (keyBytes == null) {
+            return null; // Destroyed
+        }
+        byte[] salt = new byte[SALT_BYTES];
+        byte[] nonce = new byte[NONCE_BYTES];
+        SecureRandoms.get().nextBytes(salt);
+        SecureRandoms.nextIv(nonce);
+        OffHeapKey wrappingKey = null;
+        try {
+            wrappingKey = deriveWrappingKey(password, salt, ITERATIONS);
+            Cipher cipher = Cipher.getInstance(WRAP_ALGORITHM);
+            cipher.init(Cipher.ENCRYPT_MODE, wrappingKey, new GCMParameterSpec(TAG_BITS, nonce));
+            cipher.updateAAD(username.getBytes(StandardCharsets.UTF_8));
+            byte[] sealed = new byte[NONCE_BYTES + cipher.getOutputSize(KEY_BYTES)];
+            System.arraycopy(nonce, 0, sealed, 0, NONCE_BYTES);
+            cipher.doFinal(keyBytes, 0, KEY_BYTES, sealed, NONCE_BYTES);
+
+            Base64.Encoder base64 = Base64.getEncoder();
+            return WRAPPED_TAG + ":" + ITERATIONS + ":" + base64.encodeToString(salt) + ":"
+                    + base64.encodeToString(sealed);
+        } catch (GeneralSecurityException e) {
+            LOG.log(Level.ERROR, "Could not wrap the vault key of {0}: {1}", username, e.getMessage());
+            return null;
+        } finally {
+            Arrays.fill(keyBytes, (byte) 0);
+            if (wrappingKey != null) {
+                wrappingKey.destroy();
+            }
+        }
+    }
+
+    /**
+     * Decrypt a user's data key with their login password
+     *
+     * @param wrapped  The wrapped key from the user data file
+     * @param password The user's login password
+     * @param username The user it belongs to
+     * @return The key, or null if the password is wrong or the value damaged
+     */
+    public static VaultKey unwrap(String wrapped, Secret password, String username) {
+        String[] parts = wrapped != null ? wrapped.split(":") : new String[0];
+        if (parts.length != 4 || !WRAPPED_TAG.equals(parts[0])) {
+            LOG.log(Level.ERROR, "Vault key of {0} is not in a known format", username);
+            return null;
+        }
+        OffHeapKey wrappingKey = null;
+        try {
+            int iterations = Integer.parseInt(parts[1]);
+            byte[] salt = Base64.getDecoder().decode(parts[2]);
+            byte[] sealed = Base64.getDecoder().decode(parts[3]);
+
+            wrappingKey = deriveWrappingKey(password, salt, iterations);
+            Cipher cipher = Cipher.getInstance(WRAP_ALGORITHM);
+            cipher.init(Cipher.DECRYPT_MODE, wrappingKey, new GCMParameterSpec(TAG_BITS, sealed, 0, NONCE_BYTES));
+            cipher.updateAAD(username.getBytes(StandardCharsets.UTF_8));
+            byte[] keyBytes = cipher.doFinal(sealed, NONCE_BYTES, sealed.length - NONCE_BYTES);
+            if (keyBytes.length != KEY_BYTES) {
+                Arrays.fill(keyBytes, (byte) 0);
+                return null;
+            }
+            return new VaultKey(keyBytes);
+        } catch (IllegalArgumentException | GeneralSecurityException e) {
+            LOG.log(Level.ERROR, "Could not unwrap the vault key of {0}: {1}", username, e.getMessage());
+            return null;
+        } finally {
+            if (wrappingKey != null) {
+                wrappingKey.destroy();
+            }
+        }
+    }
+
+    /**
+     * Get the key for a cipher
+     *
+     * @return The key, or null once it has been destroyed
+     */
+    SecretKey secretKey() {
+        return key.isDestroyed() ? null : key;
+    }
+
+    /**
+     * Forget the key and overwrite this object's copy of its bytes; passwords
+     * encrypted with it can no longer be decrypted through this object.
+     * Called when the session that unlocked it ends.
+     */
+    public void destroy() {
+        key.destroy();
+    }
+
+    public boolean isDestroyed() {
+        return key.isDestroyed();
+    }
+
+    // Derives the key that wraps the data key; this is the slow step. The
+    // caller destroys the key once the cipher is set up.
+    private static OffHeapKey deriveWrappingKey(Secret password, byte[] salt, int iterations)
+            throws GeneralSecurityException {
+        // The spec copies the characters and clearPassword wipes that copy
+        PBEKeySpec spec = new PBEKeySpec(password.chars(), salt, iterations, KEY_BYTES * 8);
+        try {
+            byte[] derived = SecretKeyFactory.getInstance(KDF_ALGORITHM).generateSecret(spec).getEncoded();
+            return OffHeapKey.take(derived, "AES");
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.utils;
+
+import com.example.logging.Log;
+
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This file contains the VaultLocks utility class that guards data files
+ * against concurrent writers and keeps a version counter for each of them.
+ * Inside the process writers are serialised by a fixed set of striped locks
+ * keyed by file name, so unrelated users rarely wait for each other. Across
+ * processes a FileChannel lock on a ".version" sidecar file is held, and the
+ * sidecar stores the file's version number for optimistic compare-and-swap.
+ */
+public class VaultLocks {
+
+    private static final System.Logger LOG = Log.getLogger(VaultLocks.class);
+
+    private static final int STRIPES = 64; // Power of two
+    private static final String VERSION_SUFFIX = ".version";
+    // Zero-padded to the width of Long.MAX_VALUE, so every version is written in full
+    private static final String VERSION_FORMAT = "%019d\n";
+    private static final ReentrantLock[] LOCKS = new ReentrantLock[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            LOCKS[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * An action run while holding the locks of a data file
+     */
+    public interface LockedAction<T> {
+        T run(LockedFile file) throws IOException;
+    }
+
+    /**
+     * Access to a locked data file's version counter
+     */
+    public static class LockedFile {
+        private final FileChannel versionChannel;
+        private final long version;
+
+        private LockedFile(FileChannel versionChannel, long version) {
+            this.versionChannel = versionChannel;
+            this.version = version;
+        }
+
+        // Returns the version the file had when the lock was taken
+        public long getVersion() {
+            return version;
+        }
+
+        // Records that the data file was rewritten and returns its new version.
+        // The sidecar is overwritten in place rather than replaced, because
+        // other processes lock this very file; the fixed width means it is
+        // never truncated, so unlocked readers cannot catch it empty.
+        public long bumpVersion() throws IOException {
+            long newVersion = version + 1;
+            byte[] text = String.format(VERSION_FORMAT, newVersion).getBytes(StandardCharsets.US_ASCII);
+            ByteBuffer buffer = ByteBuffer.wrap(text);
+            while (buffer.hasRemaining()) {
+                versionChannel.write(buffer, buffer.position());
+            }
+            versionChannel.force(false);
+            return newVersion;
+        }
+    }
+
+    /**
+     * Run an action while holding both the in-process stripe lock and the
+     * cross-process file lock of a data file
+     *
+     * @param dataFile The data file to guard
+     * @param action   The action to run
+     * @return The action's result
+     * @throws IOException if the lock cannot be taken or the action fails
+     */
+    public static <T> T withFileLock(Path dataFile, LockedAction<T> action) throws IOException {
+        ReentrantLock stripe = stripeFor(dataFile);
+        stripe.lock();
+        try {
+            Files.createDirectories(dataFile.toAbsolutePath().getParent());
+            try (FileChannel channel = FileChannel.open(versionFile(dataFile),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                FileLock lock = channel.lock();
+                try {
+                    return action.run(new LockedFile(channel, readVersion(channel)));
+                } finally {
+                    lock.release();
+                }
+            }
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Read the current version of a data file without locking it
+     *
+     * @param dataFile The data file
+     * @return The version, 0 if the file has never been written with a version
+     */
+    public static long readVersion(Path dataFile) {
+        try {
+            String text = Files.readString(versionFile(dataFile), StandardCharsets.US_ASCII).trim();
+            return text.isEmpty() ? 0 : Long.parseLong(text);
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException | NumberFormatException e) {
+            LOG.log(Level.WARNING, "Could not read version of {0}: {1}", dataFile, e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Replace a file's contents through a temporary file and an atomic move,
+     * so unlocked readers see either the old or the new file but never a
+     * partially written one
+     *
+     * @param target The file to replace
+     * @param lines  The new contents
+     * @throws IOException if writing fails
+     */
+    public static void writeAtomically(Path target, List<String> lines) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Delete a data file's version sidecar, for example when the data file
+     * itself is deleted; call it from within withFileLock
+     *
+     * @param dataFile The data file
+     * @throws IOException if the sidecar exists but cannot be deleted
+     */
+    public static void deleteVersion(Path dataFile) throws IOException {
+        Files.deleteIfExists(versionFile(dataFile));
+    }
+
+    private static Path versionFile(Path dataFile) {
+        return dataFile.resolveSibling(dataFile.getFileName() + VERSION_SUFFIX);
+    }
+
+    private static long readVersion(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(32);
+        channel.read(buffer, 0);
+        String text = new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII).trim();
+        try {
+            return text.isEmpty() ? 0 : Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupt version file: " + text, e);
+        }
+    }
+
+    private static ReentrantLock stripeFor(Path dataFile) {
+        int hash = dataFile.toAbsolutePath().normalize().toString().hashCode();
+        // Spread the hash so similar file names land on different stripes
+        hash ^= (hash >>> 16);
+        return LOCKS[hash & (STRIPES - 1)];
+    }
+}
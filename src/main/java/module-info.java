@@ -3,12 +3,18 @@ module com.example {
     requires javafx.controls;
     requires javafx.fxml;
     requires transitive javafx.graphics;
+    requires java.net.http;
+    requires jdk.httpserver;
+    requires java.management;
+    requires jdk.jfr;
 
     opens com.example to javafx.fxml;
     opens com.example.models to javafx.base;
 
     exports com.example;
     exports com.example.controllers;
+    // Timers are published as MXBeans, events are read by Flight Recorder
+    exports com.example.metrics to java.management, jdk.jfr;
 
     opens com.example.controllers to javafx.fxml;
 }